@@ -0,0 +1,103 @@
+package com.hydrangea.storage_service.config;
+
+import java.util.List;
+
+import org.postgresql.PGConnection;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies the schema changes Hibernate's ddl-auto=update can't express
+ * (dropping constraints, changing column types). Runs right after Hibernate
+ * has updated the schema and before the web server takes traffic. Every
+ * statement must be idempotent because it runs on each startup.
+ *
+ * A failed required migration stops startup: the entities would not match
+ * the columns and every query on the table would fail at runtime. Other
+ * failures are only logged.
+ *
+ * Only Postgres databases carry schemas from older versions, so nothing runs
+ * on other databases (H2 in tests), whose schema comes from the entities.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class SchemaMigrationRunner {
+
+    private record Migration(String sql, boolean required) {
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            // Packed chunks live inside a pack object and have no key of their own
+            required("ALTER TABLE chunks ALTER COLUMN s3_key DROP NOT NULL"),
+            // Chunk hashes moved from 64-character hex to raw 32-byte keys
+            required("""
+            DO $$
+            BEGIN
+                IF EXISTS (SELECT 1 FROM information_schema.columns
+                           WHERE table_name = 'chunks' AND column_name = 'chunk_hash'
+                           AND data_type = 'character varying') THEN
+                    ALTER TABLE chunks ALTER COLUMN chunk_hash TYPE bytea USING decode(chunk_hash, 'hex');
+                END IF;
+            END $$
+            """),
+            // Dedup keys became (hash_algorithm, chunk_hash); drop the hash-only uniqueness
+            optional("DROP INDEX IF EXISTS idx_chunk_hash"),
+            optional("""
+            DO $$
+            DECLARE
+                constraint_name text;
+            BEGIN
+                FOR constraint_name IN
+                    SELECT con.conname FROM pg_constraint con
+                    JOIN pg_attribute att ON att.attrelid = con.conrelid AND att.attnum = ANY (con.conkey)
+                    WHERE con.conrelid = 'chunks'::regclass AND con.contype = 'u'
+                    AND array_length(con.conkey, 1) = 1 AND att.attname = 'chunk_hash'
+                LOOP
+                    EXECUTE 'ALTER TABLE chunks DROP CONSTRAINT ' || quote_ident(constraint_name);
+                END LOOP;
+            END $$
+            """),
+            // Files uploaded before versioning each start their own chain
+            optional("UPDATE files SET version_group = file_id WHERE version_group IS NULL"),
+            optional("UPDATE share_links SET token_generation = 0 WHERE token_generation IS NULL"),
+            optional("UPDATE share_links SET access_count = 0 WHERE access_count IS NULL"),
+            optional("UPDATE share_links SET bytes_served = 0 WHERE bytes_served IS NULL"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static Migration required(String sql) {
+        return new Migration(sql, true);
+    }
+
+    private static Migration optional(String sql) {
+        return new Migration(sql, false);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        Boolean postgres = jdbcTemplate.execute(
+                (ConnectionCallback<Boolean>) connection -> connection.isWrapperFor(PGConnection.class));
+        if (!Boolean.TRUE.equals(postgres)) {
+            log.info("Skipping schema migrations on a database other than Postgres");
+            return;
+        }
+        for (Migration migration : MIGRATIONS) {
+            try {
+                jdbcTemplate.execute(migration.sql());
+            } catch (Exception e) {
+                if (migration.required()) {
+                    throw new IllegalStateException("Required schema migration failed: " + migration.sql().strip(), e);
+                }
+                log.warn("Schema migration failed: {} ({})", migration.sql().strip(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.hydrangea.storage_service.constant;
+
+// Caches kept consistent across instances through CacheInvalidationBus
+public enum CacheName {
+    BUCKET,
+    USER,
+    SHARE_LINK,
+    SHARE_FILE,
+    PERMISSION,
+    PERMISSION_BUCKET
+}
@@ -0,0 +1,12 @@
+package com.hydrangea.storage_service.constant;
+
+/**
+ * How file content is split into chunks. FIXED cuts every file.chunk.size
+ * bytes, so an insertion shifts every later boundary. CDC picks boundaries
+ * from the content itself (FastCDC), so an edit only changes the chunks
+ * around it and later versions of a file keep sharing the rest.
+ */
+public enum ChunkingStrategy {
+    FIXED,
+    CDC
+}
@@ -0,0 +1,22 @@
+package com.hydrangea.storage_service.constant;
+
+/**
+ * Codec used to store a chunk's bytes in the object store. The chunk hash is
+ * always computed over the uncompressed content.
+ */
+public enum CompressionCodec {
+    NONE(null),
+    LZ4(null),
+    ZSTD("zstd");
+
+    // HTTP Content-Encoding token, or null when clients can't decode it natively
+    private final String contentEncoding;
+
+    CompressionCodec(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+}
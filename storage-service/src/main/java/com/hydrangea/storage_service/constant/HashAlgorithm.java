@@ -0,0 +1,21 @@
+package com.hydrangea.storage_service.constant;
+
+/**
+ * Content hash used as a chunk's dedup key. Both produce 32-byte digests, so
+ * the algorithm is always stored and compared alongside the digest.
+ */
+public enum HashAlgorithm {
+    SHA256("chunks/"),
+    BLAKE3("chunks/blake3/");
+
+    // Object key prefix for unpacked chunks hashed with this algorithm
+    private final String keyPrefix;
+
+    HashAlgorithm(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+}
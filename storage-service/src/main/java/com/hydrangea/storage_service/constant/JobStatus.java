@@ -0,0 +1,8 @@
+package com.hydrangea.storage_service.constant;
+
+public enum JobStatus {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,6 @@
+package com.hydrangea.storage_service.constant;
+
+public enum JobType {
+    BUCKET_DELETE,
+    FILE_BULK_DELETE
+}
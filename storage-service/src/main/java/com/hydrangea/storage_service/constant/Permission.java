@@ -0,0 +1,9 @@
+package com.hydrangea.storage_service.constant;
+
+// What a caller wants to do with a bucket or the files in it, see PermissionResolver
+public enum Permission {
+    READ, // list files, metadata and versions
+    DOWNLOAD, // file content, including copies and exports of it
+    WRITE, // upload, modify and delete files
+    MANAGE // the bucket itself, its collaborators and share links
+}
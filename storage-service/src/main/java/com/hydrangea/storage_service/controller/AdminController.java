@@ -0,0 +1,69 @@
+package com.hydrangea.storage_service.controller;
+
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.hydrangea.storage_service.dto.auth.UserDTO;
+import com.hydrangea.storage_service.dto.response.ApiResponse;
+import com.hydrangea.storage_service.security.CustomUserDetails;
+import com.hydrangea.storage_service.service.UserAdminService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+@Slf4j
+public class AdminController {
+
+    private final UserAdminService userAdminService;
+
+    // Enable or disable a user; takes effect on their existing tokens
+    @PutMapping("/users/{userId}/enabled")
+    public ApiResponse<UserDTO> setUserEnabled(@PathVariable Long userId,
+            @RequestParam("enabled") boolean enabled,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Admin {} setting enabled={} for user {}", userDetails.getUsername(), enabled, userId);
+        try {
+            UserDTO user = userAdminService.setEnabled(userId, enabled);
+            return ApiResponse.<UserDTO>builder()
+                    .code(200)
+                    .message(enabled ? "User enabled" : "User disabled")
+                    .result(user)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to update user: " + e.getMessage());
+            return ApiResponse.<UserDTO>builder()
+                    .code(500)
+                    .message("Failed to update user: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // Change a user's role; takes effect on their existing tokens
+    @PutMapping("/users/{userId}/role")
+    public ApiResponse<UserDTO> setUserRole(@PathVariable Long userId,
+            @RequestParam("role") String role,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Admin {} setting role {} for user {}", userDetails.getUsername(), role, userId);
+        try {
+            UserDTO user = userAdminService.setRole(userId, role);
+            return ApiResponse.<UserDTO>builder()
+                    .code(200)
+                    .message("User role updated")
+                    .result(user)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to update user: " + e.getMessage());
+            return ApiResponse.<UserDTO>builder()
+                    .code(500)
+                    .message("Failed to update user: " + e.getMessage())
+                    .build();
+        }
+    }
+}
@@ -51,7 +51,7 @@ public class AuthController {
     @PostMapping("/logout")
     public ApiResponse<String> logout(@RequestBody LogoutRequest request) {
         log.info("Logout request received for user: {}", request.getUsername());
-        authenticationService.logout(request.getUsername());
+        authenticationService.logout(request);
 
         return ApiResponse.<String>builder()
                 .code(200)
@@ -19,9 +19,11 @@ import com.hydrangea.storage_service.dto.request.BucketUpdateRequest;
 import com.hydrangea.storage_service.dto.response.ApiResponse;
 import com.hydrangea.storage_service.dto.response.BucketResponse;
 import com.hydrangea.storage_service.dto.response.FileResponse;
+import com.hydrangea.storage_service.dto.response.JobResponse;
 import com.hydrangea.storage_service.mapper.UserMapper;
 import com.hydrangea.storage_service.security.CustomUserDetails;
 import com.hydrangea.storage_service.service.BucketService;
+import com.hydrangea.storage_service.service.FileCopyService;
 import com.hydrangea.storage_service.service.FileStorageService;
 
 import lombok.RequiredArgsConstructor;
@@ -35,6 +37,7 @@ public class BucketController {
         private final BucketService bucketService;
         private final UserMapper userMapper;
         private final FileStorageService fileStorageService;
+        private final FileCopyService fileCopyService;
 
         // Create a new bucket
         @PostMapping
@@ -114,20 +117,44 @@ public class BucketController {
                 }
         }
 
-        // Delete a bucket by id
+        // Clone a bucket with all its files; content is shared, only metadata is copied
+        @PostMapping("/{bucketId}/clone")
+        public ApiResponse<BucketResponse> cloneBucket(@PathVariable String bucketId,
+                        @RequestBody(required = false) BucketCreationRequest request,
+                        @AuthenticationPrincipal CustomUserDetails userDetails) {
+                log.info("Cloning bucket {} for user: {}", bucketId, userDetails.getUsername());
+                try {
+                        BucketResponse data = fileCopyService.cloneBucket(bucketId, request, userDetails.getId());
+                        data.setUser(userMapper.toUserDTO(userDetails));
+                        return ApiResponse.<BucketResponse>builder()
+                                        .code(200)
+                                        .message("Bucket cloned successfully")
+                                        .result(data)
+                                        .build();
+                } catch (Exception e) {
+                        log.error("Failed to clone bucket: " + e.getMessage());
+                        return ApiResponse.<BucketResponse>builder()
+                                        .code(500)
+                                        .message("Failed to clone bucket")
+                                        .build();
+                }
+        }
+
+        // Delete a bucket by id; poll /api/jobs/{jobId} for progress
         @DeleteMapping("/{bucketId}")
-        public ApiResponse<Void> deleteBucket(@PathVariable String bucketId,
+        public ApiResponse<JobResponse> deleteBucket(@PathVariable String bucketId,
                         @AuthenticationPrincipal CustomUserDetails userDetails) {
                 log.info("Deleting bucket for user: " + userDetails.getUsername());
                 try {
-                        bucketService.deleteBucket(bucketId, userDetails.getId());
-                        return ApiResponse.<Void>builder()
+                        JobResponse job = bucketService.deleteBucket(bucketId, userDetails.getId());
+                        return ApiResponse.<JobResponse>builder()
                                         .code(200)
-                                        .message("Bucket deleted successfully")
+                                        .message("Bucket deletion started")
+                                        .result(job)
                                         .build();
                 } catch (Exception e) {
                         log.error("Failed to delete bucket: " + e.getMessage());
-                        return ApiResponse.<Void>builder()
+                        return ApiResponse.<JobResponse>builder()
                                         .code(500)
                                         .message("Failed to delete bucket")
                                         .build();
@@ -10,6 +10,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.hydrangea.storage_service.dto.request.AddCollaboratorRequest;
@@ -92,10 +93,13 @@ public class CollabController {
 
     @GetMapping("/{bucketId}")
     public ApiResponse<List<CollaboratorResponse>> getCollaborators(@PathVariable String bucketId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
             @AuthenticationPrincipal CustomUserDetails userDetails) {
         log.info("Getting collaborators for bucket {} for user {}", bucketId, userDetails.getUsername());
         try {
-            List<CollaboratorResponse> collaborators = collabService.getCollaborators(bucketId, userDetails.getId());
+            List<CollaboratorResponse> collaborators = collabService.getCollaborators(bucketId, userDetails.getId(),
+                    after, limit);
             return ApiResponse.<List<CollaboratorResponse>>builder()
                     .code(200)
                     .message("Collaborators retrieved successfully")
@@ -1,10 +1,27 @@
 package com.hydrangea.storage_service.controller;
 
+import com.hydrangea.storage_service.constant.ArchiveFormat;
+import com.hydrangea.storage_service.constant.CompressionCodec;
+import com.hydrangea.storage_service.dto.request.FileComposeRequest;
+import com.hydrangea.storage_service.dto.request.FileDeleteRequest;
+import com.hydrangea.storage_service.dto.request.FileTransferRequest;
 import com.hydrangea.storage_service.dto.response.ApiResponse;
+import com.hydrangea.storage_service.dto.response.BulkUploadResponse;
+import com.hydrangea.storage_service.dto.response.FileManifest;
 import com.hydrangea.storage_service.dto.response.FileUploadResponse;
+import com.hydrangea.storage_service.dto.response.FileVersionResponse;
+import com.hydrangea.storage_service.dto.response.JobResponse;
 import com.hydrangea.storage_service.entity.FileMetadata;
 import com.hydrangea.storage_service.security.CustomUserDetails;
+import com.hydrangea.storage_service.service.ArchiveExportService;
+import com.hydrangea.storage_service.service.ArchiveImportService;
+import com.hydrangea.storage_service.service.BulkDeletionService;
+import com.hydrangea.storage_service.service.BulkUploadService;
+import com.hydrangea.storage_service.service.FileComposeService;
+import com.hydrangea.storage_service.service.FileCopyService;
+import com.hydrangea.storage_service.service.FilePatchService;
 import com.hydrangea.storage_service.service.FileStorageService;
+import com.hydrangea.storage_service.service.FileVersionService;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -16,8 +33,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,9 +48,29 @@ import java.util.stream.Collectors;
 public class FileStorageController {
 
     private final FileStorageService fileStorageService;
+    private final BulkDeletionService bulkDeletionService;
+    private final BulkUploadService bulkUploadService;
+    private final ArchiveExportService archiveExportService;
+    private final ArchiveImportService archiveImportService;
+    private final FileCopyService fileCopyService;
+    private final FileVersionService fileVersionService;
+    private final FilePatchService filePatchService;
+    private final FileComposeService fileComposeService;
 
-    public FileStorageController(FileStorageService fileStorageService) {
+    public FileStorageController(FileStorageService fileStorageService, BulkDeletionService bulkDeletionService,
+            BulkUploadService bulkUploadService, ArchiveExportService archiveExportService,
+            ArchiveImportService archiveImportService, FileCopyService fileCopyService,
+            FileVersionService fileVersionService, FilePatchService filePatchService,
+            FileComposeService fileComposeService) {
         this.fileStorageService = fileStorageService;
+        this.bulkDeletionService = bulkDeletionService;
+        this.bulkUploadService = bulkUploadService;
+        this.archiveExportService = archiveExportService;
+        this.archiveImportService = archiveImportService;
+        this.fileCopyService = fileCopyService;
+        this.fileVersionService = fileVersionService;
+        this.filePatchService = filePatchService;
+        this.fileComposeService = fileComposeService;
     }
 
     // Upload a file
@@ -63,37 +102,179 @@ public class FileStorageController {
         }
     }
 
+    // Upload many files in one request; each part gets its own result
+    @PostMapping("/upload/bulk")
+    public ApiResponse<BulkUploadResponse> uploadFiles(@RequestParam("files") List<MultipartFile> files,
+            @AuthenticationPrincipal CustomUserDetails userDetails,
+            @RequestParam(value = "bucketId", required = false) String bucketId) {
+        log.info("Bulk uploading {} files for user: {}", files.size(), userDetails.getUsername());
+        try {
+            BulkUploadResponse response = bulkUploadService.uploadFiles(files, userDetails.getId(), bucketId);
+            return ApiResponse.<BulkUploadResponse>builder()
+                    .code(200)
+                    .message("Uploaded " + response.getSucceeded() + " of " + response.getTotalFiles() + " files")
+                    .result(response)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to bulk upload files: " + e.getMessage());
+            return ApiResponse.<BulkUploadResponse>builder()
+                    .code(500)
+                    .message("Failed to upload files: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // Extract a ZIP or TAR archive (optionally gzip/bzip2/zstd compressed) sent as the raw request body
+    @PostMapping("/import")
+    public ApiResponse<BulkUploadResponse> importArchive(InputStream body,
+            @AuthenticationPrincipal CustomUserDetails userDetails,
+            @RequestParam(value = "bucketId", required = false) String bucketId) {
+        log.info("Importing archive for user: " + userDetails.getUsername());
+        try {
+            BulkUploadResponse response = archiveImportService.importArchive(body, userDetails.getId(), bucketId);
+            return ApiResponse.<BulkUploadResponse>builder()
+                    .code(200)
+                    .message("Imported " + response.getSucceeded() + " files")
+                    .result(response)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to import archive: " + e.getMessage());
+            return ApiResponse.<BulkUploadResponse>builder()
+                    .code(500)
+                    .message("Failed to import archive: " + e.getMessage())
+                    .build();
+        }
+    }
+
     // Download a file
     @GetMapping("/download/{fileId}")
-    public ResponseEntity<byte[]> downloadFile(
+    public ResponseEntity<StreamingResponseBody> downloadFile(
             @PathVariable String fileId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
             @AuthenticationPrincipal CustomUserDetails userDetails) {
 
         log.info("Downloading file for user: " + userDetails.getUsername());
 
         try {
-            FileMetadata metadata = fileStorageService.getFileMetadata(fileId, userDetails.getId());
-            byte[] fileData = fileStorageService.downloadFile(fileId, userDetails.getId());
+            FileManifest manifest = fileStorageService.getFileManifest(fileId, userDetails.getId());
+
+            // Pass compressed chunks straight through when the client can decode them
+            CompressionCodec codec = manifest.getCommonCodec();
+            boolean passthrough = codec != null && codec.getContentEncoding() != null
+                    && acceptsEncoding(acceptEncoding, codec.getContentEncoding());
 
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(metadata.getContentType()));
+            headers.setContentType(MediaType.parseMediaType(manifest.getContentType()));
             headers.setContentDisposition(
                     ContentDisposition.builder("attachment")
-                            .filename(metadata.getOriginalFileName())
+                            .filename(manifest.getOriginalFileName())
                             .build());
-            headers.setContentLength(fileData.length);
+            // The body depends on Accept-Encoding, so shared caches must key on it, identity responses too
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+            if (passthrough) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, codec.getContentEncoding());
+                headers.setContentLength(manifest.getStoredSize());
+            } else {
+                headers.setContentLength(manifest.getFileSize());
+            }
 
-            log.info("File downloaded successfully: " + metadata.getOriginalFileName() +
-                    ", size: " + fileData.length);
+            log.info("Streaming file: " + manifest.getOriginalFileName() +
+                    ", size: " + manifest.getFileSize() + ", passthrough: " + passthrough);
 
-            return new ResponseEntity<>(fileData, headers, HttpStatus.OK);
+            StreamingResponseBody body = out -> fileStorageService.writeFile(manifest, out, passthrough);
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
 
         } catch (Exception e) {
             log.error("Failed to download file: " + e.getMessage());
+            return ResponseEntity.notFound().varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+        }
+    }
+
+    // Stream a bucket (optionally only names under a prefix) or a list of files as one archive
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportArchive(
+            @RequestParam(value = "bucketId", required = false) String bucketId,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "fileIds", required = false) List<String> fileIds,
+            @RequestParam(value = "format", defaultValue = "ZIP") ArchiveFormat format,
+            @RequestParam(value = "compression", defaultValue = "deflate") String compression,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+
+        log.info("Exporting archive for user: " + userDetails.getUsername());
+
+        try {
+            ArchiveExportService.ExportRequest request = new ArchiveExportService.ExportRequest(
+                    userDetails.getId(), bucketId, prefix, fileIds, format,
+                    !"store".equalsIgnoreCase(compression));
+            String archiveName = archiveExportService.resolveArchiveName(request);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(format.getContentType()));
+            headers.setContentDisposition(
+                    ContentDisposition.builder("attachment")
+                            .filename(archiveName)
+                            .build());
+
+            StreamingResponseBody body = out -> archiveExportService.export(request, out);
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+
+        } catch (Exception e) {
+            log.error("Failed to export archive: " + e.getMessage());
             return ResponseEntity.notFound().build();
         }
     }
 
+    // Overwrite the file from offset with the raw request body, extending it if needed; creates a new version
+    @PatchMapping("/{fileId}/content")
+    public ApiResponse<FileUploadResponse> writeRange(@PathVariable String fileId,
+            @RequestParam("offset") long offset,
+            InputStream body,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Writing file range for user: " + userDetails.getUsername());
+        try {
+            if (offset < 0) {
+                return ApiResponse.<FileUploadResponse>builder()
+                        .code(400)
+                        .message("Offset must not be negative")
+                        .build();
+            }
+            FileUploadResponse response = filePatchService.write(fileId, userDetails.getId(), offset, body);
+            return ApiResponse.<FileUploadResponse>builder()
+                    .code(200)
+                    .message("File updated successfully")
+                    .result(response)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to write file range: " + e.getMessage());
+            return ApiResponse.<FileUploadResponse>builder()
+                    .code(500)
+                    .message("Failed to update file: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // Append the raw request body to the file; creates a new version
+    @PostMapping("/{fileId}/append")
+    public ApiResponse<FileUploadResponse> appendToFile(@PathVariable String fileId,
+            InputStream body,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Appending to file for user: " + userDetails.getUsername());
+        try {
+            FileUploadResponse response = filePatchService.append(fileId, userDetails.getId(), body);
+            return ApiResponse.<FileUploadResponse>builder()
+                    .code(200)
+                    .message("File appended successfully")
+                    .result(response)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to append to file: " + e.getMessage());
+            return ApiResponse.<FileUploadResponse>builder()
+                    .code(500)
+                    .message("Failed to append to file: " + e.getMessage())
+                    .build();
+        }
+    }
+
     // Delete a file
     @DeleteMapping("/{fileId}")
     public ApiResponse<Map<String, String>> deleteFile(@PathVariable String fileId,
@@ -115,6 +296,188 @@ public class FileStorageController {
         }
     }
 
+    // Delete many files as a background job; poll /api/jobs/{jobId} for progress
+    @PostMapping("/bulk-delete")
+    public ApiResponse<JobResponse> bulkDeleteFiles(@RequestBody FileDeleteRequest request,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Bulk deleting files for user: " + userDetails.getUsername());
+        try {
+            JobResponse job = bulkDeletionService.startFileDeletion(request.getFileIds(), userDetails.getId());
+            return ApiResponse.<JobResponse>builder()
+                    .code(200)
+                    .message("File deletion started")
+                    .result(job)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to start bulk file deletion: " + e.getMessage());
+            return ApiResponse.<JobResponse>builder()
+                    .code(500)
+                    .message("Failed to delete files: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // Copy a file into another bucket; content is shared with the original
+    @PostMapping("/{fileId}/copy")
+    public ApiResponse<Map<String, String>> copyFile(@PathVariable String fileId,
+            @RequestParam("targetBucketId") String targetBucketId,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        return copyFiles(new FileTransferRequest(List.of(fileId), targetBucketId), userDetails);
+    }
+
+    // Copy many files into another bucket; the result maps each source file id to its copy
+    @PostMapping("/copy")
+    public ApiResponse<Map<String, String>> copyFiles(@RequestBody FileTransferRequest request,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Copying files for user: " + userDetails.getUsername());
+        try {
+            Map<String, String> copies = fileCopyService.copyFiles(request.getFileIds(),
+                    request.getTargetBucketId(), userDetails.getId());
+            return ApiResponse.<Map<String, String>>builder()
+                    .code(200)
+                    .message(copies.size() + " files copied")
+                    .result(copies)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to copy files: " + e.getMessage());
+            return ApiResponse.<Map<String, String>>builder()
+                    .code(500)
+                    .message("Failed to copy files: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // Build a new file from existing files or byte ranges of them, in order
+    @PostMapping("/compose")
+    public ApiResponse<FileUploadResponse> composeFile(@RequestBody FileComposeRequest request,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Composing file for user: " + userDetails.getUsername());
+        try {
+            FileUploadResponse response = fileComposeService.compose(request, userDetails.getId());
+            return ApiResponse.<FileUploadResponse>builder()
+                    .code(200)
+                    .message("File composed successfully")
+                    .result(response)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to compose file: " + e.getMessage());
+            return ApiResponse.<FileUploadResponse>builder()
+                    .code(500)
+                    .message("Failed to compose file: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // Move files into another bucket
+    @PostMapping("/move")
+    public ApiResponse<Map<String, Integer>> moveFiles(@RequestBody FileTransferRequest request,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Moving files for user: " + userDetails.getUsername());
+        try {
+            int moved = fileCopyService.moveFiles(request.getFileIds(), request.getTargetBucketId(),
+                    userDetails.getId());
+            return ApiResponse.<Map<String, Integer>>builder()
+                    .code(200)
+                    .message(moved + " files moved")
+                    .result(Map.of("moved", moved))
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to move files: " + e.getMessage());
+            return ApiResponse.<Map<String, Integer>>builder()
+                    .code(500)
+                    .message("Failed to move files: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // List all versions of a file, newest first
+    @GetMapping("/{fileId}/versions")
+    public ApiResponse<List<FileVersionResponse>> listVersions(@PathVariable String fileId,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Listing file versions for user: " + userDetails.getUsername());
+        try {
+            List<FileVersionResponse> versions = fileVersionService.listVersions(fileId, userDetails.getId());
+            return ApiResponse.<List<FileVersionResponse>>builder()
+                    .code(200)
+                    .message("File versions retrieved successfully")
+                    .result(versions)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to list file versions: " + e.getMessage());
+            return ApiResponse.<List<FileVersionResponse>>builder()
+                    .code(404)
+                    .message("File not found")
+                    .build();
+        }
+    }
+
+    // Restore an older version as the new latest version
+    @PostMapping("/{fileId}/versions/{versionNumber}/restore")
+    public ApiResponse<FileVersionResponse> restoreVersion(@PathVariable String fileId,
+            @PathVariable int versionNumber,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Restoring file version for user: " + userDetails.getUsername());
+        try {
+            FileVersionResponse version = fileVersionService.restoreVersion(fileId, versionNumber,
+                    userDetails.getId());
+            return ApiResponse.<FileVersionResponse>builder()
+                    .code(200)
+                    .message("File version restored successfully")
+                    .result(version)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to restore file version: " + e.getMessage());
+            return ApiResponse.<FileVersionResponse>builder()
+                    .code(500)
+                    .message("Failed to restore file version: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // Delete a single version of a file
+    @DeleteMapping("/{fileId}/versions/{versionNumber}")
+    public ApiResponse<Map<String, String>> deleteVersion(@PathVariable String fileId,
+            @PathVariable int versionNumber,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Deleting file version for user: " + userDetails.getUsername());
+        try {
+            fileVersionService.deleteVersion(fileId, versionNumber, userDetails.getId());
+            return ApiResponse.<Map<String, String>>builder()
+                    .code(200)
+                    .message("File version deleted successfully")
+                    .result(Map.of("message", "File version deleted successfully"))
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to delete file version: " + e.getMessage());
+            return ApiResponse.<Map<String, String>>builder()
+                    .code(500)
+                    .message("Failed to delete file version: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    // Delete older versions, keeping the latest and the newest `keep` before it
+    @PostMapping("/{fileId}/versions/prune")
+    public ApiResponse<Map<String, Integer>> pruneVersions(@PathVariable String fileId,
+            @RequestParam(value = "keep", defaultValue = "0") int keep,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        log.info("Pruning file versions for user: " + userDetails.getUsername());
+        try {
+            int pruned = fileVersionService.pruneVersions(fileId, keep, userDetails.getId());
+            return ApiResponse.<Map<String, Integer>>builder()
+                    .code(200)
+                    .message(pruned + " file versions deleted")
+                    .result(Map.of("pruned", pruned))
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to prune file versions: " + e.getMessage());
+            return ApiResponse.<Map<String, Integer>>builder()
+                    .code(500)
+                    .message("Failed to prune file versions: " + e.getMessage())
+                    .build();
+        }
+    }
+
     // Get file metadata
     @GetMapping("/{fileId}/metadata")
     public ApiResponse<Map<String, Object>> getFileMetadata(@PathVariable String fileId,
@@ -130,6 +493,8 @@ public class FileStorageController {
             response.put("contentType", metadata.getContentType());
             response.put("uploadedAt", metadata.getUploadedAt().toString());
             response.put("totalChunks", metadata.getChunkMappings().size());
+            response.put("versionNumber", metadata.getVersionNumber());
+            response.put("latest", metadata.isLatest());
 
             return ApiResponse.<Map<String, Object>>builder()
                     .code(200)
@@ -144,4 +509,18 @@ public class FileStorageController {
                     .build();
         }
     }
-}
\ No newline at end of file
+
+    private static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(encoding)) {
+                // "zstd;q=0" explicitly refuses the encoding
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,44 @@
+package com.hydrangea.storage_service.controller;
+
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.hydrangea.storage_service.dto.response.ApiResponse;
+import com.hydrangea.storage_service.dto.response.JobResponse;
+import com.hydrangea.storage_service.security.CustomUserDetails;
+import com.hydrangea.storage_service.service.BackgroundJobService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+@Slf4j
+public class JobController {
+
+    private final BackgroundJobService backgroundJobService;
+
+    // Get the status and progress of a background job
+    @GetMapping("/{jobId}")
+    public ApiResponse<JobResponse> getJob(@PathVariable String jobId,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        try {
+            JobResponse job = backgroundJobService.getJob(jobId, userDetails.getId());
+            return ApiResponse.<JobResponse>builder()
+                    .code(200)
+                    .message("Job retrieved successfully")
+                    .result(job)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to retrieve job: " + e.getMessage());
+            return ApiResponse.<JobResponse>builder()
+                    .code(404)
+                    .message("Job not found")
+                    .build();
+        }
+    }
+}
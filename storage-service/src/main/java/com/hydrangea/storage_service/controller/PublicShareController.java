@@ -0,0 +1,145 @@
+package com.hydrangea.storage_service.controller;
+
+import java.util.List;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.hydrangea.storage_service.dto.response.ApiResponse;
+import com.hydrangea.storage_service.dto.response.FileManifest;
+import com.hydrangea.storage_service.dto.response.SharedFilePage;
+import com.hydrangea.storage_service.exception.AppException;
+import com.hydrangea.storage_service.security.ShareLinkStateCache.ShareLinkState;
+import com.hydrangea.storage_service.service.ShareDownloadService;
+import com.hydrangea.storage_service.util.ShareLinkTokenUtil;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Anonymous access through share links; password protected links need the token from /api/share-links/verify
+@RestController
+@RequestMapping("/api/public/shares")
+@RequiredArgsConstructor
+@Slf4j
+public class PublicShareController {
+
+    private final ShareDownloadService shareDownloadService;
+
+    // Stream a shared file; supports a single byte range
+    @GetMapping("/{link}/content")
+    public ResponseEntity<StreamingResponseBody> downloadSharedFile(@PathVariable String link,
+            @RequestParam(value = "download", defaultValue = "false") boolean download,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestHeader(value = ShareLinkTokenUtil.HEADER, required = false) String tokenHeader,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
+        return streamFile(link, null, download, tokenHeader != null ? tokenHeader : tokenParam, range);
+    }
+
+    // Stream one file of a shared bucket
+    @GetMapping("/{link}/files/{fileId}/content")
+    public ResponseEntity<StreamingResponseBody> downloadSharedBucketFile(@PathVariable String link,
+            @PathVariable String fileId,
+            @RequestParam(value = "download", defaultValue = "false") boolean download,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestHeader(value = ShareLinkTokenUtil.HEADER, required = false) String tokenHeader,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
+        return streamFile(link, fileId, download, tokenHeader != null ? tokenHeader : tokenParam, range);
+    }
+
+    // List a shared bucket's files, a page at a time
+    @GetMapping("/{link}/files")
+    public ApiResponse<SharedFilePage> listSharedFiles(@PathVariable String link,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestHeader(value = ShareLinkTokenUtil.HEADER, required = false) String tokenHeader) {
+        try {
+            ShareLinkState state = shareDownloadService.resolve(link,
+                    tokenHeader != null ? tokenHeader : tokenParam);
+            return ApiResponse.<SharedFilePage>builder()
+                    .code(200)
+                    .message("Shared files retrieved successfully")
+                    .result(shareDownloadService.listFiles(state, after, limit))
+                    .build();
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            // Anonymous callers get no internals
+            log.error("Failed to list shared files for link {}: {}", link, e.getMessage());
+            return ApiResponse.<SharedFilePage>builder()
+                    .code(500)
+                    .message("Failed to list shared files")
+                    .build();
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamFile(String link, String fileId, boolean download,
+            String accessToken, String range) {
+        try {
+            ShareLinkState state = shareDownloadService.resolve(link, accessToken);
+            FileManifest manifest = shareDownloadService.resolveFile(state, fileId, download).manifest();
+            long size = manifest.getFileSize();
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType(manifest.getContentType()));
+            headers.setContentDisposition(
+                    ContentDisposition.builder(download ? "attachment" : "inline")
+                            .filename(manifest.getOriginalFileName())
+                            .build());
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            long start = 0;
+            long end = size;
+            HttpStatus status = HttpStatus.OK;
+            // Multiple ranges are legal to ignore; the whole file is sent instead
+            List<HttpRange> ranges = parseRanges(range);
+            if (ranges.size() == 1) {
+                HttpRange requested = ranges.get(0);
+                try {
+                    start = requested.getRangeStart(size);
+                    end = requested.getRangeEnd(size) + 1;
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                            .build();
+                }
+                status = HttpStatus.PARTIAL_CONTENT;
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+            }
+            headers.setContentLength(end - start);
+
+            long from = start;
+            long to = end;
+            StreamingResponseBody body = out -> shareDownloadService.stream(state, manifest, out, from, to);
+            return new ResponseEntity<>(body, headers, status);
+
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to stream shared file for link {}: {}", link, e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    private static List<HttpRange> parseRanges(String range) {
+        if (range == null) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+}
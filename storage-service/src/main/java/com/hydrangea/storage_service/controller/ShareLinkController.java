@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -18,8 +19,10 @@ import com.hydrangea.storage_service.dto.request.UpdateShareLinkRequest;
 import com.hydrangea.storage_service.dto.request.VerifyShareLinkRequest;
 import com.hydrangea.storage_service.dto.response.ApiResponse;
 import com.hydrangea.storage_service.dto.response.ShareLinkResponse;
+import com.hydrangea.storage_service.exception.ServiceBusyException;
 import com.hydrangea.storage_service.security.CustomUserDetails;
 import com.hydrangea.storage_service.service.ShareLinkService;
+import com.hydrangea.storage_service.util.ShareLinkTokenUtil;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -44,6 +47,8 @@ public class ShareLinkController {
                     .message("Share link created successfully")
                     .result(response)
                     .build();
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to create share link: {}", e.getMessage());
             return ApiResponse.<ShareLinkResponse>builder()
@@ -65,6 +70,8 @@ public class ShareLinkController {
                     .message("Share link updated successfully")
                     .result(response)
                     .build();
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to update share link: {}", e.getMessage());
             return ApiResponse.<ShareLinkResponse>builder()
@@ -116,10 +123,13 @@ public class ShareLinkController {
     @GetMapping("/my")
     public ApiResponse<List<ShareLinkResponse>> getMyShareLinks(
             @RequestParam(required = false) Boolean activeOnly,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
             @AuthenticationPrincipal CustomUserDetails userDetails) {
         log.info("Getting share links for user {}", userDetails.getUsername());
         try {
-            List<ShareLinkResponse> response = shareLinkService.getMyShareLinks(userDetails.getId(), activeOnly);
+            List<ShareLinkResponse> response = shareLinkService.getMyShareLinks(userDetails.getId(), activeOnly,
+                    after, limit);
             return ApiResponse.<List<ShareLinkResponse>>builder()
                     .code(200)
                     .message("Share links retrieved successfully")
@@ -156,15 +166,18 @@ public class ShareLinkController {
     }
 
     @PostMapping("/verify")
-    public ApiResponse<ShareLinkResponse> verifyShareLink(@RequestBody VerifyShareLinkRequest request) {
+    public ApiResponse<ShareLinkResponse> verifyShareLink(@RequestBody VerifyShareLinkRequest request,
+            @RequestHeader(value = ShareLinkTokenUtil.HEADER, required = false) String accessToken) {
         log.info("Verifying share link {}", request.getLink());
         try {
-            ShareLinkResponse response = shareLinkService.verifyAndAccessShareLink(request);
+            ShareLinkResponse response = shareLinkService.verifyAndAccessShareLink(request, accessToken);
             return ApiResponse.<ShareLinkResponse>builder()
                     .code(200)
                     .message("Share link verified successfully")
                     .result(response)
                     .build();
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to verify share link: {}", e.getMessage());
             return ApiResponse.<ShareLinkResponse>builder()
@@ -15,4 +15,5 @@ import lombok.experimental.FieldDefaults;
 public class LogoutRequest {
     String username;
     String token;
+    String refreshToken;
 }
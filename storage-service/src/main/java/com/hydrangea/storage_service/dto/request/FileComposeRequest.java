@@ -0,0 +1,27 @@
+package com.hydrangea.storage_service.dto.request;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileComposeRequest {
+    private String bucketId;
+    private String name;
+    private String contentType;
+    private List<Part> parts;
+
+    // A source file, or the byte range [offset, offset + length) of it when either is set
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Part {
+        private String fileId;
+        private Long offset;
+        private Long length;
+    }
+}
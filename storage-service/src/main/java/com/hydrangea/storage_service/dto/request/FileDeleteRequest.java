@@ -1,5 +1,14 @@
 package com.hydrangea.storage_service.dto.request;
 
-public class FileDeleteRequest {
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
 
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileDeleteRequest {
+    private List<String> fileIds;
 }
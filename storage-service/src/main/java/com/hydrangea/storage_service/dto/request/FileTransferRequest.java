@@ -0,0 +1,15 @@
+package com.hydrangea.storage_service.dto.request;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileTransferRequest {
+    private List<String> fileIds;
+    private String targetBucketId;
+}
@@ -0,0 +1,20 @@
+package com.hydrangea.storage_service.dto.response;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkUploadResponse {
+    private Integer totalFiles;
+    private Integer succeeded;
+    private Integer failed;
+    // One entry per uploaded part, in request order; failed entries have no fileId
+    private List<FileUploadResponse> results;
+}
@@ -1,12 +1,16 @@
 package com.hydrangea.storage_service.dto.response;
 
+import com.hydrangea.storage_service.util.ChunkHash;
+
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+// The chunk's bytes are data[0, length); data is a pooled buffer only valid during the callback
 @Getter
 @AllArgsConstructor
 public class ChunkInfo {
     private byte[] data;
-    private String hash;
+    private int length;
+    private ChunkHash hash;
     private int order;
-}
\ No newline at end of file
+}
@@ -0,0 +1,22 @@
+package com.hydrangea.storage_service.dto.response;
+
+import com.hydrangea.storage_service.constant.CompressionCodec;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Detached view of where a chunk's bytes live, safe to use outside a transaction
+@Getter
+@AllArgsConstructor
+public class ChunkLocation {
+    private String s3Key;
+    // Offset inside a pack object, null when the chunk is its own object
+    private Long offset;
+    private CompressionCodec codec;
+    private long chunkSize;
+    private long storedSize;
+
+    public boolean isPacked() {
+        return offset != null;
+    }
+}
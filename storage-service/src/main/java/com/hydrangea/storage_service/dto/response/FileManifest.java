@@ -0,0 +1,43 @@
+package com.hydrangea.storage_service.dto.response;
+
+import java.util.List;
+
+import com.hydrangea.storage_service.constant.CompressionCodec;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class FileManifest {
+    private String fileId;
+    private String originalFileName;
+    private String contentType;
+    private long fileSize;
+    private List<ChunkLocation> chunks;
+    // Whole content for files stored inline, null for chunked files
+    private byte[] inlineData;
+
+    // Codec shared by every chunk, or null when the file mixes codecs
+    public CompressionCodec getCommonCodec() {
+        if (inlineData != null) {
+            return CompressionCodec.NONE;
+        }
+        CompressionCodec common = null;
+        for (ChunkLocation chunk : chunks) {
+            if (common == null) {
+                common = chunk.getCodec();
+            } else if (common != chunk.getCodec()) {
+                return null;
+            }
+        }
+        return common;
+    }
+
+    public long getStoredSize() {
+        if (inlineData != null) {
+            return inlineData.length;
+        }
+        return chunks.stream().mapToLong(ChunkLocation::getStoredSize).sum();
+    }
+}
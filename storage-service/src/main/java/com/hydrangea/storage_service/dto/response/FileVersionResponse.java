@@ -0,0 +1,36 @@
+package com.hydrangea.storage_service.dto.response;
+
+import java.time.LocalDateTime;
+
+import com.hydrangea.storage_service.entity.FileMetadata;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FileVersionResponse {
+    private String fileId;
+    private Integer versionNumber;
+    private String name;
+    private Long size;
+    private String contentType;
+    private LocalDateTime uploadedAt;
+    private boolean latest;
+
+    public static FileVersionResponse from(FileMetadata file) {
+        return FileVersionResponse.builder()
+                .fileId(file.getFileId())
+                .versionNumber(file.getVersionNumber())
+                .name(file.getOriginalFileName())
+                .size(file.getFileSize())
+                .contentType(file.getContentType())
+                .uploadedAt(file.getUploadedAt())
+                .latest(file.isLatest())
+                .build();
+    }
+}
@@ -0,0 +1,42 @@
+package com.hydrangea.storage_service.dto.response;
+
+import java.time.LocalDateTime;
+
+import com.hydrangea.storage_service.constant.JobStatus;
+import com.hydrangea.storage_service.constant.JobType;
+import com.hydrangea.storage_service.entity.BackgroundJob;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class JobResponse {
+    private String jobId;
+    private JobType type;
+    private JobStatus status;
+    private Long totalItems;
+    private Long processedItems;
+    private String message;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    public static JobResponse from(BackgroundJob job) {
+        return JobResponse.builder()
+                .jobId(job.getJobId())
+                .type(job.getType())
+                .status(job.getStatus())
+                .totalItems(job.getTotalItems())
+                .processedItems(job.getProcessedItems())
+                .message(job.getMessage())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
@@ -22,4 +22,9 @@ public class ShareLinkResponse {
     private Boolean isPasswordProtected;
     private Boolean isActive;
     private LocalDateTime createdAt;
+    private Long accessCount;
+    private Long bytesServed;
+    // Only on verification: present in the X-Share-Link-Token header instead of the password
+    private String accessToken;
+    private Long accessTokenExpiresIn; // seconds
 }
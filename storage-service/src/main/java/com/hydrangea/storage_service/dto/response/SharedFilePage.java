@@ -0,0 +1,18 @@
+package com.hydrangea.storage_service.dto.response;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SharedFilePage {
+    private List<FileResponse> files;
+    // Pass as "after" for the next page; null on the last page
+    private Long nextCursor;
+}
@@ -0,0 +1,86 @@
+package com.hydrangea.storage_service.entity;
+
+import com.hydrangea.storage_service.constant.JobStatus;
+import com.hydrangea.storage_service.constant.JobType;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Long-running work started by a request and tracked for progress. The row is
+ * updated in the same transaction as each batch of work, so processedItems
+ * never runs ahead of what has actually committed.
+ */
+@Entity
+@Table(name = "background_jobs", indexes = {
+        @Index(name = "idx_background_job_status", columnList = "status")
+})
+@Getter
+@Setter
+@ToString(exclude = "target")
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+public class BackgroundJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String jobId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private JobType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private JobStatus status = JobStatus.PENDING;
+
+    @Column(nullable = false)
+    private Long ownerId;
+
+    // What the job works on, e.g. a bucket id; its format depends on the type
+    @Column(columnDefinition = "text")
+    private String target;
+
+    @Column(nullable = false)
+    private Long totalItems = 0L;
+
+    @Column(nullable = false)
+    private Long processedItems = 0L;
+
+    @Column(length = 1000)
+    private String message;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column
+    private LocalDateTime startedAt;
+
+    @Column
+    private LocalDateTime finishedAt;
+
+    // Instance running the job; it refreshes heartbeatAt while the job is unfinished
+    @Column(length = 64)
+    private String workerId;
+
+    // A job whose heartbeat went stale lost its worker and may be claimed by another instance
+    @Column
+    private LocalDateTime heartbeatAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.hydrangea.storage_service.entity;
+
+import com.hydrangea.storage_service.constant.CacheName;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * A cache entry some instance changed the data behind, for the other
+ * instances to evict too; see CacheInvalidationBus. Rows are only read for a
+ * short while after they are written and pruned after that.
+ */
+@Entity
+@Table(name = "cache_invalidations", indexes = {
+        @Index(name = "idx_cache_invalidation_created_at", columnList = "createdAt")
+})
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+public class CacheInvalidation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 64)
+    private CacheName cacheName;
+
+    @Column(nullable = false)
+    private String cacheKey;
+
+    // The publishing instance, which has already evicted the entry itself
+    @Column(nullable = false, length = 36)
+    private String origin;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
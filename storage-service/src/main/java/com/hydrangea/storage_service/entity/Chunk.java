@@ -1,6 +1,14 @@
 package com.hydrangea.storage_service.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.hydrangea.storage_service.constant.CompressionCodec;
+import com.hydrangea.storage_service.constant.HashAlgorithm;
+import com.hydrangea.storage_service.util.ChunkHash;
+
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -12,13 +20,15 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "chunks", indexes = {
-        @Index(name = "idx_chunk_hash", columnList = "chunkHash", unique = true)
+        @Index(name = "idx_chunk_algorithm_hash", columnList = "hashAlgorithm, chunkHash", unique = true)
 })
 @Getter
 @Setter
-@ToString
+@ToString(exclude = "pack")
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @NoArgsConstructor
+// Only write changed columns so a reference count bump can't clobber a concurrent pack move
+@DynamicUpdate
 public class Chunk {
 
     @Id
@@ -26,29 +36,61 @@ public class Chunk {
     @EqualsAndHashCode.Include
     private Long id;
 
-    @Column(nullable = false, unique = true, length = 64)
-    private String chunkHash;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @ColumnDefault("'SHA256'")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private HashAlgorithm hashAlgorithm = HashAlgorithm.SHA256;
 
-    @Column(nullable = false)
+    // Raw digest; only unique together with hashAlgorithm
+    @Column(nullable = false, length = ChunkHash.LENGTH)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte[] chunkHash;
+
+    // Own object key, null when the chunk is stored inside a pack
+    @Column
     private String s3Key;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "pack_id")
+    private Pack pack;
+
+    // Start of this chunk inside the pack; the slice length is storedSize
+    @Column
+    private Long packOffset;
+
+    // Uncompressed size of the chunk content
     @Column(nullable = false)
     private Long chunkSize;
 
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @ColumnDefault("'NONE'")
+    private CompressionCodec codec = CompressionCodec.NONE;
+
+    // Bytes actually held in the object store, null for rows written before compression
+    @Column
+    private Long storedSize;
+
     @Column(nullable = false)
     private Integer referenceCount = 0;
 
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
-    public void incrementReference() {
-        this.referenceCount++;
+    public ChunkHash getChunkHash() {
+        return ChunkHash.of(hashAlgorithm, chunkHash);
     }
 
-    public void decrementReference() {
-        if (this.referenceCount > 0) {
-            this.referenceCount--;
-        }
+    public void setChunkHash(ChunkHash hash) {
+        this.hashAlgorithm = hash.getAlgorithm();
+        this.chunkHash = hash.toBytes();
+    }
+
+    public Long getStoredSize() {
+        return storedSize != null ? storedSize : chunkSize;
     }
 
     @PrePersist
@@ -59,5 +101,8 @@ public class Chunk {
         if (referenceCount == null) {
             referenceCount = 0;
         }
+        if (codec == null) {
+            codec = CompressionCodec.NONE;
+        }
     }
 }
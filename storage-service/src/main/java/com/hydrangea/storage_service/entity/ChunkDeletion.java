@@ -0,0 +1,58 @@
+package com.hydrangea.storage_service.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox entry for a chunk whose reference count dropped to zero. Written in
+ * the same transaction as the decrement and drained by ChunkGarbageCollector,
+ * so a crash between commit and object deletion can't orphan the object.
+ */
+@Entity
+@Table(name = "chunk_deletion_outbox", indexes = {
+        @Index(name = "idx_chunk_deletion_next_attempt", columnList = "nextAttemptAt")
+})
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+public class ChunkDeletion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    // Plain id rather than a relation, the chunk row is deleted before this entry
+    @Column(nullable = false)
+    private Long chunkId;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+}
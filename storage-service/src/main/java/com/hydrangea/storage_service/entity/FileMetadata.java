@@ -1,6 +1,7 @@
 package com.hydrangea.storage_service.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -13,7 +14,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "files")
+@Table(name = "files", indexes = {
+        @Index(name = "idx_file_version", columnList = "versionGroup, versionNumber", unique = true),
+        @Index(name = "idx_file_bucket_name", columnList = "bucket_id, originalFileName")
+})
 @Getter
 @Setter
 @ToString(exclude = { "bucket", "chunkMappings" })
@@ -41,6 +45,23 @@ public class FileMetadata {
     @Column(nullable = false)
     private LocalDateTime uploadedAt;
 
+    // Content lives in InlineFileContent instead of chunk mappings
+    @Column(nullable = false)
+    @ColumnDefault("false")
+    private Boolean storedInline = false;
+
+    // Uploads of the same name into a bucket form a version chain named by the first version's fileId
+    private String versionGroup;
+
+    @Column(nullable = false)
+    @ColumnDefault("1")
+    private Integer versionNumber = 1;
+
+    // Only the newest version of a chain is listed and exported
+    @Column(nullable = false)
+    @ColumnDefault("true")
+    private Boolean latest = true;
+
     @OneToMany(mappedBy = "file", cascade = CascadeType.ALL)
     @OrderBy("chunkOrder ASC")
     private List<FileChunkMapping> chunkMappings = new ArrayList<>();
@@ -49,11 +70,25 @@ public class FileMetadata {
     @JoinColumn(name = "bucket_id", nullable = false)
     private Bucket bucket;
 
+    public boolean isInline() {
+        return Boolean.TRUE.equals(storedInline);
+    }
+
+    public boolean isLatest() {
+        return Boolean.TRUE.equals(latest);
+    }
+
     @PrePersist
     protected void onCreate() {
         if (uploadedAt == null) {
             uploadedAt = LocalDateTime.now();
         }
+        if (storedInline == null) {
+            storedInline = false;
+        }
+        if (versionGroup == null) {
+            versionGroup = fileId;
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.hydrangea.storage_service.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+// Kept apart from FileMetadata so listing files never drags the content along
+@Entity
+@Table(name = "file_inline_contents")
+@Getter
+@Setter
+@ToString(exclude = { "file", "data" })
+@NoArgsConstructor
+public class InlineFileContent {
+
+    @Id
+    private Long fileId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "file_id")
+    private FileMetadata file;
+
+    @Column(nullable = false)
+    private byte[] data;
+
+    public InlineFileContent(FileMetadata file, byte[] data) {
+        this.file = file;
+        this.data = data;
+    }
+}
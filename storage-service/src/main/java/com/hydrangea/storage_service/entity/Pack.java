@@ -0,0 +1,52 @@
+package com.hydrangea.storage_service.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * A single object store object holding many small chunks back to back. Chunks
+ * point into it with an offset; their stored size is the slice length.
+ */
+@Entity
+@Table(name = "packs")
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+public class Pack {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String s3Key;
+
+    @Column(nullable = false)
+    private Long totalSize;
+
+    @Column(nullable = false)
+    private Integer chunkCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    // Set once the compactor has moved every live chunk out of this pack
+    @Column
+    private LocalDateTime retiredAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.hydrangea.storage_service.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * A token that must no longer be accepted: logged out, or a refresh token
+ * that was already rotated. Rows are only useful until the token would have
+ * expired anyway and are pruned after that, see TokenRevocationList.
+ */
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+        @Index(name = "idx_revoked_token_revoked_at", columnList = "revokedAt"),
+        @Index(name = "idx_revoked_token_expires_at", columnList = "expiresAt")
+})
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+public class RevokedToken {
+
+    // The token's jti claim
+    @Id
+    @Column(length = 64)
+    @EqualsAndHashCode.Include
+    private String jti;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(nullable = false)
+    private LocalDateTime revokedAt;
+}
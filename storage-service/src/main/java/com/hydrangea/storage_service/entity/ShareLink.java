@@ -10,6 +10,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -29,7 +30,10 @@ import lombok.ToString;
 @Getter
 @Setter
 @ToString(exclude = "hashPassword")
-@Table(name = "share_links")
+@Table(name = "share_links", indexes = {
+        @Index(name = "idx_share_link_creator", columnList = "created_by_id, isActive, id"),
+        @Index(name = "idx_share_link_resource", columnList = "resourceId")
+})
 public class ShareLink {
 
     @Id
@@ -60,6 +64,20 @@ public class ShareLink {
     @Default
     private Boolean isActive = true;
 
+    // Bumped to revoke every access token issued for this link
+    @Column
+    @Default
+    private Integer tokenGeneration = 0;
+
+    // Public downloads through the link, flushed periodically by ShareDownloadService
+    @Column
+    @Default
+    private Long accessCount = 0L;
+
+    @Column
+    @Default
+    private Long bytesServed = 0L;
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
@@ -22,6 +22,8 @@ public enum ErrorCode {
     SHARE_LINK_NOT_FOUND(1014, "Share link not found", HttpStatus.NOT_FOUND),
     INVALID_SHARE_LINK(1015, "Invalid or expired share link", HttpStatus.BAD_REQUEST),
     SHARE_LINK_PASSWORD_INVALID(1016, "Invalid password for share link", HttpStatus.UNAUTHORIZED),
+    TOO_MANY_REQUESTS(1017, "Too many requests, try again later", HttpStatus.TOO_MANY_REQUESTS),
+    SERVICE_BUSY(1018, "Service is busy, try again later", HttpStatus.SERVICE_UNAVAILABLE),
     ;
 
     private final int code;
@@ -0,0 +1,18 @@
+package com.hydrangea.storage_service.exception;
+
+/**
+ * Load shedding rather than failure: the request was refused before any work
+ * was done and can be retried after {@link #getRetryAfterSeconds()}.
+ */
+public class ServiceBusyException extends AppException {
+    private final long retryAfterSeconds;
+
+    public ServiceBusyException(ErrorCode errorCode, long retryAfterSeconds) {
+        super(errorCode, errorCode.getMessage());
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,76 @@
+package com.hydrangea.storage_service.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.hydrangea.storage_service.constant.JobStatus;
+import com.hydrangea.storage_service.constant.JobType;
+import com.hydrangea.storage_service.entity.BackgroundJob;
+
+public interface BackgroundJobRepository extends JpaRepository<BackgroundJob, Long> {
+    Optional<BackgroundJob> findByJobId(String jobId);
+
+    Optional<BackgroundJob> findByJobIdAndOwnerId(String jobId, Long ownerId);
+
+    // Unfinished jobs nobody is working on: never claimed, or their worker stopped sending heartbeats
+    @Query("""
+            SELECT j FROM BackgroundJob j
+            WHERE j.type IN :types AND j.status IN :statuses
+              AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)
+            ORDER BY j.id
+            """)
+    List<BackgroundJob> findAbandoned(@Param("types") Collection<JobType> types,
+            @Param("statuses") Collection<JobStatus> statuses, @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Makes the worker the job's only runner. Succeeds for a job the worker
+     * created, and for an unfinished job whose heartbeat went stale, so of
+     * several instances resuming the same job exactly one gets it.
+     */
+    @Modifying
+    @Query("""
+            UPDATE BackgroundJob j
+            SET j.status = :running, j.workerId = :workerId, j.heartbeatAt = :now, j.startedAt = :now,
+                j.processedItems = 0
+            WHERE j.jobId = :jobId AND j.status IN :statuses
+              AND (j.workerId = :workerId OR j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)
+            """)
+    int claim(@Param("jobId") String jobId, @Param("workerId") String workerId,
+            @Param("running") JobStatus running, @Param("statuses") Collection<JobStatus> statuses,
+            @Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore);
+
+    @Modifying
+    @Query("""
+            UPDATE BackgroundJob j SET j.heartbeatAt = :now
+            WHERE j.workerId = :workerId AND j.status IN :statuses
+            """)
+    int heartbeat(@Param("workerId") String workerId, @Param("statuses") Collection<JobStatus> statuses,
+            @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE BackgroundJob j SET j.totalItems = :total WHERE j.jobId = :jobId AND j.workerId = :workerId")
+    int setTotal(@Param("jobId") String jobId, @Param("workerId") String workerId, @Param("total") long total);
+
+    // Called from inside a batch's transaction so progress commits with the work; 0 if the job was taken over
+    @Modifying
+    @Query("""
+            UPDATE BackgroundJob j SET j.processedItems = j.processedItems + :count
+            WHERE j.jobId = :jobId AND j.workerId = :workerId
+            """)
+    int addProgress(@Param("jobId") String jobId, @Param("workerId") String workerId, @Param("count") long count);
+
+    @Modifying
+    @Query("""
+            UPDATE BackgroundJob j SET j.status = :status, j.message = :message, j.finishedAt = :now
+            WHERE j.jobId = :jobId AND j.workerId = :workerId
+            """)
+    int finish(@Param("jobId") String jobId, @Param("workerId") String workerId, @Param("status") JobStatus status,
+            @Param("message") String message, @Param("now") LocalDateTime now);
+}
@@ -5,15 +5,28 @@ import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.hydrangea.storage_service.constant.AccessLevel;
 import com.hydrangea.storage_service.entity.Bucket;
 
 public interface BucketRepository extends JpaRepository<Bucket, Long> {
+    interface AccessRow {
+        Long getOwnerId();
+
+        // Null unless the user is a collaborator on the bucket
+        AccessLevel getAccessLevel();
+    }
+
     Optional<Bucket> findByNameAndUserId(String name, Long userId);
 
     Optional<Bucket> findByBucketId(String bucketId);
 
+    @Query("SELECT b.id FROM Bucket b WHERE b.bucketId = :bucketId")
+    Optional<Long> findIdByBucketId(@Param("bucketId") String bucketId);
+
     List<Bucket> findByUserId(Long userId);
 
     Optional<Bucket> findByBucketIdAndUserId(String bucketId, Long userId);
@@ -23,4 +36,17 @@ public interface BucketRepository extends JpaRepository<Bucket, Long> {
     @Modifying
     @Transactional
     void deleteByBucketId(String bucketId);
+
+    // Ownership and collaborator access of one user on one bucket; empty when the bucket doesn't exist
+    @Query("""
+            SELECT b.user.id AS ownerId, c.accessLevel AS accessLevel
+            FROM Bucket b LEFT JOIN Collaborator c ON c.bucket = b AND c.collaborator.id = :userId
+            WHERE b.id = :bucketId
+            """)
+    List<AccessRow> findAccess(@Param("bucketId") Long bucketId, @Param("userId") Long userId);
+
+    // Bulk delete so the files collection isn't loaded for cascading
+    @Modifying
+    @Query("DELETE FROM Bucket b WHERE b.id = :id")
+    int deleteByIdInBulk(@Param("id") Long id);
 }
@@ -0,0 +1,20 @@
+package com.hydrangea.storage_service.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.hydrangea.storage_service.entity.CacheInvalidation;
+
+public interface CacheInvalidationRepository extends JpaRepository<CacheInvalidation, Long> {
+
+    List<CacheInvalidation> findByCreatedAtAfterAndOriginNotOrderById(LocalDateTime since, String origin);
+
+    @Modifying
+    @Query("DELETE FROM CacheInvalidation c WHERE c.createdAt < :before")
+    int deleteOlderThan(@Param("before") LocalDateTime before);
+}
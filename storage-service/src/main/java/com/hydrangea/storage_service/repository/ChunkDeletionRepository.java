@@ -0,0 +1,57 @@
+package com.hydrangea.storage_service.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.hydrangea.storage_service.entity.ChunkDeletion;
+
+public interface ChunkDeletionRepository extends JpaRepository<ChunkDeletion, Long> {
+
+    // Due entries, skipping ones another collector instance is already working on
+    @Query(value = """
+            SELECT * FROM chunk_deletion_outbox
+            WHERE next_attempt_at <= :now
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<ChunkDeletion> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Enqueues every chunk of the files left without references, due at notBefore; run before the mappings are removed
+    @Modifying
+    @Query(value = """
+            INSERT INTO chunk_deletion_outbox (chunk_id, attempts, next_attempt_at, created_at)
+            SELECT c.id, 0, :notBefore, now() FROM chunks c
+            WHERE c.reference_count <= 0
+            AND c.id IN (SELECT m.chunk_id FROM file_chunk_mappings m WHERE m.file_id IN (:fileIds))
+            """, nativeQuery = true)
+    int enqueueUnreferencedForFiles(@Param("fileIds") Collection<Long> fileIds,
+            @Param("notBefore") LocalDateTime notBefore);
+
+    /**
+     * Records an object stored for an upload that then failed to commit: an
+     * unreferenced chunk row plus its outbox entry, due at notBefore. Nothing
+     * is written when the hash already has a row, which owns the same object.
+     */
+    @Modifying
+    @Query(value = """
+            WITH orphan AS (
+                INSERT INTO chunks (hash_algorithm, chunk_hash, s3_key, chunk_size, codec, stored_size,
+                                    reference_count, created_at)
+                VALUES (:hashAlgorithm, :chunkHash, :s3Key, :chunkSize, :codec, :storedSize, 0, now())
+                ON CONFLICT (hash_algorithm, chunk_hash) DO NOTHING
+                RETURNING id
+            )
+            INSERT INTO chunk_deletion_outbox (chunk_id, attempts, next_attempt_at, created_at)
+            SELECT id, 0, :notBefore, now() FROM orphan
+            """, nativeQuery = true)
+    int enqueueOrphan(@Param("hashAlgorithm") String hashAlgorithm, @Param("chunkHash") byte[] chunkHash,
+            @Param("s3Key") String s3Key, @Param("chunkSize") long chunkSize, @Param("codec") String codec,
+            @Param("storedSize") long storedSize, @Param("notBefore") LocalDateTime notBefore);
+}
@@ -1,14 +1,58 @@
 package com.hydrangea.storage_service.repository;
 
-import java.util.UUID;
+import java.util.Collection;
+import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.hydrangea.storage_service.constant.HashAlgorithm;
 import com.hydrangea.storage_service.entity.Chunk;
+import com.hydrangea.storage_service.util.ChunkHash;
+
+import jakarta.persistence.LockModeType;
+
 import org.springframework.stereotype.Repository;
 import java.util.Optional;
 
 @Repository
 public interface ChunkRepository extends JpaRepository<Chunk, Long> {
-    Optional<Chunk> findByChunkHash(String chunkHash);
+    Optional<Chunk> findByHashAlgorithmAndChunkHash(HashAlgorithm hashAlgorithm, byte[] chunkHash);
+
+    // Dedup lookup; the algorithm is part of the key so SHA-256 and BLAKE3 digests never match
+    default Optional<Chunk> findByChunkHash(ChunkHash chunkHash) {
+        return findByHashAlgorithmAndChunkHash(chunkHash.getAlgorithm(), chunkHash.toBytes());
+    }
+
+    // Locks the referenced chunks of a pack while the compactor relocates them
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Chunk c WHERE c.pack.id = :packId AND c.referenceCount > 0 ORDER BY c.packOffset")
+    List<Chunk> findLiveInPackForUpdate(@Param("packId") Long packId);
+
+    // Returns 0 if the garbage collector removed the row, in which case the chunk must be stored again
+    @Modifying
+    @Query("UPDATE Chunk c SET c.referenceCount = c.referenceCount + 1 WHERE c.id = :id")
+    int incrementReference(@Param("id") Long id);
+
+    // Drops one reference per mapping of the files in a single statement
+    @Modifying
+    @Query(value = """
+            UPDATE chunks c SET reference_count = c.reference_count - m.refs
+            FROM (SELECT chunk_id, COUNT(*) AS refs FROM file_chunk_mappings
+                  WHERE file_id IN (:fileIds) GROUP BY chunk_id) m
+            WHERE c.id = m.chunk_id
+            """, nativeQuery = true)
+    int releaseFileReferences(@Param("fileIds") Collection<Long> fileIds);
+
+    // Locks chunks that are still unreferenced; re-referenced ones are left out and survive
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Chunk c WHERE c.id IN :ids AND c.referenceCount <= 0")
+    List<Chunk> findUnreferencedForUpdate(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM Chunk c WHERE c.id IN :ids AND c.referenceCount <= 0")
+    int deleteUnreferenced(@Param("ids") Collection<Long> ids);
 }
@@ -1,9 +1,15 @@
 package com.hydrangea.storage_service.repository;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.hydrangea.storage_service.dto.response.CollaboratorResponse;
 import com.hydrangea.storage_service.entity.Bucket;
 import com.hydrangea.storage_service.entity.Collaborator;
 import com.hydrangea.storage_service.entity.User;
@@ -13,5 +19,20 @@ public interface CollaboratorRepository extends JpaRepository<Collaborator, Long
 
     boolean existsByBucketAndCollaborator(Bucket bucket, User collaborator);
 
+    // Keyset page of a bucket's collaborators, projected straight into the response
+    @Query("""
+            SELECT new com.hydrangea.storage_service.dto.response.CollaboratorResponse(
+                c.id, u.username, u.email, c.accessLevel)
+            FROM Collaborator c JOIN c.collaborator u
+            WHERE c.bucket.id = :bucketId AND c.id > :afterId
+            ORDER BY c.id
+            """)
+    List<CollaboratorResponse> findPageByBucketId(@Param("bucketId") Long bucketId, @Param("afterId") Long afterId,
+            Pageable pageable);
+
     void deleteByBucketAndCollaborator(Bucket bucket, User collaborator);
+
+    @Modifying
+    @Query("DELETE FROM Collaborator c WHERE c.bucket.id = :bucketId")
+    int deleteByBucketId(@Param("bucketId") Long bucketId);
 }
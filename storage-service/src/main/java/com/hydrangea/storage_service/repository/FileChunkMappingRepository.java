@@ -1,9 +1,87 @@
 package com.hydrangea.storage_service.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.hydrangea.storage_service.entity.FileChunkMapping;
 
 public interface FileChunkMappingRepository extends JpaRepository<FileChunkMapping, Long> {
 
+    // Ordered manifest with chunks and packs in one round trip
+    @Query("""
+            SELECT m FROM FileChunkMapping m
+            JOIN FETCH m.chunk c
+            LEFT JOIN FETCH c.pack
+            WHERE m.file.id = :fileId
+            ORDER BY m.chunkOrder ASC
+            """)
+    List<FileChunkMapping> findManifest(@Param("fileId") Long fileId);
+
+    // Manifests of several files at once, grouped by file and ordered within each
+    @Query("""
+            SELECT m FROM FileChunkMapping m
+            JOIN FETCH m.chunk c
+            LEFT JOIN FETCH c.pack
+            WHERE m.file.id IN :fileIds
+            ORDER BY m.file.id ASC, m.chunkOrder ASC
+            """)
+    List<FileChunkMapping> findManifests(@Param("fileIds") Collection<Long> fileIds);
+
+    /**
+     * Maps the source file's chunks with fromOrder <= chunk_order < toOrder
+     * into the target file, shifting their order, and takes one reference per
+     * copied mapping, in one statement.
+     */
+    @Modifying
+    @Query(value = """
+            WITH copied AS (
+                INSERT INTO file_chunk_mappings (file_id, chunk_id, chunk_order)
+                SELECT :targetId, m.chunk_id, m.chunk_order + :orderShift
+                FROM file_chunk_mappings m
+                WHERE m.file_id = :sourceId AND m.chunk_order >= :fromOrder AND m.chunk_order < :toOrder
+                RETURNING chunk_id
+            )
+            UPDATE chunks c SET reference_count = c.reference_count + r.refs
+            FROM (SELECT chunk_id, COUNT(*) AS refs FROM copied GROUP BY chunk_id) r
+            WHERE c.id = r.chunk_id
+            """, nativeQuery = true)
+    int copyRange(@Param("sourceId") Long sourceId, @Param("targetId") Long targetId,
+            @Param("fromOrder") int fromOrder, @Param("toOrder") int toOrder, @Param("orderShift") int orderShift);
+
+    /**
+     * Several copyRange calls in one statement. Each range is given by the
+     * elements at the same index of the arrays, so composing from thousands
+     * of files is still a single round trip.
+     */
+    @Modifying
+    @Query(value = """
+            WITH ranges AS (
+                SELECT * FROM unnest(CAST(:sourceIds AS bigint[]), CAST(:fromOrders AS int[]),
+                                     CAST(:toOrders AS int[]), CAST(:orderShifts AS int[]))
+                    AS r(source_id, from_order, to_order, order_shift)
+            ),
+            copied AS (
+                INSERT INTO file_chunk_mappings (file_id, chunk_id, chunk_order)
+                SELECT :targetId, m.chunk_id, m.chunk_order + r.order_shift
+                FROM ranges r
+                JOIN file_chunk_mappings m ON m.file_id = r.source_id
+                    AND m.chunk_order >= r.from_order AND m.chunk_order < r.to_order
+                RETURNING chunk_id
+            )
+            UPDATE chunks c SET reference_count = c.reference_count + r.refs
+            FROM (SELECT chunk_id, COUNT(*) AS refs FROM copied GROUP BY chunk_id) r
+            WHERE c.id = r.chunk_id
+            """, nativeQuery = true)
+    int copyRanges(@Param("targetId") Long targetId, @Param("sourceIds") Long[] sourceIds,
+            @Param("fromOrders") Integer[] fromOrders, @Param("toOrders") Integer[] toOrders,
+            @Param("orderShifts") Integer[] orderShifts);
+
+    @Modifying
+    @Query("DELETE FROM FileChunkMapping m WHERE m.file.id IN :fileIds")
+    int deleteByFileIds(@Param("fileIds") Collection<Long> fileIds);
 }
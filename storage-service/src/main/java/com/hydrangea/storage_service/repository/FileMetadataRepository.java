@@ -2,22 +2,258 @@ package com.hydrangea.storage_service.repository;
 
 import com.hydrangea.storage_service.entity.Bucket;
 import com.hydrangea.storage_service.entity.FileMetadata;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface FileMetadataRepository extends JpaRepository<FileMetadata, Long> {
 
+    interface FileCopyRow {
+        String getSourceFileId();
+
+        String getCopyFileId();
+    }
+
     List<FileMetadata> findByBucketAndBucket_User_Id(Bucket bucket, Long userId);
 
-    Optional<FileMetadata> findByFileIdAndBucket_User_Id(String fileId, Long userId);
+    List<FileMetadata> findByBucketAndLatestTrue(Bucket bucket);
+
+    List<FileMetadata> findByVersionGroupOrderByVersionNumberDesc(String versionGroup);
+
+    /**
+     * Serialises versioning of one name in a bucket until the transaction
+     * ends. The first upload of a name has no row to lock, so without this
+     * two of them would each start a chain. Take it before locking the
+     * latest row, like assignVersion does, so the locks are always taken in
+     * the same order.
+     */
+    @Query(value = "SELECT 1 FROM pg_advisory_xact_lock(hashtext(CAST(:bucketId AS text) || '/' || :name))",
+            nativeQuery = true)
+    int lockName(@Param("bucketId") Long bucketId, @Param("name") String name);
+
+    // The newest chain for a name, locked; callers take lockName first
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            SELECT f FROM FileMetadata f
+            WHERE f.bucket.id = :bucketId AND f.originalFileName = :name AND f.latest = true
+            ORDER BY f.id DESC
+            """)
+    List<FileMetadata> findLatestForUpdate(@Param("bucketId") Long bucketId, @Param("name") String name,
+            Pageable pageable);
+
+    // Every version of the chains the given files belong to; callers check access on the files first
+    @Query("""
+            SELECT f.id FROM FileMetadata f
+            WHERE f.fileId IN :fileIds
+               OR f.versionGroup IN (SELECT g.versionGroup FROM FileMetadata g WHERE g.fileId IN :fileIds)
+            ORDER BY f.id
+            """)
+    List<Long> findChainIdsByFileIds(@Param("fileIds") Collection<String> fileIds);
+
+    /**
+     * Older versions outside the retention policy: beyond the newest
+     * maxVersions of their chain, or uploaded before the cutoff. The latest
+     * version is never returned. Only chains that have older versions are
+     * ranked. The rows are locked, skipping ones another pruner instance
+     * already claimed.
+     */
+    @Query(value = """
+            SELECT id FROM files
+            WHERE id IN (
+                SELECT v.id FROM (
+                    SELECT f.id, f.latest, f.uploaded_at,
+                           row_number() OVER (PARTITION BY f.version_group ORDER BY f.version_number DESC)
+                               AS version_rank
+                    FROM files f
+                    WHERE f.version_group IN (SELECT version_group FROM files WHERE NOT latest)
+                ) v
+                WHERE NOT v.latest
+                  AND ((:maxVersions > 0 AND v.version_rank > :maxVersions + 1)
+                       OR (:maxAgeDays > 0 AND v.uploaded_at < :cutoff))
+            )
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<Long> lockExpiredVersionIds(@Param("maxVersions") int maxVersions, @Param("maxAgeDays") int maxAgeDays,
+            @Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
 
     Optional<FileMetadata> findByFileId(String fileId);
 
     boolean existsByFileIdAndBucket_User_Id(String fileId, Long userId);
 
     boolean existsByFileId(String fileId);
+
+    @Query("SELECT f.id FROM FileMetadata f WHERE f.storedInline = true AND f.fileSize > :maxSize ORDER BY f.id")
+    List<Long> findInlineIdsLargerThan(@Param("maxSize") long maxSize, Pageable pageable);
+
+    // Locks an inline file for migration; empty if it was migrated already or another instance holds it
+    @Query(value = "SELECT * FROM files WHERE id = :id AND stored_inline FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<FileMetadata> lockInlineForMigration(@Param("id") Long id);
+
+    @Query("SELECT f.id FROM FileMetadata f WHERE f.bucket.id = :bucketId ORDER BY f.id")
+    List<Long> findIdsByBucketId(@Param("bucketId") Long bucketId, Pageable pageable);
+
+    long countByBucket_Id(Long bucketId);
+
+    // Keyset page of a bucket's files whose name starts with the prefix pattern, for archive export
+    @Query("""
+            SELECT f FROM FileMetadata f
+            WHERE f.bucket.id = :bucketId AND f.id > :afterId AND f.originalFileName LIKE :namePattern
+              AND f.latest = true
+            ORDER BY f.id
+            """)
+    List<FileMetadata> findBucketPage(@Param("bucketId") Long bucketId, @Param("afterId") Long afterId,
+            @Param("namePattern") String namePattern, Pageable pageable);
+
+    // Keeps the files from being deleted until the caller's transaction ends
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT f FROM FileMetadata f WHERE f.id IN :ids")
+    List<FileMetadata> lockForShare(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT f FROM FileMetadata f WHERE f.fileId IN :fileIds ORDER BY f.id")
+    List<FileMetadata> findByFileIds(@Param("fileIds") Collection<String> fileIds);
+
+    @Query("""
+            SELECT f.id FROM FileMetadata f
+            WHERE f.bucket.id = :bucketId AND f.id > :afterId AND f.latest = true
+            ORDER BY f.id
+            """)
+    List<Long> findLatestIdsByBucketIdAfter(@Param("bucketId") Long bucketId, @Param("afterId") Long afterId,
+            Pageable pageable);
+
+    /**
+     * Copies files into another bucket without touching content: new file
+     * rows, duplicated chunk mappings and inline content, and one reference
+     * per copied mapping, all in a single statement. src is materialized so
+     * each generated file id is drawn exactly once.
+     *
+     * A copy becomes the next version of the target's chain for its name, as
+     * an upload would; sources sharing a name are appended in id order and
+     * the last one is latest. Lock the target chains first with
+     * findLatestByNamesForUpdate.
+     */
+    @Query(value = """
+            WITH src AS MATERIALIZED (
+                SELECT f.id, f.file_id, f.original_file_name, f.file_size, f.content_type, f.stored_inline,
+                       gen_random_uuid()::text AS new_file_id,
+                       row_number() OVER (PARTITION BY f.original_file_name ORDER BY f.id) AS name_rank,
+                       count(*) OVER (PARTITION BY f.original_file_name) AS name_count
+                FROM files f WHERE f.id IN (:fileIds)
+            ),
+            named AS (
+                SELECT src.*, first_value(new_file_id)
+                           OVER (PARTITION BY original_file_name ORDER BY id) AS new_group
+                FROM src
+            ),
+            chains AS (
+                SELECT DISTINCT ON (f.original_file_name) f.id, f.original_file_name, f.version_group,
+                       f.version_number
+                FROM files f
+                WHERE f.bucket_id = :targetBucketId AND f.latest
+                  AND f.original_file_name IN (SELECT original_file_name FROM src)
+                ORDER BY f.original_file_name, f.id DESC
+            ),
+            demoted AS (
+                UPDATE files SET latest = false
+                WHERE bucket_id = :targetBucketId AND latest
+                  AND original_file_name IN (SELECT original_file_name FROM src)
+            ),
+            copied AS (
+                INSERT INTO files (file_id, original_file_name, file_size, content_type, uploaded_at,
+                                   stored_inline, bucket_id, version_group, version_number, latest)
+                SELECT n.new_file_id, n.original_file_name, n.file_size, n.content_type, now(), n.stored_inline,
+                       :targetBucketId, COALESCE(c.version_group, n.new_group),
+                       COALESCE(c.version_number, 0) + n.name_rank, n.name_rank = n.name_count
+                FROM named n LEFT JOIN chains c ON c.original_file_name = n.original_file_name
+                RETURNING id, file_id
+            ),
+            pairs AS (
+                SELECT src.id AS source_id, src.file_id AS source_file_id,
+                       copied.id AS copy_id, copied.file_id AS copy_file_id
+                FROM src JOIN copied ON copied.file_id = src.new_file_id
+            ),
+            mapping_copies AS (
+                INSERT INTO file_chunk_mappings (file_id, chunk_id, chunk_order)
+                SELECT pairs.copy_id, m.chunk_id, m.chunk_order
+                FROM pairs JOIN file_chunk_mappings m ON m.file_id = pairs.source_id
+            ),
+            inline_copies AS (
+                INSERT INTO file_inline_contents (file_id, data)
+                SELECT pairs.copy_id, c.data
+                FROM pairs JOIN file_inline_contents c ON c.file_id = pairs.source_id
+            ),
+            reference_bumps AS (
+                UPDATE chunks c SET reference_count = c.reference_count + r.refs
+                FROM (SELECT m.chunk_id, COUNT(*) AS refs
+                      FROM src JOIN file_chunk_mappings m ON m.file_id = src.id
+                      GROUP BY m.chunk_id) r
+                WHERE c.id = r.chunk_id
+            )
+            SELECT source_file_id AS "sourceFileId", copy_file_id AS "copyFileId" FROM pairs
+            """, nativeQuery = true)
+    List<FileCopyRow> copyFiles(@Param("fileIds") Collection<Long> fileIds,
+            @Param("targetBucketId") Long targetBucketId);
+
+    // Gives an existing file row the content of another: mappings, inline data and references
+    @Modifying
+    @Query(value = """
+            WITH mapping_copies AS (
+                INSERT INTO file_chunk_mappings (file_id, chunk_id, chunk_order)
+                SELECT :targetId, m.chunk_id, m.chunk_order
+                FROM file_chunk_mappings m WHERE m.file_id = :sourceId
+            ),
+            inline_copies AS (
+                INSERT INTO file_inline_contents (file_id, data)
+                SELECT :targetId, c.data FROM file_inline_contents c WHERE c.file_id = :sourceId
+            )
+            UPDATE chunks c SET reference_count = c.reference_count + r.refs
+            FROM (SELECT m.chunk_id, COUNT(*) AS refs
+                  FROM file_chunk_mappings m WHERE m.file_id = :sourceId
+                  GROUP BY m.chunk_id) r
+            WHERE c.id = r.chunk_id
+            """, nativeQuery = true)
+    int copyContent(@Param("sourceId") Long sourceId, @Param("targetId") Long targetId);
+
+    // Latest versions in a bucket with any of the names, locked so uploads of those names wait
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            SELECT f FROM FileMetadata f
+            WHERE f.bucket.id = :bucketId AND f.latest = true AND f.originalFileName IN :names
+            ORDER BY f.id
+            """)
+    List<FileMetadata> findLatestByNamesForUpdate(@Param("bucketId") Long bucketId,
+            @Param("names") Collection<String> names);
+
+    // Moves whole version chains, so older versions follow the file; callers reject name collisions first
+    @Modifying
+    @Query(value = """
+            UPDATE files SET bucket_id = :targetBucketId
+            WHERE id IN (:fileIds)
+               OR version_group IN (SELECT version_group FROM files WHERE id IN (:fileIds))
+            """, nativeQuery = true)
+    int moveFiles(@Param("fileIds") Collection<Long> fileIds, @Param("targetBucketId") Long targetBucketId);
+
+    // Locks the files that still exist, in id order; a row deleted by a transaction we waited on is left out
+    @Query(value = "SELECT id FROM files WHERE id IN (:ids) ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Long> lockExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT f.fileId FROM FileMetadata f WHERE f.id IN :ids")
+    List<String> findFileIdsByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM FileMetadata f WHERE f.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
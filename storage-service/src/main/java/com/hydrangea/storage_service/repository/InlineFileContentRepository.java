@@ -0,0 +1,17 @@
+package com.hydrangea.storage_service.repository;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.hydrangea.storage_service.entity.InlineFileContent;
+
+public interface InlineFileContentRepository extends JpaRepository<InlineFileContent, Long> {
+
+    @Modifying
+    @Query("DELETE FROM InlineFileContent c WHERE c.fileId IN :fileIds")
+    int deleteByFileIds(@Param("fileIds") Collection<Long> fileIds);
+}
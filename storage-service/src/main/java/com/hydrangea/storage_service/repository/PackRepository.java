@@ -0,0 +1,41 @@
+package com.hydrangea.storage_service.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.hydrangea.storage_service.entity.Pack;
+
+public interface PackRepository extends JpaRepository<Pack, Long> {
+
+    // Live packs old enough to be settled whose referenced bytes fell below the given share.
+    // The cast keeps Hibernate from binding the ratio as the size column's Long type
+    @Query("""
+            SELECT p.id FROM Pack p
+            LEFT JOIN Chunk c ON c.pack = p AND c.referenceCount > 0
+            WHERE p.retiredAt IS NULL AND p.createdAt < :createdBefore
+            GROUP BY p.id, p.totalSize
+            HAVING COALESCE(SUM(c.storedSize), 0) < CAST(p.totalSize AS double) * :maxLiveRatio
+            """)
+    List<Long> findCompactionCandidates(@Param("createdBefore") LocalDateTime createdBefore,
+            @Param("maxLiveRatio") double maxLiveRatio);
+
+    // Retired packs holding chunks that a dedup hit brought back to life after the pack was compacted
+    @Query("""
+            SELECT DISTINCT p.id FROM Pack p
+            JOIN Chunk c ON c.pack = p
+            WHERE p.retiredAt IS NOT NULL AND c.referenceCount > 0
+            """)
+    List<Long> findRetiredWithLiveChunks();
+
+    // Retired packs that no chunk row points at any more
+    @Query("""
+            SELECT p FROM Pack p
+            WHERE p.retiredAt IS NOT NULL AND p.retiredAt < :retiredBefore
+            AND NOT EXISTS (SELECT 1 FROM Chunk c WHERE c.pack = p)
+            """)
+    List<Pack> findPurgeable(@Param("retiredBefore") LocalDateTime retiredBefore);
+}
@@ -0,0 +1,32 @@
+package com.hydrangea.storage_service.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.hydrangea.storage_service.entity.RevokedToken;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    // 0 when the token was already revoked, which makes marking a refresh token used a single atomic step
+    @Modifying
+    @Query(value = """
+            INSERT INTO revoked_tokens (jti, expires_at, revoked_at)
+            VALUES (:jti, :expiresAt, :revokedAt)
+            ON CONFLICT (jti) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("jti") String jti, @Param("expiresAt") LocalDateTime expiresAt,
+            @Param("revokedAt") LocalDateTime revokedAt);
+
+    // Revocations since the given time whose tokens are still live
+    @Query("SELECT r FROM RevokedToken r WHERE r.revokedAt > :since AND r.expiresAt > :now")
+    List<RevokedToken> findRevokedSince(@Param("since") LocalDateTime since, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -3,7 +3,11 @@ package com.hydrangea.storage_service.repository;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.hydrangea.storage_service.entity.ShareLink;
 import com.hydrangea.storage_service.entity.User;
@@ -11,6 +15,9 @@ import com.hydrangea.storage_service.entity.User;
 public interface ShareLinkRepository extends JpaRepository<ShareLink, Long> {
     Optional<ShareLink> findByLink(String link);
 
+    @Query("SELECT s FROM ShareLink s JOIN FETCH s.createdBy WHERE s.link = :link")
+    Optional<ShareLink> findWithCreatorByLink(@Param("link") String link);
+
     Optional<ShareLink> findByResourceId(String resourceId);
 
     List<ShareLink> findByCreatedByAndIsActive(User createdBy, Boolean isActive);
@@ -18,4 +25,22 @@ public interface ShareLinkRepository extends JpaRepository<ShareLink, Long> {
     List<ShareLink> findByResourceIdAndIsActive(String resourceId, Boolean isActive);
 
     boolean existsByLink(String link);
+
+    // Keyset page of a user's links, oldest first
+    @Query("""
+            SELECT s FROM ShareLink s JOIN FETCH s.createdBy
+            WHERE s.createdBy.id = :userId AND s.id > :afterId
+              AND (:activeOnly = false OR s.isActive = true)
+            ORDER BY s.id
+            """)
+    List<ShareLink> findPageByCreator(@Param("userId") Long userId, @Param("afterId") Long afterId,
+            @Param("activeOnly") boolean activeOnly, Pageable pageable);
+
+    @Modifying
+    @Query("""
+            UPDATE ShareLink s SET s.accessCount = s.accessCount + :requests,
+                s.bytesServed = s.bytesServed + :bytes
+            WHERE s.id = :id
+            """)
+    int addUsage(@Param("id") Long id, @Param("requests") long requests, @Param("bytes") long bytes);
 }
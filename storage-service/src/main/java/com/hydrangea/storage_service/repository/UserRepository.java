@@ -1,8 +1,12 @@
 package com.hydrangea.storage_service.repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.hydrangea.storage_service.entity.User;
 
@@ -16,4 +20,8 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Boolean existsByEmail(String email);
 
+    @Modifying
+    @Query("UPDATE User u SET u.lastLoginAt = :at WHERE u.id = :id")
+    int updateLastLoginAt(@Param("id") Long id, @Param("at") LocalDateTime at);
+
 }
@@ -0,0 +1,142 @@
+package com.hydrangea.storage_service.security;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.util.ShareLinkTokenUtil;
+
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-client token bucket on the endpoints that run BCrypt, so one client
+ * can't use up the shared hashing pool. Clients are keyed by remote address;
+ * behind a proxy set server.forward-headers-strategy so that is the real
+ * client rather than the proxy.
+ *
+ * The one exception is a share link verify carrying a valid access token:
+ * verify never looks at the password when a token is sent, so those requests
+ * cost an HMAC and don't use up the client's budget. An invalid token is
+ * charged like a password attempt.
+ */
+@Component
+@Slf4j
+public class AuthRateLimitFilter extends OncePerRequestFilter {
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        private Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+    }
+
+    private static final String SHARE_LINK_VERIFY_PATH = "/api/share-links/verify";
+
+    private final Cache<String, Bucket> buckets;
+    private final MeterRegistry meterRegistry;
+    private final ShareLinkTokenUtil shareLinkTokenUtil;
+    private final List<String> paths;
+    private final double capacity;
+    private final double tokensPerNano;
+
+    public AuthRateLimitFilter(MeterRegistry meterRegistry, ShareLinkTokenUtil shareLinkTokenUtil,
+            @Value("${auth.rate-limit.paths:/api/auth/login,/api/auth/register,/api/share-links/verify}") List<String> paths,
+            @Value("${auth.rate-limit.capacity:10}") int capacity,
+            @Value("${auth.rate-limit.refill-per-minute:20}") int refillPerMinute,
+            @Value("${auth.rate-limit.max-clients:100000}") long maxClients) {
+        this.meterRegistry = meterRegistry;
+        this.shareLinkTokenUtil = shareLinkTokenUtil;
+        this.paths = paths;
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerMinute / (double) Duration.ofMinutes(1).toNanos();
+        // An idle client's bucket would be full again by now, so dropping it changes nothing
+        long idleNanos = (long) Math.ceil(capacity / tokensPerNano);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(idleNanos))
+                .build();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !paths.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+
+        if (hasValidShareLinkToken(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String client = request.getRemoteAddr();
+        long retryAfterSeconds = tryAcquire(client);
+        if (retryAfterSeconds == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        log.warn("Rate limited {} on {}", client, request.getRequestURI());
+        meterRegistry.counter("auth.rate.limited", "path", request.getRequestURI()).increment();
+
+        ErrorCode errorCode = ErrorCode.TOO_MANY_REQUESTS;
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"code\":" + errorCode.getCode()
+                + ",\"message\":\"" + errorCode.getMessage() + "\"}");
+    }
+
+    // Signature and expiry only; the link and generation are checked by the verify itself
+    private boolean hasValidShareLinkToken(HttpServletRequest request) {
+        String token = request.getHeader(ShareLinkTokenUtil.HEADER);
+        if (token == null || token.isEmpty() || !SHARE_LINK_VERIFY_PATH.equals(request.getRequestURI())) {
+            return false;
+        }
+        try {
+            shareLinkTokenUtil.parseToken(token);
+            return true;
+        } catch (JwtException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // 0 when a token was taken, otherwise the seconds until one is available
+    private long tryAcquire(String client) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(client, key -> new Bucket(capacity, now));
+        synchronized (bucket) {
+            bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.refilledAt) * tokensPerNano);
+            bucket.refilledAt = now;
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            double waitNanos = (1 - bucket.tokens) / tokensPerNano;
+            return Math.max(1, (long) Math.ceil(waitNanos / 1_000_000_000d));
+        }
+    }
+}
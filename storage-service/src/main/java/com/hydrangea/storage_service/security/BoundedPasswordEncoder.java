@@ -0,0 +1,125 @@
+package com.hydrangea.storage_service.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.exception.ServiceBusyException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * BCrypt on its own small pool. Each hash costs tens of milliseconds of CPU,
+ * so a login storm run on request threads would take every one of them and
+ * stall file traffic. Here at most threads + queue-size callers wait on
+ * hashing at any time; anyone beyond that, or anyone who waited longer than
+ * max-wait-ms, gets SERVICE_BUSY straight away instead of queueing.
+ */
+@Component
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate = new BCryptPasswordEncoder();
+    private final ThreadPoolExecutor executor;
+    private final long maxWaitMs;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejected;
+
+    public BoundedPasswordEncoder(MeterRegistry meterRegistry,
+            @Value("${auth.password-hashing.threads:0}") int threads,
+            @Value("${auth.password-hashing.queue-size:64}") int queueSize,
+            @Value("${auth.password-hashing.max-wait-ms:2000}") long maxWaitMs) {
+        // Half the cores by default, leaving the rest for the data path
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "password-hashing-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.maxWaitMs = maxWaitMs;
+
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "password.hashing");
+        this.encodeTimer = Timer.builder("auth.password.hashing.duration")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder("auth.password.hashing.duration")
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.password.hashing.rejected")
+                .description("Hashing requests refused because the pool was saturated")
+                .register(meterRegistry);
+        log.info("Password hashing pool: {} threads, queue {}", poolSize, queueSize);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> encodeTimer.record(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw busy();
+        }
+
+        try {
+            return future.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Don't spend a hash on a caller that has already been turned away
+            future.cancel(true);
+            rejected.increment();
+            throw busy();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw busy();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private ServiceBusyException busy() {
+        return new ServiceBusyException(ErrorCode.SERVICE_BUSY, Math.max(1, maxWaitMs / 1000));
+    }
+}
@@ -0,0 +1,43 @@
+package com.hydrangea.storage_service.security;
+
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.service.CacheFactory;
+import com.hydrangea.storage_service.service.CacheInvalidationBus;
+
+/**
+ * Public bucket id to primary key, resolved on nearly every bucket request.
+ * A bucket's key never changes, so the only eviction needed is on delete.
+ */
+@Component
+public class BucketLookupCache {
+
+    private final LoadingCache<String, Long> cache;
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    public BucketLookupCache(BucketRepository bucketRepository,
+            CacheFactory cacheFactory,
+            CacheInvalidationBus cacheInvalidationBus,
+            @Value("${bucket.lookup-cache.max-size:100000}") long maxSize,
+            @Value("${bucket.lookup-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.cache = cacheFactory.build(CacheName.BUCKET, maxSize, ttlSeconds, Function.identity(),
+                bucketId -> bucketRepository.findIdByBucketId(bucketId).orElse(null));
+    }
+
+    // Null when the bucket doesn't exist
+    public Long get(String bucketId) {
+        return cache.get(bucketId);
+    }
+
+    // After the bucket is deleted
+    public void invalidate(String bucketId) {
+        cacheInvalidationBus.publish(CacheName.BUCKET, bucketId);
+    }
+}
@@ -1,6 +1,8 @@
 package com.hydrangea.storage_service.security;
 
 import com.hydrangea.storage_service.util.JwtUtil;
+
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,8 +11,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -24,6 +26,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final UserCache userCache;
+    private final TokenRevocationList tokenRevocationList;
 
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
@@ -43,22 +47,28 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         final String authorizationHeader = request.getHeader("Authorization");
 
-        String username = null;
-        String jwt = null;
+        Claims claims = null;
 
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
+            String jwt = authorizationHeader.substring(7);
             try {
-                username = jwtUtil.extractUsername(jwt);
+                claims = jwtUtil.parseClaims(jwt);
             } catch (Exception e) {
                 log.error("Error extracting username from JWT: {}", e.getMessage());
             }
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        if (claims != null && tokenRevocationList.isRevoked(claims.getId())) {
+            log.debug("Rejecting revoked token of user: {}", claims.getSubject());
+            claims = null;
+        }
+
+        // Refresh tokens are only good for /api/auth/refresh
+        if (claims != null && !jwtUtil.isRefreshToken(claims)
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            CustomUserDetails userDetails = resolveUser(claims);
 
-            if (jwtUtil.validateToken(jwt, userDetails)) {
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -66,10 +76,37 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 authenticationToken.setDetails(
                         new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authenticationToken);
-                log.debug("JWT authentication successful for user: {}", username);
+                log.debug("JWT authentication successful for user: {}", userDetails.getUsername());
             }
         }
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Builds the principal from the verified claims; only the role and enabled
+     * flag are checked live, through the user cache, so authenticated
+     * requests don't hit the users table. Tokens issued before the identity
+     * claims existed fall back to loading the user.
+     */
+    private CustomUserDetails resolveUser(Claims claims) {
+        CustomUserDetails userDetails = jwtUtil.toUserDetails(claims);
+        if (userDetails == null) {
+            try {
+                userDetails = (CustomUserDetails) userDetailsService.loadUserByUsername(claims.getSubject());
+            } catch (UsernameNotFoundException e) {
+                return null;
+            }
+        }
+
+        UserCache.CachedUser state = userCache.get(userDetails.getId());
+        if (state == null || !state.enabled()) {
+            log.debug("Rejecting token of missing or disabled user: {}", userDetails.getUsername());
+            return null;
+        }
+        // A role change applies at once instead of when the token expires
+        userDetails.setRole(state.role());
+        userDetails.setEnabled(true);
+        return userDetails;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package com.hydrangea.storage_service.security;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.hydrangea.storage_service.constant.AccessLevel;
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.entity.Bucket;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.exception.AppException;
+import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.security.ShareLinkStateCache.ShareLinkState;
+import com.hydrangea.storage_service.service.CacheFactory;
+import com.hydrangea.storage_service.service.CacheInvalidationBus;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decides whether a user may do something with a bucket or the files in it.
+ * Owners may do anything; collaborators get what their access level allows:
+ * VIEW reads, DOWNLOAD also gets content, EDIT also writes. Managing the
+ * bucket stays with the owner. A user's grant on a bucket is resolved in one
+ * query and cached, and collaborator and bucket changes evict it on every
+ * instance once they commit, so checks on a hot bucket cost no query at all.
+ *
+ * Callers that get nothing back see "not found" rather than "unauthorized",
+ * so bucket and file ids can't be probed.
+ */
+@Component
+@Slf4j
+public class PermissionResolver {
+
+    private record GrantKey(Long userId, Long bucketPk) {
+        @Override
+        public String toString() {
+            return userId + ":" + bucketPk;
+        }
+
+        private static GrantKey parse(String key) {
+            String[] parts = key.split(":");
+            return new GrantKey(Long.valueOf(parts[0]), Long.valueOf(parts[1]));
+        }
+    }
+
+    // accessLevel is null when the user isn't a collaborator
+    private record Grant(boolean owner, AccessLevel accessLevel) {
+        private boolean any() {
+            return owner || accessLevel != null;
+        }
+    }
+
+    private static final Grant NONE = new Grant(false, null);
+
+    private final BucketRepository bucketRepository;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final BucketLookupCache bucketLookupCache;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final LoadingCache<GrantKey, Grant> grants;
+
+    public PermissionResolver(BucketRepository bucketRepository,
+            FileMetadataRepository fileMetadataRepository,
+            BucketLookupCache bucketLookupCache,
+            CacheFactory cacheFactory,
+            CacheInvalidationBus cacheInvalidationBus,
+            @Value("${permission.cache.max-size:100000}") long maxSize,
+            @Value("${permission.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.bucketRepository = bucketRepository;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.bucketLookupCache = bucketLookupCache;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.grants = cacheFactory.build(CacheName.PERMISSION, maxSize, ttlSeconds, GrantKey::parse,
+                key -> loadGrant(key.userId(), key.bucketPk()));
+        // Scans the cache, which is fine for something as rare as deleting a bucket
+        cacheInvalidationBus.register(CacheName.PERMISSION_BUCKET, key -> {
+            Long bucketPk = Long.valueOf(key);
+            grants.asMap().keySet().removeIf(grantKey -> grantKey.bucketPk().equals(bucketPk));
+        }, grants::invalidateAll);
+    }
+
+    public boolean can(Long userId, Long bucketPk, Permission permission) {
+        return allows(grants.get(new GrantKey(userId, bucketPk)), permission);
+    }
+
+    // A lazy reference: callers that only need the key, like uploads, cost no query
+    public Bucket requireBucket(String bucketId, Long userId, Permission permission) {
+        if (bucketId == null) {
+            throw new RuntimeException("Bucket ID is required");
+        }
+        Long bucketPk = bucketLookupCache.get(bucketId);
+        if (bucketPk == null) {
+            throw new AppException(ErrorCode.BUCKET_NOT_FOUND);
+        }
+        check(userId, bucketPk, permission, ErrorCode.BUCKET_NOT_FOUND);
+        return bucketRepository.getReferenceById(bucketPk);
+    }
+
+    public FileMetadata requireFile(String fileId, Long userId, Permission permission) {
+        FileMetadata file = fileMetadataRepository.findByFileId(fileId)
+                .orElseThrow(() -> new AppException(ErrorCode.FILE_NOT_FOUND));
+        check(userId, file.getBucket().getId(), permission, ErrorCode.FILE_NOT_FOUND);
+        return file;
+    }
+
+    // The files the user may act on; the rest are dropped, as bulk operations skip what they can't touch
+    public List<FileMetadata> filterFiles(List<FileMetadata> files, Long userId, Permission permission) {
+        return files.stream()
+                .filter(file -> can(userId, file.getBucket().getId(), permission))
+                .toList();
+    }
+
+    /**
+     * Anonymous access through a share link: every access level reads, and
+     * DOWNLOAD and EDIT links also hand out content as attachments. Share
+     * links never write or manage.
+     */
+    public void checkShareLink(ShareLinkState state, Permission permission) {
+        boolean allowed = switch (permission) {
+            case READ -> true;
+            case DOWNLOAD -> state.accessLevel() != AccessLevel.VIEW;
+            case WRITE, MANAGE -> false;
+        };
+        if (!allowed) {
+            throw new AppException(ErrorCode.UNAUTHORIZED);
+        }
+    }
+
+    // After a collaborator is added, changed or removed
+    public void invalidate(Long userId, Long bucketPk) {
+        cacheInvalidationBus.publish(CacheName.PERMISSION, new GrantKey(userId, bucketPk).toString());
+    }
+
+    // After a bucket is deleted
+    public void invalidateBucket(Long bucketPk) {
+        cacheInvalidationBus.publish(CacheName.PERMISSION_BUCKET, bucketPk.toString());
+    }
+
+    private void check(Long userId, Long bucketPk, Permission permission, ErrorCode notFound) {
+        Grant grant = grants.get(new GrantKey(userId, bucketPk));
+        if (!allows(grant, permission)) {
+            throw new AppException(grant.any() ? ErrorCode.UNAUTHORIZED : notFound);
+        }
+    }
+
+    private Grant loadGrant(Long userId, Long bucketPk) {
+        List<BucketRepository.AccessRow> rows = bucketRepository.findAccess(bucketPk, userId);
+        if (rows.isEmpty()) {
+            return NONE;
+        }
+        boolean owner = rows.get(0).getOwnerId().equals(userId);
+        // Duplicate collaborator rows can't be ruled out; the widest one wins
+        AccessLevel accessLevel = null;
+        for (BucketRepository.AccessRow row : rows) {
+            if (row.getAccessLevel() != null && (accessLevel == null || rank(row.getAccessLevel()) > rank(accessLevel))) {
+                accessLevel = row.getAccessLevel();
+            }
+        }
+        return new Grant(owner, accessLevel);
+    }
+
+    private static boolean allows(Grant grant, Permission permission) {
+        if (grant.owner()) {
+            return true;
+        }
+        if (grant.accessLevel() == null) {
+            return false;
+        }
+        return switch (permission) {
+            case READ -> true;
+            case DOWNLOAD -> grant.accessLevel() != AccessLevel.VIEW;
+            case WRITE -> grant.accessLevel() == AccessLevel.EDIT;
+            case MANAGE -> false;
+        };
+    }
+
+    private static int rank(AccessLevel accessLevel) {
+        return switch (accessLevel) {
+            case VIEW -> 0;
+            case DOWNLOAD -> 1;
+            case EDIT -> 2;
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package com.hydrangea.storage_service.security;
+
+import java.time.LocalDateTime;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.hydrangea.storage_service.constant.AccessLevel;
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.repository.ShareLinkRepository;
+import com.hydrangea.storage_service.service.CacheFactory;
+import com.hydrangea.storage_service.service.CacheInvalidationBus;
+import com.hydrangea.storage_service.util.ShareLinkTokenUtil;
+
+/**
+ * What a share link access token is checked against: whether the link still
+ * exists, is active, and is on the token's generation. Short-lived for the
+ * same reason as {@link UserCache}; changes evict the entry on every
+ * instance once they commit.
+ */
+@Component
+public class ShareLinkStateCache {
+
+    public record ShareLinkState(Long id, String link, String resourceId, String createdByUsername,
+            AccessLevel accessLevel, boolean passwordProtected, boolean active, LocalDateTime createdAt,
+            int tokenGeneration) {
+    }
+
+    private final LoadingCache<String, ShareLinkState> cache;
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    public ShareLinkStateCache(ShareLinkRepository shareLinkRepository,
+            CacheFactory cacheFactory,
+            CacheInvalidationBus cacheInvalidationBus,
+            @Value("${share-link.state-cache.max-size:10000}") long maxSize,
+            @Value("${share-link.state-cache.ttl-seconds:30}") long ttlSeconds) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.cache = cacheFactory.build(CacheName.SHARE_LINK, maxSize, ttlSeconds, Function.identity(),
+                link -> shareLinkRepository.findWithCreatorByLink(link)
+                        .map(s -> new ShareLinkState(s.getId(), s.getLink(), s.getResourceId(),
+                                s.getCreatedBy().getUsername(), s.getAccessLevel(),
+                                Boolean.TRUE.equals(s.getIsPasswordProtected()),
+                                Boolean.TRUE.equals(s.getIsActive()), s.getCreatedAt(),
+                                ShareLinkTokenUtil.generationOf(s)))
+                        .orElse(null));
+    }
+
+    // Null when the link no longer exists
+    public ShareLinkState get(String link) {
+        return cache.get(link);
+    }
+
+    // On every instance, once the change commits
+    public void invalidate(String link) {
+        cacheInvalidationBus.publish(CacheName.SHARE_LINK, link);
+    }
+}
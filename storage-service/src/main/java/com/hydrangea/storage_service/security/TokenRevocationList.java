@@ -0,0 +1,120 @@
+package com.hydrangea.storage_service.security;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.entity.RevokedToken;
+import com.hydrangea.storage_service.repository.RevokedTokenRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tokens revoked before they expire, by jti. The revoked_tokens table is the
+ * record; every instance keeps the live entries in a hash set that is loaded
+ * at startup and topped up from the table on a short interval, so checking a
+ * request's token is a memory probe. A revocation made on another instance
+ * takes effect here within one refresh interval.
+ *
+ * Entries are only kept until their token would have expired; past that the
+ * token is rejected on its own, so both the set and the table are pruned.
+ */
+@Component
+@Slf4j
+public class TokenRevocationList {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // jti -> token expiry in epoch millis
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    // Re-read this far back on each refresh so rows committed late, or under a skewed clock, aren't missed
+    @Value("${jwt.revocation.refresh-overlap-seconds:30}")
+    private long refreshOverlapSeconds;
+
+    private volatile LocalDateTime refreshedAt;
+
+    public TokenRevocationList(RevokedTokenRepository revokedTokenRepository,
+            PlatformTransactionManager transactionManager) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    void load() {
+        LocalDateTime now = LocalDateTime.now();
+        add(revokedTokenRepository.findRevokedSince(LocalDateTime.of(1970, 1, 1, 0, 0), now));
+        refreshedAt = now;
+        log.info("Loaded {} revoked tokens", revoked.size());
+    }
+
+    public boolean isRevoked(String jti) {
+        return jti != null && revoked.containsKey(jti);
+    }
+
+    public void revoke(String jti, Date expiresAt) {
+        markUsed(jti, expiresAt);
+    }
+
+    /**
+     * Revokes the token and reports whether this call did it, so of several
+     * requests presenting the same refresh token only one gets to rotate it.
+     * The local set is updated right away; if the caller's transaction rolls
+     * back the token stays rejected here until the next restart, which errs
+     * on the safe side.
+     */
+    public boolean markUsed(String jti, Date expiresAt) {
+        if (isRevoked(jti)) {
+            return false;
+        }
+        LocalDateTime expiry = LocalDateTime.ofInstant(expiresAt.toInstant(), ZoneId.systemDefault());
+        Integer inserted = transactionTemplate.execute(
+                status -> revokedTokenRepository.insertIfAbsent(jti, expiry, LocalDateTime.now()));
+        revoked.put(jti, expiresAt.getTime());
+        return inserted != null && inserted > 0;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval-ms:5000}")
+    public void refresh() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            add(revokedTokenRepository.findRevokedSince(refreshedAt.minusSeconds(refreshOverlapSeconds), now));
+            refreshedAt = now;
+        } catch (Exception e) {
+            log.warn("Failed to refresh revoked tokens: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.prune-interval-ms:600000}")
+    public void prune() {
+        long nowMillis = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt <= nowMillis);
+        try {
+            Integer deleted = transactionTemplate.execute(
+                    status -> revokedTokenRepository.deleteExpired(LocalDateTime.now()));
+            if (deleted != null && deleted > 0) {
+                log.info("Pruned {} expired revoked tokens", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to prune revoked tokens: {}", e.getMessage());
+        }
+    }
+
+    private void add(List<RevokedToken> tokens) {
+        for (RevokedToken token : tokens) {
+            revoked.put(token.getJti(),
+                    token.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.hydrangea.storage_service.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.entity.User;
+import com.hydrangea.storage_service.repository.UserRepository;
+import com.hydrangea.storage_service.service.CacheFactory;
+import com.hydrangea.storage_service.service.CacheInvalidationBus;
+
+/**
+ * Users by id, for requests authenticated from token claims, and by
+ * username, for logins and token refreshes. Admin changes evict the entry
+ * here at once and on other instances through CacheInvalidationBus; the short
+ * TTL bounds how long a missed eviction can matter.
+ */
+@Component
+public class UserCache {
+
+    // Immutable, since callers build their own CustomUserDetails from it
+    public record CachedUser(Long id, String username, String passwordHash, String role, boolean enabled) {
+    }
+
+    private final LoadingCache<Long, CachedUser> users;
+    // Usernames never change, so this needs no eviction of its own; see evict
+    private final LoadingCache<String, Long> ids;
+    private final CacheInvalidationBus cacheInvalidationBus;
+
+    public UserCache(UserRepository userRepository,
+            CacheFactory cacheFactory,
+            CacheInvalidationBus cacheInvalidationBus,
+            @Value("${user.cache.max-size:10000}") long maxSize,
+            @Value("${user.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.users = cacheFactory.build("user", maxSize, ttlSeconds,
+                userId -> userRepository.findById(userId).map(UserCache::cached).orElse(null));
+        // A username lookup loads the whole row, so the user is cached by id on the way
+        this.ids = cacheFactory.build("user-id", maxSize, ttlSeconds,
+                username -> userRepository.findByUsername(username)
+                        .map(user -> {
+                            users.put(user.getId(), cached(user));
+                            return user.getId();
+                        })
+                        .orElse(null));
+        cacheInvalidationBus.register(CacheName.USER, key -> evict(Long.valueOf(key)), () -> {
+            users.invalidateAll();
+            ids.invalidateAll();
+        });
+    }
+
+    // Null when the user no longer exists
+    public CachedUser get(Long userId) {
+        return users.get(userId);
+    }
+
+    public CachedUser get(String username) {
+        Long userId = ids.get(username);
+        return userId == null ? null : users.get(userId);
+    }
+
+    // After the user's role, enabled flag or password changes, or the user is deleted
+    public void invalidate(Long userId) {
+        cacheInvalidationBus.publish(CacheName.USER, userId.toString());
+    }
+
+    private static CachedUser cached(User user) {
+        return new CachedUser(user.getId(), user.getUsername(), user.getPasswordHash(), user.getRole(),
+                Boolean.TRUE.equals(user.getEnabled()));
+    }
+
+    private void evict(Long userId) {
+        CachedUser user = users.getIfPresent(userId);
+        if (user != null) {
+            ids.invalidate(user.username());
+        }
+        users.invalidate(userId);
+    }
+}
@@ -0,0 +1,374 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.constant.ArchiveFormat;
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.response.ChunkLocation;
+import com.hydrangea.storage_service.entity.Bucket;
+import com.hydrangea.storage_service.entity.FileChunkMapping;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.entity.InlineFileContent;
+import com.hydrangea.storage_service.repository.FileChunkMappingRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.InlineFileContentRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams a bucket, a name prefix within it, or a list of files as one ZIP or
+ * TAR archive. Files are resolved a page at a time and chunks are fetched a
+ * bounded window ahead of the writer, so content is never buffered beyond
+ * that window and the object store latency overlaps with writing the current
+ * entry. The one thing that grows with the export is the set of entry names
+ * used to de-duplicate them, one name per file.
+ */
+@Service
+@Slf4j
+public class ArchiveExportService {
+
+    // What to export; either bucketId (optionally with a name prefix) or fileIds is set
+    public record ExportRequest(Long userId, String bucketId, String prefix, List<String> fileIds,
+            ArchiveFormat format, boolean deflate) {
+    }
+
+    private record ExportEntry(String name, long size, long modifiedAt, byte[] inlineData,
+            List<ChunkLocation> chunks) {
+    }
+
+    // A fetched chunk; data is the lease's array unless the chunk was too big for the pool
+    private record FetchedChunk(ChunkBufferPool.Lease lease, byte[] data, int length) implements AutoCloseable {
+        @Override
+        public void close() {
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileChunkMappingRepository fileChunkMappingRepository;
+    private final InlineFileContentRepository inlineFileContentRepository;
+    private final PermissionResolver permissionResolver;
+    private final ChunkStorageService chunkStorageService;
+    private final ChunkBufferPool bufferPool;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate snapshotTransaction;
+    private final ExecutorService prefetchExecutor;
+
+    @Value("${file.export.page-size:500}")
+    private int pageSize;
+
+    // Chunks fetched ahead of the one being written
+    @Value("${file.export.prefetch-chunks:8}")
+    private int prefetchChunks;
+
+    public ArchiveExportService(FileMetadataRepository fileMetadataRepository,
+            FileChunkMappingRepository fileChunkMappingRepository,
+            InlineFileContentRepository inlineFileContentRepository,
+            PermissionResolver permissionResolver,
+            ChunkStorageService chunkStorageService,
+            ChunkBufferPool bufferPool,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.export.prefetch-threads:8}") int prefetchThreads) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.fileChunkMappingRepository = fileChunkMappingRepository;
+        this.inlineFileContentRepository = inlineFileContentRepository;
+        this.permissionResolver = permissionResolver;
+        this.chunkStorageService = chunkStorageService;
+        this.bufferPool = bufferPool;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        AtomicInteger counter = new AtomicInteger();
+        this.prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads, r -> {
+            Thread thread = new Thread(r, "archive-prefetch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Checks access up front so the controller can fail before the response is committed
+    @Transactional(readOnly = true)
+    public String resolveArchiveName(ExportRequest request) {
+        if (request.bucketId() != null) {
+            Bucket bucket = permissionResolver.requireBucket(request.bucketId(), request.userId(),
+                    Permission.DOWNLOAD);
+            return bucket.getName() + request.format().getExtension();
+        }
+        if (request.fileIds() == null || request.fileIds().isEmpty()) {
+            throw new RuntimeException("Either a bucket or a list of files is required");
+        }
+        return "export" + request.format().getExtension();
+    }
+
+    public void export(ExportRequest request, OutputStream out) throws IOException {
+        ArchiveOutputStream<?> archive = request.format() == ArchiveFormat.ZIP
+                ? openZip(out, request.deflate())
+                : openTar(out);
+        Set<String> usedNames = new HashSet<>();
+        int exported = 0;
+
+        if (request.bucketId() != null) {
+            Long bucketPk = permissionResolver.requireBucket(request.bucketId(), request.userId(),
+                    Permission.DOWNLOAD).getId();
+            String namePattern = request.prefix() == null ? "%" : escapeLike(request.prefix()) + "%";
+            long afterId = 0;
+            int listed;
+            do {
+                long after = afterId;
+                List<FileMetadata> files = readTransaction.execute(status -> fileMetadataRepository
+                        .findBucketPage(bucketPk, after, namePattern, PageRequest.of(0, pageSize)));
+                if (files.isEmpty()) {
+                    break;
+                }
+                listed = files.size();
+                afterId = files.get(files.size() - 1).getId();
+                List<ExportEntry> page = loadEntries(files, usedNames);
+                writeEntries(archive, page);
+                exported += page.size();
+            } while (listed == pageSize);
+        } else {
+            for (int start = 0; start < request.fileIds().size(); start += pageSize) {
+                List<String> ids = request.fileIds().subList(start,
+                        Math.min(start + pageSize, request.fileIds().size()));
+                List<FileMetadata> files = readTransaction.execute(status -> permissionResolver.filterFiles(
+                        fileMetadataRepository.findByFileIds(ids), request.userId(), Permission.DOWNLOAD));
+                List<ExportEntry> page = loadEntries(files, usedNames);
+                writeEntries(archive, page);
+                exported += page.size();
+            }
+        }
+
+        archive.finish();
+        out.flush();
+        log.info("Exported {} files as {}", exported, request.format());
+    }
+
+    /**
+     * Resolves manifests and inline content for a page of files in one
+     * snapshot. The files are read again in it: ones deleted or superseded by
+     * a newer version since the page was listed are left out, and every
+     * entry's size comes from the same snapshot as the manifest it is written
+     * from.
+     */
+    private List<ExportEntry> loadEntries(List<FileMetadata> listed, Set<String> usedNames) {
+        return snapshotTransaction.execute(status -> {
+            Map<Long, FileMetadata> current = new HashMap<>();
+            for (FileMetadata file : fileMetadataRepository.findAllById(
+                    listed.stream().map(FileMetadata::getId).toList())) {
+                current.put(file.getId(), file);
+            }
+            List<FileMetadata> files = new ArrayList<>(listed.size());
+            for (FileMetadata file : listed) {
+                FileMetadata now = current.get(file.getId());
+                if (now != null && (now.isLatest() || !file.isLatest())) {
+                    files.add(now);
+                }
+            }
+
+            List<Long> chunkedIds = new ArrayList<>();
+            List<Long> inlineIds = new ArrayList<>();
+            for (FileMetadata file : files) {
+                (file.isInline() ? inlineIds : chunkedIds).add(file.getId());
+            }
+
+            Map<Long, List<ChunkLocation>> chunks = new HashMap<>();
+            if (!chunkedIds.isEmpty()) {
+                for (FileChunkMapping mapping : fileChunkMappingRepository.findManifests(chunkedIds)) {
+                    chunks.computeIfAbsent(mapping.getFile().getId(), id -> new ArrayList<>())
+                            .add(ChunkStorageService.locate(mapping.getChunk()));
+                }
+            }
+            Map<Long, byte[]> inline = new HashMap<>();
+            if (!inlineIds.isEmpty()) {
+                for (InlineFileContent content : inlineFileContentRepository.findAllById(inlineIds)) {
+                    inline.put(content.getFileId(), content.getData());
+                }
+            }
+
+            List<ExportEntry> entries = new ArrayList<>(files.size());
+            for (FileMetadata file : files) {
+                entries.add(new ExportEntry(uniqueName(file.getOriginalFileName(), usedNames), file.getFileSize(),
+                        file.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                        file.isInline() ? inline.getOrDefault(file.getId(), new byte[0]) : null,
+                        file.isInline() ? List.of() : chunks.getOrDefault(file.getId(), List.of())));
+            }
+            return entries;
+        });
+    }
+
+    /**
+     * Writes a page of entries while a sliding window of upcoming chunks, across
+     * entry boundaries, is fetched in the background. Every fetched buffer is
+     * released before returning, including on failure.
+     */
+    private void writeEntries(ArchiveOutputStream<?> archive, List<ExportEntry> entries) throws IOException {
+        List<ChunkLocation> pending = new ArrayList<>();
+        for (ExportEntry entry : entries) {
+            pending.addAll(entry.chunks());
+        }
+        Deque<CompletableFuture<FetchedChunk>> window = new ArrayDeque<>();
+        int next = 0;
+
+        try {
+            for (ExportEntry entry : entries) {
+                putEntry(archive, entry);
+                if (entry.inlineData() != null) {
+                    archive.write(entry.inlineData());
+                }
+                for (int i = 0; i < entry.chunks().size(); i++) {
+                    while (next < pending.size() && window.size() <= prefetchChunks) {
+                        ChunkLocation location = pending.get(next++);
+                        window.add(CompletableFuture.supplyAsync(() -> fetch(location), prefetchExecutor));
+                    }
+                    try (FetchedChunk chunk = join(window.poll())) {
+                        archive.write(chunk.data(), 0, chunk.length());
+                    }
+                }
+                archive.closeArchiveEntry();
+            }
+        } finally {
+            // Let in-flight fetches land so their buffers go back to the pool
+            for (CompletableFuture<FetchedChunk> future : window) {
+                try {
+                    future.join().close();
+                } catch (Exception ignored) {
+                    // Already failing, the original error is what matters
+                }
+            }
+        }
+    }
+
+    private FetchedChunk fetch(ChunkLocation location) {
+        try {
+            if (location.getChunkSize() > bufferPool.getBufferSize()) {
+                byte[] data = new byte[(int) location.getChunkSize()];
+                return new FetchedChunk(null, data, chunkStorageService.read(location, data, 0));
+            }
+            ChunkBufferPool.Lease lease = bufferPool.acquire();
+            try {
+                return new FetchedChunk(lease, lease.array(), chunkStorageService.read(location, lease.array(), 0));
+            } catch (Exception e) {
+                lease.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static FetchedChunk join(CompletableFuture<FetchedChunk> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to read chunk for archive: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void putEntry(ArchiveOutputStream<?> archive, ExportEntry entry) throws IOException {
+        if (archive instanceof ZipArchiveOutputStream zip) {
+            ZipArchiveEntry zipEntry = new ZipArchiveEntry(entry.name());
+            // A known size lets Zip64Mode.AsNeeded pick ZIP64 headers for entries over 4 GB
+            zipEntry.setSize(entry.size());
+            zipEntry.setTime(entry.modifiedAt());
+            zip.putArchiveEntry(zipEntry);
+        } else {
+            TarArchiveEntry tarEntry = new TarArchiveEntry(entry.name());
+            tarEntry.setSize(entry.size());
+            tarEntry.setModTime(entry.modifiedAt());
+            ((TarArchiveOutputStream) archive).putArchiveEntry(tarEntry);
+        }
+    }
+
+    /**
+     * ZIP entries are always DEFLATED: a STORED entry must carry its CRC in the
+     * local header, which a non-seekable response stream can't patch after the
+     * data is written. "Store" therefore means deflate level 0, which costs a
+     * few bytes per 64 KB block and no CPU for compression.
+     */
+    private static ZipArchiveOutputStream openZip(OutputStream out, boolean deflate) {
+        ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out);
+        zip.setUseZip64(Zip64Mode.AsNeeded);
+        zip.setMethod(ZipArchiveOutputStream.DEFLATED);
+        zip.setLevel(deflate ? Deflater.DEFAULT_COMPRESSION : Deflater.NO_COMPRESSION);
+        zip.setEncoding("UTF-8");
+        return zip;
+    }
+
+    private static TarArchiveOutputStream openTar(OutputStream out) {
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(out, "UTF-8");
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        return tar;
+    }
+
+    // Archive-safe relative name, suffixed when a bucket holds several files with the same name
+    private static String uniqueName(String originalName, Set<String> usedNames) {
+        String name = originalName == null ? "" : originalName.replace('\\', '/');
+        List<String> parts = new ArrayList<>();
+        for (String part : name.split("/")) {
+            if (!part.isEmpty() && !part.equals(".") && !part.equals("..")) {
+                parts.add(part);
+            }
+        }
+        name = parts.isEmpty() ? "file" : String.join("/", parts);
+
+        if (usedNames.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        boolean hasExtension = dot > name.lastIndexOf('/') + 1;
+        String base = hasExtension ? name.substring(0, dot) : name;
+        String extension = hasExtension ? name.substring(dot) : "";
+        for (int n = 1;; n++) {
+            String candidate = base + " (" + n + ")" + extension;
+            if (usedNames.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+}
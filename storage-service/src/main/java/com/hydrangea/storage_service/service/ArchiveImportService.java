@@ -0,0 +1,221 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hydrangea.storage_service.dto.response.BulkUploadResponse;
+import com.hydrangea.storage_service.dto.response.FileUploadResponse;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Extracts a ZIP or TAR archive (optionally gzip, bzip2 or zstd compressed)
+ * from the request stream into a bucket, one file per entry. Nothing is
+ * buffered beyond the current chunk: entries go through the bulk upload
+ * prepare step, so content already in the store is only hashed, and rows are
+ * committed in batches. Entries already committed stay if a limit is hit.
+ */
+@Service
+@Slf4j
+public class ArchiveImportService {
+
+    private final BulkUploadService bulkUploadService;
+
+    @Value("${file.import.max-entries:100000}")
+    private int maxEntries;
+
+    @Value("${file.import.max-entry-size:5368709120}")
+    private long maxEntrySize;
+
+    @Value("${file.import.max-total-size:53687091200}")
+    private long maxTotalSize;
+
+    // Extracted bytes per archive byte read; checked once enough has been extracted to judge
+    @Value("${file.import.max-compression-ratio:100}")
+    private long maxCompressionRatio;
+
+    private static final long RATIO_CHECK_THRESHOLD = 1 << 20;
+
+    public ArchiveImportService(BulkUploadService bulkUploadService) {
+        this.bulkUploadService = bulkUploadService;
+    }
+
+    // Tracks how much of the request body has been consumed, for the compression ratio check
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    // One entry's content, enforcing the size and ratio limits as bytes are extracted
+    private final class GuardedEntryStream extends FilterInputStream {
+        private final CountingInputStream raw;
+        private final long[] total;
+        private long entrySize;
+
+        private GuardedEntryStream(InputStream entry, CountingInputStream raw, long[] total) {
+            super(entry);
+            this.raw = raw;
+            this.total = total;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                account(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                account(n);
+            }
+            return n;
+        }
+
+        // The archive stream owns the entry; closing the file content must not close it
+        @Override
+        public void close() {
+        }
+
+        private void account(int n) throws IOException {
+            entrySize += n;
+            total[0] += n;
+            if (entrySize > maxEntrySize) {
+                throw new IOException("Archive entry exceeds " + maxEntrySize + " bytes");
+            }
+            if (total[0] > maxTotalSize) {
+                throw new IOException("Archive content exceeds " + maxTotalSize + " bytes");
+            }
+            if (total[0] > RATIO_CHECK_THRESHOLD && total[0] > raw.count * maxCompressionRatio) {
+                throw new IOException("Archive compression ratio exceeds " + maxCompressionRatio);
+            }
+        }
+    }
+
+    public BulkUploadResponse importArchive(InputStream body, Long userId, String bucketId) throws IOException {
+        Long bucketPk = bulkUploadService.resolveBucket(bucketId, userId).getId();
+        CountingInputStream raw = new CountingInputStream(body);
+        long[] total = { 0 };
+
+        List<FileUploadResponse> results = new ArrayList<>();
+        List<BulkUploadService.PreparedFile> batch = new ArrayList<>();
+        int entries = 0;
+        String error = null;
+
+        try (ArchiveInputStream<?> archive = openArchive(raw)) {
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.isDirectory() || !archive.canReadEntryData(entry)) {
+                    continue;
+                }
+                if (++entries > maxEntries) {
+                    throw new IOException("Archive has more than " + maxEntries + " entries");
+                }
+
+                String name = entry.getName();
+                BulkUploadService.PreparedFile prepared = bulkUploadService.prepare(name,
+                        URLConnection.guessContentTypeFromName(name),
+                        new GuardedEntryStream(archive, raw, total), null);
+                batch.add(prepared);
+
+                if (batch.size() >= bulkUploadService.getBatchSize()) {
+                    results.addAll(bulkUploadService.commitBatch(batch, bucketPk));
+                    batch.clear();
+                }
+            }
+        } catch (IOException | ArchiveException | CompressorException e) {
+            error = e.getMessage();
+            log.warn("Archive import into bucket {} stopped: {}", bucketId, error);
+        } finally {
+            // Entries prepared before a failure are complete and still worth keeping
+            results.addAll(bulkUploadService.commitBatch(batch, bucketPk));
+        }
+
+        BulkUploadResponse response = BulkUploadService.summarize(results);
+        if (error != null) {
+            FileUploadResponse failure = new FileUploadResponse();
+            failure.setMessage("Import stopped: " + error);
+            response.getResults().add(failure);
+            response.setFailed(response.getFailed() + 1);
+        }
+        log.info("Imported {} of {} archive entries into bucket {} ({} bytes extracted, {} bytes read)",
+                response.getSucceeded(), entries, bucketId, total[0], raw.count);
+        return response;
+    }
+
+    /**
+     * Detects an optional compression layer and the archive type from magic
+     * bytes. ZIP is read with data-descriptor support so STORED entries from
+     * streaming writers (including our own export) can be extracted.
+     */
+    private static ArchiveInputStream<?> openArchive(InputStream raw)
+            throws IOException, ArchiveException, CompressorException {
+        InputStream in = new BufferedInputStream(raw);
+        String compression = null;
+        try {
+            compression = CompressorStreamFactory.detect(in);
+        } catch (CompressorException e) {
+            // No known compression signature, read the archive directly
+        }
+        if (compression != null) {
+            // Concatenated gzip members are common in bundles built by appending
+            in = new BufferedInputStream(new CompressorStreamFactory(true)
+                    .createCompressorInputStream(compression, in));
+        }
+
+        String format = ArchiveStreamFactory.detect(in);
+        return switch (format) {
+            case ArchiveStreamFactory.ZIP -> new ZipArchiveInputStream(in, "UTF-8", true, true);
+            case ArchiveStreamFactory.TAR -> new TarArchiveInputStream(in, "UTF-8");
+            default -> throw new ArchiveException("Unsupported archive format: " + format);
+        };
+    }
+}
@@ -2,14 +2,20 @@ package com.hydrangea.storage_service.service;
 
 import com.hydrangea.storage_service.dto.auth.LoginRequest;
 import com.hydrangea.storage_service.dto.auth.LoginResponse;
+import com.hydrangea.storage_service.dto.auth.LogoutRequest;
 import com.hydrangea.storage_service.dto.auth.RefreshTokenRequest;
 import com.hydrangea.storage_service.dto.auth.RegisterRequest;
 import com.hydrangea.storage_service.dto.auth.RegisterResponse;
 import com.hydrangea.storage_service.entity.User;
 import com.hydrangea.storage_service.exception.AppException;
 import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.exception.ServiceBusyException;
 import com.hydrangea.storage_service.repository.UserRepository;
+import com.hydrangea.storage_service.security.CustomUserDetails;
+import com.hydrangea.storage_service.security.TokenRevocationList;
 import com.hydrangea.storage_service.util.JwtUtil;
+
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -33,6 +39,7 @@ public class AuthenticationService {
     private final JwtUtil jwtUtil;
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final TokenRevocationList tokenRevocationList;
 
     public RegisterResponse register(RegisterRequest request) {
         log.info("Registering new user: {}", request.getUsername());
@@ -58,6 +65,8 @@ public class AuthenticationService {
                 log.error("Username or email already exists: {}", request.getUsername());
                 throw new AppException(ErrorCode.USER_EXISTED);
             }
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error during registration: {}", e.getMessage());
             throw new RuntimeException("Error during registration", e);
@@ -68,25 +77,26 @@ public class AuthenticationService {
     public LoginResponse login(LoginRequest request) {
         log.info("Login attempt for user: {}", request.getUsername());
 
+        final UserDetails userDetails;
         try {
-            authenticationManager.authenticate(
+            // The principal is the user the provider just loaded, so there's no need to load it again
+            userDetails = (UserDetails) authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
                             request.getUsername(),
-                            request.getPassword()));
+                            request.getPassword()))
+                    .getPrincipal();
         } catch (BadCredentialsException e) {
             log.error("Invalid credentials for user: {}", request.getUsername());
             throw new BadCredentialsException("Invalid username or password");
         }
 
-        final UserDetails userDetails = userDetailsService.loadUserByUsername(request.getUsername());
         final String accessToken = jwtUtil.generateAccessToken(userDetails);
         final String refreshToken = jwtUtil.generateRefreshToken(userDetails);
 
         // Update last login time
-        userRepository.findByUsername(request.getUsername()).ifPresent(user -> {
-            user.setLastLoginAt(LocalDateTime.now());
-            userRepository.save(user);
-        });
+        if (userDetails instanceof CustomUserDetails user) {
+            userRepository.updateLastLoginAt(user.getId(), LocalDateTime.now());
+        }
 
         log.info("Login successful for user: {}", request.getUsername());
 
@@ -94,18 +104,23 @@ public class AuthenticationService {
         return new LoginResponse(accessToken, refreshToken, 900L);
     }
 
-    @Transactional(readOnly = true)
+    @Transactional
     public LoginResponse refreshToken(RefreshTokenRequest request) {
         log.info("Refresh token request received");
 
-        String refreshToken = request.getRefreshToken();
-
-        if (!jwtUtil.validateToken(refreshToken)) {
+        Claims claims = parseOrNull(request.getRefreshToken());
+        if (claims == null || !jwtUtil.isRefreshToken(claims)) {
             log.error("Invalid or expired refresh token");
             throw new BadCredentialsException("Invalid or expired refresh token");
         }
 
-        String username = jwtUtil.extractUsername(refreshToken);
+        String username = claims.getSubject();
+        // Each refresh token rotates once; seeing it again means it was logged out or leaked.
+        // Tokens issued before they carried a jti can't be tracked and run out on their own.
+        if (claims.getId() != null && !tokenRevocationList.markUsed(claims.getId(), claims.getExpiration())) {
+            log.warn("Rejected a used or revoked refresh token for user: {}", username);
+            throw new BadCredentialsException("Invalid or expired refresh token");
+        }
         UserDetails userDetails = userDetailsService.loadUserByUsername(username);
 
         String newAccessToken = jwtUtil.generateAccessToken(userDetails);
@@ -116,11 +131,28 @@ public class AuthenticationService {
         return new LoginResponse(newAccessToken, newRefreshToken, 900L);
     }
 
-    public void logout(String username) {
-        log.info("User logged out: {}", username);
-        // In a stateless JWT architecture, we rely on the client to discard the token.
+    // Revokes the access and refresh tokens given; ones that are invalid or already expired are ignored
+    public void logout(LogoutRequest request) {
+        revoke(request.getToken());
+        revoke(request.getRefreshToken());
+        log.info("User logged out: {}", request.getUsername());
+    }
+
+    private void revoke(String token) {
+        Claims claims = parseOrNull(token);
+        if (claims != null && claims.getId() != null) {
+            tokenRevocationList.revoke(claims.getId(), claims.getExpiration());
+        }
+    }
 
-        // If we implemented a token blacklist (e.g., in Redis), we would add the token
-        // here.
+    private Claims parseOrNull(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return jwtUtil.parseClaims(token);
+        } catch (Exception e) {
+            return null;
+        }
     }
 }
\ No newline at end of file
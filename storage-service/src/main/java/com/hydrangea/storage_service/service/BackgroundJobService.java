@@ -0,0 +1,164 @@
+package com.hydrangea.storage_service.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.constant.JobStatus;
+import com.hydrangea.storage_service.constant.JobType;
+import com.hydrangea.storage_service.dto.response.JobResponse;
+import com.hydrangea.storage_service.entity.BackgroundJob;
+import com.hydrangea.storage_service.repository.BackgroundJobRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs tracked background jobs on a small dedicated pool. Handlers do their
+ * work in batches, each in its own transaction, and report progress through
+ * the JobContext from inside that transaction. Handlers must be safe to run
+ * again from the start, since unfinished jobs are resubmitted after a restart.
+ *
+ * A job is claimed before it runs and its worker keeps a heartbeat on it, so
+ * with several instances only jobs whose worker died are resumed. A worker
+ * that lost its claim anyway, e.g. after a long pause, fails its next batch
+ * and leaves the job's progress and status to the new worker.
+ */
+@Service
+@Slf4j
+public class BackgroundJobService {
+
+    @FunctionalInterface
+    public interface JobHandler {
+        void run(BackgroundJob job, JobContext context) throws Exception;
+    }
+
+    public final class JobContext {
+        private final String jobId;
+
+        private JobContext(String jobId) {
+            this.jobId = jobId;
+        }
+
+        public void setTotal(long totalItems) {
+            writeTransaction.executeWithoutResult(
+                    status -> backgroundJobRepository.setTotal(jobId, workerId, totalItems));
+        }
+
+        // Must be called inside the transaction that did the work; rolls it back if the job was taken over
+        public void advance(long count) {
+            if (backgroundJobRepository.addProgress(jobId, workerId, count) == 0) {
+                throw new IllegalStateException("Job " + jobId + " was taken over by another instance");
+            }
+        }
+    }
+
+    private static final List<JobStatus> UNFINISHED = List.of(JobStatus.PENDING, JobStatus.RUNNING);
+
+    private final BackgroundJobRepository backgroundJobRepository;
+    private final TransactionTemplate writeTransaction;
+    private final ExecutorService executor;
+    private final String workerId = UUID.randomUUID().toString();
+
+    // A job whose heartbeat is older than this is considered abandoned by its worker
+    @Value("${jobs.heartbeat-timeout-ms:60000}")
+    private long heartbeatTimeoutMs;
+
+    public BackgroundJobService(BackgroundJobRepository backgroundJobRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${jobs.threads:2}") int threads) {
+        this.backgroundJobRepository = backgroundJobRepository;
+        // Job bookkeeping must commit even when the caller's transaction rolls back
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "background-job-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public BackgroundJob create(JobType type, Long ownerId, String target) {
+        BackgroundJob job = new BackgroundJob();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setType(type);
+        job.setOwnerId(ownerId);
+        job.setTarget(target);
+        job.setWorkerId(workerId);
+        job.setHeartbeatAt(LocalDateTime.now());
+        return writeTransaction.execute(status -> backgroundJobRepository.save(job));
+    }
+
+    public void submit(BackgroundJob job, JobHandler handler) {
+        executor.submit(() -> run(job.getJobId(), handler));
+    }
+
+    // Unfinished jobs of the given types whose worker stopped sending heartbeats
+    public List<BackgroundJob> findAbandoned(List<JobType> types) {
+        return backgroundJobRepository.findAbandoned(types, UNFINISHED, staleBefore());
+    }
+
+    public JobResponse getJob(String jobId, Long ownerId) {
+        return backgroundJobRepository.findByJobIdAndOwnerId(jobId, ownerId)
+                .map(JobResponse::from)
+                .orElseThrow(() -> new RuntimeException("Job not found: " + jobId));
+    }
+
+    private void run(String jobId, JobHandler handler) {
+        // A resumed job starts over, so does its progress
+        BackgroundJob job = writeTransaction.execute(status -> backgroundJobRepository.claim(jobId, workerId,
+                JobStatus.RUNNING, UNFINISHED, LocalDateTime.now(), staleBefore()) == 1
+                        ? backgroundJobRepository.findByJobId(jobId).orElse(null)
+                        : null);
+        if (job == null) {
+            log.info("Job {} is finished or claimed by another instance, skipping", jobId);
+            return;
+        }
+
+        log.info("Starting {} job {}", job.getType(), jobId);
+        try {
+            handler.run(job, new JobContext(jobId));
+            finish(jobId, JobStatus.COMPLETED, null);
+            log.info("Finished {} job {}", job.getType(), jobId);
+        } catch (Exception e) {
+            log.error("{} job {} failed", job.getType(), jobId, e);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            finish(jobId, JobStatus.FAILED, message.length() > 1000 ? message.substring(0, 1000) : message);
+        }
+    }
+
+    private void finish(String jobId, JobStatus status, String message) {
+        writeTransaction.executeWithoutResult(tx -> backgroundJobRepository.finish(jobId, workerId, status, message,
+                LocalDateTime.now()));
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        try {
+            writeTransaction.executeWithoutResult(
+                    status -> backgroundJobRepository.heartbeat(workerId, UNFINISHED, LocalDateTime.now()));
+        } catch (Exception e) {
+            log.warn("Failed to record job heartbeat: {}", e.getMessage());
+        }
+    }
+
+    private LocalDateTime staleBefore() {
+        return LocalDateTime.now().minusNanos(heartbeatTimeoutMs * 1_000_000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,6 +1,5 @@
 package com.hydrangea.storage_service.service;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -8,15 +7,17 @@ import java.util.stream.Collectors;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.hydrangea.storage_service.constant.Permission;
 import com.hydrangea.storage_service.dto.auth.UserDTO;
 import com.hydrangea.storage_service.dto.request.BucketCreationRequest;
 import com.hydrangea.storage_service.dto.request.BucketUpdateRequest;
 import com.hydrangea.storage_service.dto.response.BucketResponse;
+import com.hydrangea.storage_service.dto.response.JobResponse;
 import com.hydrangea.storage_service.entity.Bucket;
-import com.hydrangea.storage_service.entity.FileMetadata;
 import com.hydrangea.storage_service.entity.User;
 import com.hydrangea.storage_service.mapper.UserMapper;
 import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,8 +28,9 @@ import lombok.extern.slf4j.Slf4j;
 public class BucketService {
 
         private final BucketRepository bucketRepository;
-        private final FileStorageService fileStorageService;
+        private final BulkDeletionService bulkDeletionService;
         private final UserMapper userMapper;
+        private final PermissionResolver permissionResolver;
 
         // Create a new bucket
         public BucketResponse createBucket(BucketCreationRequest request, UserDTO user) {
@@ -78,12 +80,12 @@ public class BucketService {
                 }
         }
 
-        // Get a bucket by ID
+        // Get a bucket by ID; in a transaction since the resolver hands back a lazy reference
+        @Transactional(readOnly = true)
         public BucketResponse getBucketById(String bucketId, Long userId) {
                 log.info("Getting bucket by ID: " + bucketId);
                 try {
-                        Bucket bucket = bucketRepository.findByBucketIdAndUserId(bucketId, userId)
-                                        .orElseThrow(() -> new RuntimeException("Bucket not found"));
+                        Bucket bucket = permissionResolver.requireBucket(bucketId, userId, Permission.READ);
                         return BucketResponse.builder()
                                         .bucketId(bucket.getBucketId())
                                         .name(bucket.getName())
@@ -95,29 +97,11 @@ public class BucketService {
                 }
         }
 
-        // Delete a bucket by ID
-        @Transactional
-        public void deleteBucket(String bucketId, Long userId) {
+        // Delete a bucket by ID; the files and the bucket are removed by a background job
+        public JobResponse deleteBucket(String bucketId, Long userId) {
                 log.info("Deleting bucket by ID: " + bucketId);
                 try {
-                        Bucket bucket = bucketRepository.findByBucketIdAndUserId(bucketId, userId)
-                                        .orElseThrow(() -> new RuntimeException(
-                                                        "This user can't delete this bucket because of no authorization"));
-
-                        // Create a detached copy of files to avoid ConcurrentModificationException
-                        if (bucket.getFiles() != null && !bucket.getFiles().isEmpty()) {
-                                // Create a new ArrayList from the Set to detach from Hibernate's tracking
-                                List<String> fileIds = new ArrayList<>(bucket.getFiles()).stream()
-                                                .map(FileMetadata::getFileId)
-                                                .collect(Collectors.toList());
-
-                                // Delete files one by one
-                                for (String fileId : fileIds) {
-                                        fileStorageService.deleteFile(fileId, userId);
-                                }
-                        }
-                        bucketRepository.delete(bucket);
-
+                        return bulkDeletionService.startBucketDeletion(bucketId, userId);
                 } catch (Exception e) {
                         log.error("Failed to delete bucket: " + e.getMessage(), e);
                         throw new RuntimeException("Failed to delete bucket: " + e.getMessage());
@@ -125,12 +109,12 @@ public class BucketService {
         }
 
         // Update a bucket by ID
+        @Transactional
         public BucketResponse updateBucket(BucketUpdateRequest request) {
                 log.info("Updating bucket by ID: " + request.getBucketId());
                 try {
-                        Bucket bucket = bucketRepository
-                                        .findByBucketIdAndUserId(request.getBucketId(), request.getUserId())
-                                        .orElseThrow(() -> new RuntimeException("Bucket not found"));
+                        Bucket bucket = permissionResolver.requireBucket(request.getBucketId(),
+                                        request.getUserId(), Permission.MANAGE);
 
                         // Update only when value is provided
                         if (request.getName() != null) {
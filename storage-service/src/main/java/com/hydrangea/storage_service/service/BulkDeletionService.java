@@ -0,0 +1,191 @@
+package com.hydrangea.storage_service.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.constant.JobType;
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.response.JobResponse;
+import com.hydrangea.storage_service.entity.BackgroundJob;
+import com.hydrangea.storage_service.entity.Bucket;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.exception.AppException;
+import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.CollaboratorRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.security.BucketLookupCache;
+import com.hydrangea.storage_service.security.PermissionResolver;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deletes whole buckets and large sets of files as background jobs. Files go
+ * in batches of set-based statements (see FileStorageService.deleteFilesByIds),
+ * one short transaction per batch, so no single transaction grows with the
+ * number of files and progress can be polled while it runs.
+ */
+@Service
+@Slf4j
+public class BulkDeletionService {
+
+    private static final List<JobType> JOB_TYPES = List.of(JobType.BUCKET_DELETE, JobType.FILE_BULK_DELETE);
+
+    private final BackgroundJobService backgroundJobService;
+    private final FileStorageService fileStorageService;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final BucketRepository bucketRepository;
+    private final CollaboratorRepository collaboratorRepository;
+    private final PermissionResolver permissionResolver;
+    private final BucketLookupCache bucketLookupCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.bulk-delete.batch-size:1000}")
+    private int batchSize;
+
+    public BulkDeletionService(BackgroundJobService backgroundJobService,
+            FileStorageService fileStorageService,
+            FileMetadataRepository fileMetadataRepository,
+            BucketRepository bucketRepository,
+            CollaboratorRepository collaboratorRepository,
+            PermissionResolver permissionResolver,
+            BucketLookupCache bucketLookupCache,
+            PlatformTransactionManager transactionManager) {
+        this.backgroundJobService = backgroundJobService;
+        this.fileStorageService = fileStorageService;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.bucketRepository = bucketRepository;
+        this.collaboratorRepository = collaboratorRepository;
+        this.permissionResolver = permissionResolver;
+        this.bucketLookupCache = bucketLookupCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public JobResponse startBucketDeletion(String bucketId, Long userId) {
+        permissionResolver.requireBucket(bucketId, userId, Permission.MANAGE);
+
+        BackgroundJob job = backgroundJobService.create(JobType.BUCKET_DELETE, userId, bucketId);
+        backgroundJobService.submit(job, this::deleteBucket);
+        return JobResponse.from(job);
+    }
+
+    // Only files the user can write are queued; the request is rejected if that leaves none
+    public JobResponse startFileDeletion(List<String> fileIds, Long userId) {
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new RuntimeException("No files to delete");
+        }
+
+        List<String> permitted = new ArrayList<>();
+        List<String> distinct = fileIds.stream().distinct().toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int start = 0; start < distinct.size(); start += batchSize) {
+                List<String> batch = distinct.subList(start, Math.min(start + batchSize, distinct.size()));
+                permitted.addAll(filterWritable(batch, userId));
+            }
+        });
+        if (permitted.isEmpty()) {
+            throw new AppException(ErrorCode.FILE_NOT_FOUND);
+        }
+
+        BackgroundJob job = backgroundJobService.create(JobType.FILE_BULK_DELETE, userId,
+                String.join("\n", permitted));
+        backgroundJobService.submit(job, this::deleteFiles);
+        return JobResponse.from(job);
+    }
+
+    /**
+     * Jobs whose instance died pick up where the data left off. Jobs still
+     * running elsewhere keep a fresh heartbeat and are left alone; of several
+     * instances resuming the same job, only the one that claims it runs it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${jobs.resume-interval-ms:60000}",
+            fixedDelayString = "${jobs.resume-interval-ms:60000}")
+    public void resumeUnfinished() {
+        for (BackgroundJob job : backgroundJobService.findAbandoned(JOB_TYPES)) {
+            log.info("Resuming {} job {}", job.getType(), job.getJobId());
+            backgroundJobService.submit(job,
+                    job.getType() == JobType.BUCKET_DELETE ? this::deleteBucket : this::deleteFiles);
+        }
+    }
+
+    private void deleteBucket(BackgroundJob job, BackgroundJobService.JobContext context) {
+        Bucket bucket = bucketRepository.findByBucketIdAndUserId(job.getTarget(), job.getOwnerId()).orElse(null);
+        if (bucket == null) {
+            // Already gone, e.g. the job finished right before a restart
+            return;
+        }
+        Long bucketPk = bucket.getId();
+        context.setTotal(fileMetadataRepository.countByBucket_Id(bucketPk));
+
+        boolean more = true;
+        while (more) {
+            more = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                List<Long> ids = fileMetadataRepository.findIdsByBucketId(bucketPk, PageRequest.of(0, batchSize));
+                context.advance(fileStorageService.deleteFilesByIds(ids));
+                return ids.size() == batchSize;
+            }));
+        }
+
+        // Files uploaded while the batches ran are swept up together with the bucket itself
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Long> ids;
+            while (!(ids = fileMetadataRepository.findIdsByBucketId(bucketPk, PageRequest.of(0, batchSize)))
+                    .isEmpty()) {
+                context.advance(fileStorageService.deleteFilesByIds(ids));
+            }
+            collaboratorRepository.deleteByBucketId(bucketPk);
+            bucketRepository.deleteByIdInBulk(bucketPk);
+            permissionResolver.invalidateBucket(bucketPk);
+            bucketLookupCache.invalidate(job.getTarget());
+        });
+    }
+
+    /**
+     * Resolves the files, and every version of them, that the owner may still
+     * write, then deletes them in batches. Progress counts the file rows that
+     * were actually deleted, so ids that vanished or lost their permission
+     * since the job was started don't show up as processed.
+     */
+    private void deleteFiles(BackgroundJob job, BackgroundJobService.JobContext context) {
+        List<String> fileIds = Arrays.asList(job.getTarget().split("\n"));
+
+        Set<Long> ids = new LinkedHashSet<>();
+        for (int start = 0; start < fileIds.size(); start += batchSize) {
+            List<String> batch = fileIds.subList(start, Math.min(start + batchSize, fileIds.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                List<String> permitted = filterWritable(batch, job.getOwnerId());
+                if (!permitted.isEmpty()) {
+                    ids.addAll(fileMetadataRepository.findChainIdsByFileIds(permitted));
+                }
+            });
+        }
+        context.setTotal(ids.size());
+
+        List<Long> pending = new ArrayList<>(ids);
+        for (int start = 0; start < pending.size(); start += batchSize) {
+            List<Long> batch = pending.subList(start, Math.min(start + batchSize, pending.size()));
+            transactionTemplate.executeWithoutResult(
+                    status -> context.advance(fileStorageService.deleteFilesByIds(batch)));
+        }
+    }
+
+    private List<String> filterWritable(List<String> fileIds, Long userId) {
+        return permissionResolver.filterFiles(fileMetadataRepository.findByFileIds(fileIds), userId,
+                Permission.WRITE).stream()
+                .map(FileMetadata::getFileId)
+                .toList();
+    }
+}
@@ -0,0 +1,362 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.response.BulkUploadResponse;
+import com.hydrangea.storage_service.dto.response.ChunkInfo;
+import com.hydrangea.storage_service.dto.response.FileUploadResponse;
+import com.hydrangea.storage_service.entity.Bucket;
+import com.hydrangea.storage_service.entity.Chunk;
+import com.hydrangea.storage_service.entity.FileChunkMapping;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.entity.InlineFileContent;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.ChunkRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.InlineFileContentRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+import com.hydrangea.storage_service.util.ChunkHash;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Uploads many files from one request. Content is chunked, deduplicated and
+ * stored concurrently outside any transaction; metadata is then committed in
+ * batches, one transaction per batch of files. Small chunks from all files in
+ * flight share pack flushes instead of each waiting out the pack delay.
+ *
+ * If a batch fails to commit, its files are retried one transaction each so
+ * one bad file doesn't fail its neighbours. Objects stored for a file that
+ * still fails are handed to the garbage collector, see discard.
+ * ArchiveImportService feeds archive entries through the same prepare and
+ * commit steps.
+ */
+@Service
+@Slf4j
+public class BulkUploadService {
+
+    @FunctionalInterface
+    public interface ContentSource {
+        InputStream open() throws IOException;
+    }
+
+    // A chunk to map into the file: either an existing row to reference or freshly stored content
+    public record PreparedChunk(int order, ChunkHash hash, Long existingId,
+            ChunkStorageService.StoredChunk stored) {
+    }
+
+    /**
+     * A file whose content is already durable and only needs its rows written.
+     * reopen is used to prepare it again if a chunk it meant to reference was
+     * collected in the meantime; null when the content can't be read twice.
+     */
+    public record PreparedFile(String name, String contentType, long size, byte[] inlineData,
+            List<PreparedChunk> chunks, ContentSource reopen) {
+    }
+
+    // Thrown when a chunk we meant to reference was garbage collected before the batch committed
+    private static class ChunkVanishedException extends RuntimeException {
+        private ChunkVanishedException(ChunkHash hash) {
+            super("Chunk disappeared during upload: " + hash);
+        }
+    }
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final ChunkRepository chunkRepository;
+    private final InlineFileContentRepository inlineFileContentRepository;
+    private final BucketRepository bucketRepository;
+    private final ChunkingService chunkingService;
+    private final ChunkStorageService chunkStorageService;
+    private final FileStorageService fileStorageService;
+    private final ChunkGarbageCollector chunkGarbageCollector;
+    private final PermissionResolver permissionResolver;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+
+    @Value("${file.inline.max-size:8192}")
+    private int inlineMaxSize;
+
+    @Value("${file.bulk-upload.batch-size:200}")
+    private int batchSize;
+
+    public BulkUploadService(FileMetadataRepository fileMetadataRepository,
+            ChunkRepository chunkRepository,
+            InlineFileContentRepository inlineFileContentRepository,
+            BucketRepository bucketRepository,
+            ChunkingService chunkingService,
+            ChunkStorageService chunkStorageService,
+            FileStorageService fileStorageService,
+            ChunkGarbageCollector chunkGarbageCollector,
+            PermissionResolver permissionResolver,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.bulk-upload.threads:8}") int threads) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.chunkRepository = chunkRepository;
+        this.inlineFileContentRepository = inlineFileContentRepository;
+        this.bucketRepository = bucketRepository;
+        this.chunkingService = chunkingService;
+        this.chunkStorageService = chunkStorageService;
+        this.fileStorageService = fileStorageService;
+        this.chunkGarbageCollector = chunkGarbageCollector;
+        this.permissionResolver = permissionResolver;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "bulk-upload-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Bucket resolveBucket(String bucketId, Long userId) {
+        return permissionResolver.requireBucket(bucketId, userId, Permission.WRITE);
+    }
+
+    public BulkUploadResponse uploadFiles(List<MultipartFile> files, Long userId, String bucketId) {
+        Long bucketPk = resolveBucket(bucketId, userId).getId();
+
+        List<CompletableFuture<PreparedFile>> prepared = files.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> {
+                    try (InputStream in = file.getInputStream()) {
+                        return prepare(file.getOriginalFilename(), file.getContentType(), in, file::getInputStream);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor))
+                .toList();
+
+        List<FileUploadResponse> results = new ArrayList<>(files.size());
+        for (int start = 0; start < files.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, files.size());
+            List<PreparedFile> batch = new ArrayList<>(end - start);
+            List<FileUploadResponse> prepareFailures = new ArrayList<>(end - start);
+
+            for (int i = start; i < end; i++) {
+                try {
+                    batch.add(prepared.get(i).join());
+                    prepareFailures.add(null);
+                } catch (CompletionException e) {
+                    batch.add(null);
+                    prepareFailures.add(failure(files.get(i).getOriginalFilename(), files.get(i).getSize(),
+                            e.getCause()));
+                }
+            }
+
+            List<FileUploadResponse> committed = commitBatch(batch.stream().filter(p -> p != null).toList(),
+                    bucketPk);
+            int next = 0;
+            for (FileUploadResponse failure : prepareFailures) {
+                results.add(failure != null ? failure : committed.get(next++));
+            }
+        }
+
+        return summarize(results);
+    }
+
+    public static BulkUploadResponse summarize(List<FileUploadResponse> results) {
+        int failed = (int) results.stream().filter(result -> result.getFileId() == null).count();
+        return BulkUploadResponse.builder()
+                .totalFiles(results.size())
+                .succeeded(results.size() - failed)
+                .failed(failed)
+                .results(results)
+                .build();
+    }
+
+    /**
+     * Reads, chunks, dedups and stores one file's content without touching
+     * the database beyond lookups. Content up to the inline threshold is kept
+     * in memory for an inline row; the size is whatever the stream yields.
+     */
+    public PreparedFile prepare(String name, String contentType, InputStream in, ContentSource reopen)
+            throws IOException {
+        byte[] head = in.readNBytes(inlineMaxSize + 1);
+        if (head.length <= inlineMaxSize) {
+            return new PreparedFile(name, contentType, head.length, head, List.of(), reopen);
+        }
+
+        List<PreparedChunk> chunks = new ArrayList<>();
+        long[] size = { 0 };
+        try (InputStream content = new SequenceInputStream(new ByteArrayInputStream(head), in)) {
+            chunkingService.forEachChunk(content, chunkInfo -> {
+                size[0] += chunkInfo.getLength();
+                chunks.add(prepareChunk(chunkInfo, chunkInfo.getOrder()));
+            });
+        } catch (IOException | RuntimeException e) {
+            discard(chunks);
+            throw e;
+        }
+        return new PreparedFile(name, contentType, size[0], null, chunks, reopen);
+    }
+
+    // References the chunk if its content is already stored, otherwise stores it without a row yet
+    public PreparedChunk prepareChunk(ChunkInfo chunkInfo, int order) {
+        Optional<Chunk> existing = chunkRepository.findByChunkHash(chunkInfo.getHash());
+        return existing.isPresent()
+                ? new PreparedChunk(order, chunkInfo.getHash(), existing.get().getId(), null)
+                : new PreparedChunk(order, chunkInfo.getHash(), null, chunkStorageService.storeDeferred(chunkInfo));
+    }
+
+    // Commits a batch in one transaction, falling back to one transaction per file; results keep batch order
+    public List<FileUploadResponse> commitBatch(List<PreparedFile> batch, Long bucketPk) {
+        if (batch.isEmpty()) {
+            return List.of();
+        }
+        try {
+            return transactionTemplate.execute(status -> batch.stream()
+                    .map(prepared -> commit(prepared, bucketPk))
+                    .toList());
+        } catch (Exception e) {
+            log.warn("Bulk upload batch failed, retrying its files one by one: {}", e.getMessage());
+        }
+
+        List<FileUploadResponse> results = new ArrayList<>(batch.size());
+        for (PreparedFile prepared : batch) {
+            results.add(commitSingle(prepared, bucketPk));
+        }
+        return results;
+    }
+
+    private FileUploadResponse commitSingle(PreparedFile prepared, Long bucketPk) {
+        try {
+            return transactionTemplate.execute(status -> commit(prepared, bucketPk));
+        } catch (ChunkVanishedException e) {
+            // The retry stores its own copies; rows it commits make discarding these a no-op
+            discard(prepared.chunks());
+            if (prepared.reopen() == null) {
+                return failure(prepared.name(), prepared.size(), e);
+            }
+            PreparedFile again;
+            try (InputStream in = prepared.reopen().open()) {
+                again = prepare(prepared.name(), prepared.contentType(), in, null);
+            } catch (Exception retryFailure) {
+                return failure(prepared.name(), prepared.size(), retryFailure);
+            }
+            try {
+                return transactionTemplate.execute(status -> commit(again, bucketPk));
+            } catch (Exception retryFailure) {
+                discard(again.chunks());
+                return failure(prepared.name(), prepared.size(), retryFailure);
+            }
+        } catch (Exception e) {
+            discard(prepared.chunks());
+            return failure(prepared.name(), prepared.size(), e);
+        }
+    }
+
+    // Hands the objects stored for chunks that never got committed to the garbage collector
+    public void discard(List<PreparedChunk> chunks) {
+        // Packed chunks need nothing: their bytes are dead space that PackCompactor reclaims
+        chunkGarbageCollector.enqueueOrphans(chunks.stream()
+                .filter(chunk -> chunk.stored() != null && chunk.stored().packSlot() == null)
+                .map(chunk -> chunk.stored().chunk())
+                .toList());
+    }
+
+    // Writes one prepared file's rows as the next version of its name; runs inside the caller's transaction
+    public FileUploadResponse commit(PreparedFile prepared, Long bucketPk) {
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setFileId(UUID.randomUUID().toString());
+        fileMetadata.setOriginalFileName(prepared.name());
+        fileMetadata.setBucket(bucketRepository.getReferenceById(bucketPk));
+        fileMetadata.setFileSize(prepared.size());
+        fileMetadata.setContentType(prepared.contentType() != null ? prepared.contentType()
+                : "application/octet-stream");
+        fileStorageService.assignVersion(fileMetadata);
+
+        int uniqueChunks = 0;
+        if (prepared.inlineData() != null) {
+            fileMetadata.setStoredInline(true);
+            fileMetadataRepository.save(fileMetadata);
+            inlineFileContentRepository.save(new InlineFileContent(fileMetadata, prepared.inlineData()));
+        } else {
+            uniqueChunks = mapChunks(fileMetadata, prepared.chunks());
+            fileMetadataRepository.save(fileMetadata);
+        }
+
+        FileUploadResponse response = new FileUploadResponse();
+        response.setFileId(fileMetadata.getFileId());
+        response.setOriginalFileName(fileMetadata.getOriginalFileName());
+        response.setFileSize(fileMetadata.getFileSize());
+        response.setTotalChunks(prepared.chunks().size());
+        response.setUniqueChunks(uniqueChunks);
+        response.setDuplicateChunks(prepared.chunks().size() - uniqueChunks);
+        response.setMessage("File uploaded successfully");
+        return response;
+    }
+
+    // Adds a mapping per prepared chunk, taking a reference on each; returns how many chunks were new
+    public int mapChunks(FileMetadata fileMetadata, List<PreparedChunk> chunks) {
+        int uniqueChunks = 0;
+        for (PreparedChunk preparedChunk : chunks) {
+            Chunk chunk = resolve(preparedChunk);
+            if (chunk.getId() == null) {
+                chunk.setReferenceCount(1);
+                chunk = chunkRepository.save(chunk);
+                uniqueChunks++;
+            }
+            fileMetadata.getChunkMappings().add(new FileChunkMapping(fileMetadata, chunk, preparedChunk.order()));
+        }
+        return uniqueChunks;
+    }
+
+    /**
+     * Returns a referenced existing chunk, or the new unsaved chunk. The hash
+     * is looked up again because an earlier file in the batch, or another
+     * upload, may have stored the same content since prepare ran. Our own
+     * upload then went to the same content-addressed key the existing row
+     * owns, or into a pack whose dead bytes PackCompactor reclaims, so there
+     * is nothing to clean up; deleting the key would delete the winner's
+     * object.
+     */
+    private Chunk resolve(PreparedChunk preparedChunk) {
+        if (preparedChunk.existingId() != null && chunkRepository.incrementReference(preparedChunk.existingId()) == 1) {
+            return chunkRepository.getReferenceById(preparedChunk.existingId());
+        }
+        Optional<Chunk> current = chunkRepository.findByChunkHash(preparedChunk.hash());
+        if (current.isPresent() && chunkRepository.incrementReference(current.get().getId()) == 1) {
+            return current.get();
+        }
+        if (preparedChunk.stored() == null) {
+            throw new ChunkVanishedException(preparedChunk.hash());
+        }
+        return chunkStorageService.complete(preparedChunk.stored());
+    }
+
+    public static FileUploadResponse failure(String name, long size, Throwable cause) {
+        FileUploadResponse response = new FileUploadResponse();
+        response.setOriginalFileName(name);
+        response.setFileSize(size);
+        response.setMessage("Failed to upload file: " + cause.getMessage());
+        return response;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,52 @@
+package com.hydrangea.storage_service.service;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.hydrangea.storage_service.constant.CacheName;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Builds the size and TTL bounded lookup caches in front of the database,
+ * with their stats published to Micrometer. Loaders return null for rows that
+ * don't exist, which Caffeine doesn't cache, so a row created later is found
+ * on the next lookup.
+ */
+@Component
+public class CacheFactory {
+
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final MeterRegistry meterRegistry;
+
+    public CacheFactory(CacheInvalidationBus cacheInvalidationBus, MeterRegistry meterRegistry) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Evicted on every instance by CacheInvalidationBus events for the cache, whose keys keyOf parses
+    public <K, V> LoadingCache<K, V> build(CacheName name, long maxSize, long ttlSeconds,
+            Function<String, K> keyOf, CacheLoader<K, V> loader) {
+        LoadingCache<K, V> cache = build(name.name().toLowerCase().replace('_', '-'), maxSize, ttlSeconds, loader);
+        cacheInvalidationBus.register(name, key -> cache.invalidate(keyOf.apply(key)), cache::invalidateAll);
+        return cache;
+    }
+
+    // For caches whose invalidations the caller registers itself, or that never need any
+    public <K, V> LoadingCache<K, V> build(String metricName, long maxSize, long ttlSeconds,
+            CacheLoader<K, V> loader) {
+        LoadingCache<K, V> cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build(loader);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, metricName);
+        return cache;
+    }
+}
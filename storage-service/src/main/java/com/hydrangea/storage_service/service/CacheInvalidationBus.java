@@ -0,0 +1,282 @@
+package com.hydrangea.storage_service.service;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.entity.CacheInvalidation;
+import com.hydrangea.storage_service.repository.CacheInvalidationRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Evicts cache entries on every instance when the data behind them changes.
+ * The publishing instance evicts its own entry once the change commits. The
+ * event is written to cache_invalidations and sent with NOTIFY in the same
+ * transaction, so Postgres delivers it only if the change commits, and the
+ * other instances LISTEN and evict within milliseconds.
+ *
+ * The table is the record and polling it is the fallback: while the listener
+ * is down, or the database isn't Postgres, instances poll every few seconds;
+ * while it is up they still poll now and then as a safety net. On reconnect
+ * the listener resyncs from the table, and if it was away for longer than
+ * the table keeps events, every registered cache is cleared instead.
+ *
+ * The listener holds one pooled connection for as long as it runs.
+ */
+@Service
+@Slf4j
+public class CacheInvalidationBus {
+
+    private static final String CHANNEL = "cache_invalidation";
+
+    private record Handler(Consumer<String> evict, Runnable evictAll) {
+    }
+
+    private final CacheInvalidationRepository cacheInvalidationRepository;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Map<CacheName, Handler> handlers = new ConcurrentHashMap<>();
+    private final String origin = UUID.randomUUID().toString();
+
+    // Event id -> when it was applied, so an event heard by both NOTIFY and polling is applied once
+    private final Map<Long, LocalDateTime> applied = new ConcurrentHashMap<>();
+
+    @Value("${cache.invalidation.listen.enabled:true}")
+    private boolean listenEnabled;
+
+    // How long one wait for notifications blocks; also how quickly the listener notices a shutdown
+    @Value("${cache.invalidation.listen.timeout-ms:10000}")
+    private int listenTimeoutMs;
+
+    @Value("${cache.invalidation.listen.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    // Poll interval while notifications are arriving; the scheduled interval applies otherwise
+    @Value("${cache.invalidation.listen.poll-interval-ms:60000}")
+    private long listeningPollIntervalMs;
+
+    // Re-read this far back on each poll so rows committed late, or under a skewed clock, aren't missed
+    @Value("${cache.invalidation.overlap-seconds:30}")
+    private long overlapSeconds;
+
+    @Value("${cache.invalidation.retention-minutes:60}")
+    private long retentionMinutes;
+
+    private volatile boolean postgres;
+    private volatile boolean listening;
+    private volatile boolean running;
+    private volatile Thread listener;
+    private volatile LocalDateTime polledAt = LocalDateTime.now();
+
+    public CacheInvalidationBus(CacheInvalidationRepository cacheInvalidationRepository,
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.cacheInvalidationRepository = cacheInvalidationRepository;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    // evictAll is used when events may have been missed
+    public void register(CacheName cache, Consumer<String> evict, Runnable evictAll) {
+        handlers.put(cache, new Handler(evict, evictAll));
+    }
+
+    /**
+     * Evicts the key everywhere. In a transaction the event commits or rolls
+     * back with the change, and the local eviction waits for the commit so a
+     * concurrent lookup can't cache the old row again.
+     */
+    public void publish(CacheName cache, String key) {
+        CacheInvalidation event = new CacheInvalidation();
+        event.setCacheName(cache);
+        event.setCacheKey(key);
+        event.setOrigin(origin);
+        event.setCreatedAt(LocalDateTime.now());
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            record(event);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(cache, key, "local");
+                }
+            });
+        } else {
+            transactionTemplate.executeWithoutResult(status -> record(event));
+            apply(cache, key, "local");
+        }
+    }
+
+    private void record(CacheInvalidation event) {
+        cacheInvalidationRepository.save(event);
+        if (postgres) {
+            String payload = event.getId() + "\t" + origin + "\t" + event.getCacheName() + "\t" + event.getCacheKey();
+            jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, payload);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try (Connection connection = dataSource.getConnection()) {
+            postgres = connection.isWrapperFor(PGConnection.class);
+        } catch (Exception e) {
+            log.warn("Failed to inspect the database for cache invalidation: {}", e.getMessage());
+        }
+        if (!postgres || !listenEnabled) {
+            log.info("Cache invalidations are polled only");
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::listen, "cache-invalidation-listener");
+        thread.setDaemon(true);
+        thread.start();
+        listener = thread;
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Thread thread = listener;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                listening = true;
+                log.info("Listening for cache invalidations");
+                // Whatever was published while nobody listened is only in the table
+                poll(true);
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(listenTimeoutMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        receive(notification.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("Cache invalidation listener lost its connection: {}", e.getMessage());
+                }
+            } finally {
+                listening = false;
+            }
+
+            try {
+                Thread.sleep(reconnectDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        String[] parts = payload.split("\t", 4);
+        if (parts.length < 4 || origin.equals(parts[1])) {
+            return;
+        }
+        try {
+            if (applied.putIfAbsent(Long.valueOf(parts[0]), LocalDateTime.now()) == null) {
+                apply(CacheName.valueOf(parts[2]), parts[3], "notify");
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed cache invalidation: {}", payload);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cache.invalidation.poll-interval-ms:2000}")
+    public void poll() {
+        poll(false);
+    }
+
+    private synchronized void poll(boolean force) {
+        LocalDateTime now = LocalDateTime.now();
+        if (!force && listening && polledAt.plus(Duration.ofMillis(listeningPollIntervalMs)).isAfter(now)) {
+            return;
+        }
+        try {
+            LocalDateTime since = polledAt.minusSeconds(overlapSeconds);
+            if (since.isBefore(now.minusMinutes(retentionMinutes))) {
+                // Older events may already be pruned, so nothing cached can be trusted
+                log.warn("Missed cache invalidations since {}, clearing all caches", polledAt);
+                handlers.values().forEach(handler -> handler.evictAll().run());
+            } else {
+                List<CacheInvalidation> events = cacheInvalidationRepository
+                        .findByCreatedAtAfterAndOriginNotOrderById(since, origin);
+                for (CacheInvalidation event : events) {
+                    if (applied.putIfAbsent(event.getId(), now) == null) {
+                        apply(event.getCacheName(), event.getCacheKey(), "poll");
+                    }
+                }
+            }
+            // Ids older than any window a later poll can read; the extra overlap absorbs clock skew
+            LocalDateTime forgetBefore = since.minusSeconds(overlapSeconds);
+            applied.values().removeIf(appliedAt -> appliedAt.isBefore(forgetBefore));
+            polledAt = now;
+        } catch (Exception e) {
+            log.warn("Failed to poll cache invalidations: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cache.invalidation.prune-interval-ms:600000}")
+    public void prune() {
+        try {
+            Integer deleted = transactionTemplate.execute(status -> cacheInvalidationRepository
+                    .deleteOlderThan(LocalDateTime.now().minusMinutes(retentionMinutes)));
+            log.debug("Pruned {} cache invalidations", deleted);
+        } catch (Exception e) {
+            log.warn("Failed to prune cache invalidations: {}", e.getMessage());
+        }
+    }
+
+    private void apply(CacheName cache, String key, String source) {
+        Handler handler = handlers.get(cache);
+        if (handler == null) {
+            log.debug("No cache registered as {}", cache);
+            return;
+        }
+        log.debug("Invalidating {} entry {} ({})", cache, key, source);
+        handler.evict().accept(key);
+        meterRegistry.counter("cache.invalidations", "cache", cache.name(), "source", source).increment();
+    }
+}
@@ -0,0 +1,139 @@
+package com.hydrangea.storage_service.service;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded pool of chunk-sized buffers shared by chunking, hashing,
+ * compression and store I/O, so steady-state traffic doesn't allocate a
+ * fresh array per chunk. When every pooled buffer is in use a throwaway
+ * buffer is handed out instead of blocking, which keeps callers that hold
+ * two leases at once from deadlocking.
+ *
+ * Buffers are heap arrays rather than direct buffers: BLAKE3, the LZ4 frame
+ * codec and the S3 SDK streams all work on byte[], so direct memory would
+ * only add a copy at each of those steps.
+ */
+@Service
+@Slf4j
+public class ChunkBufferPool {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final boolean leakDetection;
+
+    public ChunkBufferPool(@Value("${file.chunk.max-size:${file.chunk.size}}") int bufferSize,
+            @Value("${file.buffer-pool.max-buffers:64}") int maxBuffers,
+            @Value("${file.buffer-pool.leak-detection:false}") boolean leakDetection) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.leakDetection = leakDetection;
+    }
+
+    /**
+     * A borrowed buffer. Must be closed exactly once; the array must not be
+     * used afterwards.
+     */
+    public final class Lease implements AutoCloseable {
+        private final byte[] array;
+        private final boolean pooled;
+        private final LeakState state;
+        private final Cleaner.Cleanable cleanable;
+
+        private Lease(byte[] array, boolean pooled) {
+            this.array = array;
+            this.pooled = pooled;
+            this.state = new LeakState(leakDetection ? new Throwable("Buffer acquired here") : null);
+            this.cleanable = pooled && leakDetection ? CLEANER.register(this, state) : null;
+        }
+
+        public byte[] array() {
+            return array;
+        }
+
+        @Override
+        public void close() {
+            if (!state.released.compareAndSet(false, true)) {
+                throw new IllegalStateException("Buffer released twice");
+            }
+            if (cleanable != null) {
+                cleanable.clean();
+            }
+            if (pooled) {
+                outstanding.decrementAndGet();
+                free.offer(array);
+            }
+        }
+    }
+
+    // Runs when a pooled lease becomes unreachable; only reports if it was never closed
+    private final class LeakState implements Runnable {
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final Throwable site;
+
+        private LeakState(Throwable site) {
+            this.site = site;
+        }
+
+        @Override
+        public void run() {
+            if (!released.get()) {
+                log.error("Chunk buffer was garbage collected without being released", site);
+                leaks.incrementAndGet();
+                // The array is gone with the lease; let the pool create a replacement
+                outstanding.decrementAndGet();
+                created.decrementAndGet();
+            }
+        }
+    }
+
+    public Lease acquire() {
+        byte[] array = free.poll();
+        if (array == null) {
+            if (created.incrementAndGet() <= maxBuffers) {
+                array = new byte[bufferSize];
+            } else {
+                created.decrementAndGet();
+                misses.incrementAndGet();
+                return new Lease(new byte[bufferSize], false);
+            }
+        }
+        outstanding.incrementAndGet();
+        return new Lease(array, true);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    // Pooled buffers currently leased out; zero whenever the service is idle
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    // Acquisitions served with a throwaway buffer because the pool was exhausted
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Pooled leases found unreachable without having been closed; only counted with leak detection on
+    public long getLeaks() {
+        return leaks.get();
+    }
+}
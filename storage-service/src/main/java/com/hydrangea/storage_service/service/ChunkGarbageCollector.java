@@ -0,0 +1,195 @@
+package com.hydrangea.storage_service.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.entity.Chunk;
+import com.hydrangea.storage_service.entity.ChunkDeletion;
+import com.hydrangea.storage_service.repository.ChunkDeletionRepository;
+import com.hydrangea.storage_service.repository.ChunkRepository;
+import com.hydrangea.storage_service.util.ChunkHash;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drains the chunk deletion outbox. Each batch locks its outbox entries and
+ * the still-unreferenced chunk rows, deletes the objects, then the rows.
+ * Holding the row locks across the object delete means an upload that finds
+ * the chunk waits, sees the row gone and stores the content again, instead of
+ * referencing an object that is about to disappear. Packed chunks only leave
+ * dead bytes in their pack for PackCompactor.
+ */
+@Service
+@Slf4j
+public class ChunkGarbageCollector {
+
+    private final ChunkDeletionRepository chunkDeletionRepository;
+    private final ChunkRepository chunkRepository;
+    private final S3Service s3Service;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate orphanTransaction;
+
+    @Value("${file.gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.gc.retry-base-ms:5000}")
+    private long retryBaseMs;
+
+    @Value("${file.gc.retry-max-ms:3600000}")
+    private long retryMaxMs;
+
+    // Objects of failed uploads are collected no sooner than this; see enqueueOrphans
+    @Value("${file.gc.orphan-grace-minutes:60}")
+    private long orphanGraceMinutes;
+
+    // Chunks released by deleted files are collected no sooner than this; see enqueueReleased
+    @Value("${file.gc.release-grace-minutes:60}")
+    private long releaseGraceMinutes;
+
+    public ChunkGarbageCollector(ChunkDeletionRepository chunkDeletionRepository,
+            ChunkRepository chunkRepository, S3Service s3Service,
+            PlatformTransactionManager transactionManager) {
+        this.chunkDeletionRepository = chunkDeletionRepository;
+        this.chunkRepository = chunkRepository;
+        this.s3Service = s3Service;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.orphanTransaction = new TransactionTemplate(transactionManager);
+        this.orphanTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Enqueues the chunks the given files leave unreferenced, in the caller's
+     * transaction, after their references are released and before the
+     * mappings go. Downloads, exports and cached share manifests may still be
+     * reading a file that was just deleted, so the entries only come due
+     * after release-grace-minutes.
+     */
+    public int enqueueReleased(Collection<Long> fileIds) {
+        return chunkDeletionRepository.enqueueUnreferencedForFiles(fileIds,
+                LocalDateTime.now().plusMinutes(releaseGraceMinutes));
+    }
+
+    /**
+     * Hands objects stored for uploads that never committed to the
+     * collector. Objects are keyed by content hash, so another upload of the
+     * same content may be about to commit against the same object; the
+     * entries only come due after orphan-grace-minutes, and an upload that
+     * commits in the meantime references the row, which keeps the object.
+     *
+     * Called inside a transaction, this waits for it to end: the orphan rows
+     * would otherwise wait on the uncommitted chunk rows that transaction
+     * inserted for the same hashes.
+     */
+    public void enqueueOrphans(List<Chunk> orphans) {
+        if (orphans.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    writeOrphans(orphans);
+                }
+            });
+        } else {
+            writeOrphans(orphans);
+        }
+    }
+
+    private void writeOrphans(List<Chunk> orphans) {
+        LocalDateTime notBefore = LocalDateTime.now().plusMinutes(orphanGraceMinutes);
+        try {
+            orphanTransaction.executeWithoutResult(status -> {
+                for (Chunk orphan : orphans) {
+                    ChunkHash hash = orphan.getChunkHash();
+                    chunkDeletionRepository.enqueueOrphan(hash.getAlgorithm().name(), hash.toBytes(),
+                            orphan.getS3Key(), orphan.getChunkSize(), orphan.getCodec().name(),
+                            orphan.getStoredSize(), notBefore);
+                }
+            });
+        } catch (Exception e) {
+            log.error("Failed to enqueue {} orphaned chunk objects for deletion", orphans.size(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.gc.interval-ms:10000}")
+    public void collect() {
+        int processed;
+        do {
+            try {
+                processed = transactionTemplate.execute(status -> collectBatch());
+            } catch (Exception e) {
+                log.error("Chunk garbage collection batch failed", e);
+                return;
+            }
+        } while (processed == batchSize);
+    }
+
+    private int collectBatch() {
+        List<ChunkDeletion> batch = chunkDeletionRepository.lockDue(LocalDateTime.now(), batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> chunkIds = batch.stream().map(ChunkDeletion::getChunkId).collect(Collectors.toSet());
+        List<Chunk> dead = chunkRepository.findUnreferencedForUpdate(chunkIds);
+
+        List<String> s3Keys = dead.stream()
+                .map(Chunk::getS3Key)
+                .filter(key -> key != null)
+                .toList();
+        Map<String, String> failed = s3Keys.isEmpty() ? Map.of() : s3Service.deleteChunks(s3Keys);
+
+        // Failed chunks keep their row so the retry still finds them; everything else is done
+        Map<Long, String> failedChunks = dead.stream()
+                .filter(chunk -> chunk.getS3Key() != null && failed.containsKey(chunk.getS3Key()))
+                .collect(Collectors.toMap(Chunk::getId, chunk -> failed.get(chunk.getS3Key())));
+        List<Long> deletable = dead.stream()
+                .map(Chunk::getId)
+                .filter(id -> !failedChunks.containsKey(id))
+                .toList();
+        if (!deletable.isEmpty()) {
+            chunkRepository.deleteUnreferenced(deletable);
+        }
+
+        List<ChunkDeletion> finished = new ArrayList<>();
+        for (ChunkDeletion deletion : batch) {
+            String error = failedChunks.get(deletion.getChunkId());
+            if (error == null) {
+                finished.add(deletion);
+            } else {
+                reschedule(deletion, error);
+            }
+        }
+        chunkDeletionRepository.deleteAllInBatch(finished);
+
+        log.debug("Collected {} chunks, {} failed, {} re-referenced", deletable.size(), failedChunks.size(),
+                chunkIds.size() - dead.size());
+        return batch.size();
+    }
+
+    private void reschedule(ChunkDeletion deletion, String error) {
+        int attempts = deletion.getAttempts() + 1;
+        long delayMs = Math.min(retryMaxMs, retryBaseMs << Math.min(attempts - 1, 20));
+        deletion.setAttempts(attempts);
+        deletion.setNextAttemptAt(LocalDateTime.now().plusNanos(delayMs * 1_000_000));
+        deletion.setLastError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+        chunkDeletionRepository.save(deletion);
+        log.warn("Failed to delete chunk {} (attempt {}), retrying in {} ms: {}", deletion.getChunkId(),
+                attempts, delayMs, error);
+    }
+}
@@ -0,0 +1,58 @@
+package com.hydrangea.storage_service.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.digest.Blake3;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hydrangea.storage_service.constant.HashAlgorithm;
+import com.hydrangea.storage_service.util.ChunkHash;
+
+/**
+ * Computes chunk dedup keys. Hasher state is reused per thread rather than
+ * looked up and allocated for every chunk. The configured algorithm only
+ * applies to new chunks; existing chunks keep the algorithm they were stored
+ * with.
+ */
+@Service
+public class ChunkHasher {
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    });
+
+    private static final ThreadLocal<Blake3> BLAKE3 = ThreadLocal.withInitial(Blake3::initHash);
+
+    @Value("${file.chunk.hash-algorithm:SHA256}")
+    private HashAlgorithm algorithm;
+
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public ChunkHash hash(byte[] data, int offset, int length) {
+        return hash(algorithm, data, offset, length);
+    }
+
+    public ChunkHash hash(HashAlgorithm hashAlgorithm, byte[] data, int offset, int length) {
+        byte[] digest = switch (hashAlgorithm) {
+            case SHA256 -> {
+                MessageDigest sha256 = SHA256.get();
+                sha256.update(data, offset, length);
+                yield sha256.digest();
+            }
+            case BLAKE3 -> {
+                Blake3 blake3 = BLAKE3.get().reset();
+                blake3.update(data, offset, length);
+                yield blake3.doFinalize(ChunkHash.LENGTH);
+            }
+        };
+        return ChunkHash.of(hashAlgorithm, digest);
+    }
+}
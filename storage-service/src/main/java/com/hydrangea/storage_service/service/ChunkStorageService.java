@@ -0,0 +1,202 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.hydrangea.storage_service.constant.CompressionCodec;
+import com.hydrangea.storage_service.dto.response.ChunkInfo;
+import com.hydrangea.storage_service.dto.response.ChunkLocation;
+import com.hydrangea.storage_service.entity.Chunk;
+import com.hydrangea.storage_service.repository.PackRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads and writes chunk content in the object store. Compression is applied
+ * here so callers only ever see uncompressed bytes unless they ask for the raw
+ * stored form. Small chunks are appended to shared pack objects instead of
+ * getting an object of their own.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChunkStorageService {
+
+    private final S3Service s3Service;
+    private final CompressionService compressionService;
+    private final PackWriter packWriter;
+    private final PackRepository packRepository;
+    private final ChunkBufferPool bufferPool;
+
+    @Value("${file.pack.enabled:true}")
+    private boolean packingEnabled;
+
+    // Chunks whose stored form is at most this many bytes go into packs
+    @Value("${file.pack.max-chunk-size:262144}")
+    private int maxPackedChunkSize;
+
+    // An unsaved chunk whose pack location, if any, is known once packSlot completes
+    public record StoredChunk(Chunk chunk, CompletableFuture<PackWriter.PackSlot> packSlot) {
+    }
+
+    /**
+     * Waits for the chunk's pack to be written and returns a new unsaved
+     * entity pointing at it; needs a transaction. Each call builds a fresh
+     * entity, so retrying after a rolled back transaction doesn't reuse the
+     * id that transaction assigned.
+     */
+    public Chunk complete(StoredChunk stored) {
+        Chunk chunk = new Chunk();
+        chunk.setChunkHash(stored.chunk().getChunkHash());
+        chunk.setS3Key(stored.chunk().getS3Key());
+        chunk.setChunkSize(stored.chunk().getChunkSize());
+        chunk.setCodec(stored.chunk().getCodec());
+        chunk.setStoredSize(stored.chunk().getStoredSize());
+        if (stored.packSlot() != null) {
+            PackWriter.PackSlot slot;
+            try {
+                slot = stored.packSlot().join();
+            } catch (CompletionException e) {
+                throw new RuntimeException("Failed to write pack: " + e.getCause().getMessage(), e.getCause());
+            }
+            chunk.setPack(packRepository.getReferenceById(slot.packId()));
+            chunk.setPackOffset(slot.offset());
+        }
+        return chunk;
+    }
+
+    /**
+     * Uploads a new chunk, or appends it to the open pack without waiting for
+     * the pack to be written, so many small chunks can be in flight from one
+     * thread. Safe outside a transaction; the chunk must go through
+     * complete() before it is saved.
+     */
+    public StoredChunk storeDeferred(ChunkInfo chunkInfo) {
+        try (ChunkBufferPool.Lease target = bufferPool.acquire()) {
+            CompressionService.CompressedChunk compressed = compressionService.compress(
+                    chunkInfo.getData(), chunkInfo.getLength(), target.array());
+
+            Chunk chunk = new Chunk();
+            chunk.setChunkHash(chunkInfo.getHash());
+            chunk.setChunkSize((long) chunkInfo.getLength());
+            chunk.setCodec(compressed.codec());
+            chunk.setStoredSize((long) compressed.length());
+
+            if (packingEnabled && compressed.length() <= maxPackedChunkSize) {
+                return new StoredChunk(chunk, packWriter.appendAsync(compressed.data(), compressed.length()));
+            }
+            String s3Key = chunkInfo.getHash().toS3Key();
+            s3Service.uploadChunk(s3Key, compressed.data(), 0, compressed.length());
+            chunk.setS3Key(s3Key);
+            return new StoredChunk(chunk, null);
+        }
+    }
+
+    // Reads the uncompressed chunk into target at offset, which must have room for getChunkSize() bytes
+    public int read(ChunkLocation location, byte[] target, int offset) throws IOException {
+        try (InputStream stored = openStored(location)) {
+            if (location.getCodec() == null || location.getCodec() == CompressionCodec.NONE) {
+                return stored.readNBytes(target, offset, (int) location.getStoredSize());
+            }
+            if (location.getStoredSize() > bufferPool.getBufferSize()) {
+                try (InputStream in = compressionService.decompressingStream(stored, location.getCodec())) {
+                    return in.readNBytes(target, offset, (int) location.getChunkSize());
+                }
+            }
+            try (ChunkBufferPool.Lease buffer = bufferPool.acquire()) {
+                int storedLength = stored.readNBytes(buffer.array(), 0, (int) location.getStoredSize());
+                return compressionService.decompress(buffer.array(), storedLength, location.getCodec(), target,
+                        offset);
+            }
+        }
+    }
+
+    // Writes a chunk to the output, decompressing unless the raw stored bytes are wanted
+    public void transferTo(ChunkLocation location, OutputStream out, boolean raw) throws IOException {
+        boolean decode = !raw && location.getCodec() != null && location.getCodec() != CompressionCodec.NONE;
+        // Chunks written under a larger chunk size than today's buffers are streamed instead
+        if (location.getChunkSize() > bufferPool.getBufferSize()
+                || location.getStoredSize() > bufferPool.getBufferSize()) {
+            try (InputStream stored = openStored(location);
+                    InputStream in = decode ? compressionService.decompressingStream(stored, location.getCodec())
+                            : stored) {
+                in.transferTo(out);
+            }
+            return;
+        }
+
+        try (ChunkBufferPool.Lease buffer = bufferPool.acquire()) {
+            int storedLength;
+            try (InputStream stored = openStored(location)) {
+                storedLength = stored.readNBytes(buffer.array(), 0, (int) location.getStoredSize());
+            }
+            if (!decode) {
+                out.write(buffer.array(), 0, storedLength);
+                return;
+            }
+            try (ChunkBufferPool.Lease decoded = bufferPool.acquire()) {
+                int length = compressionService.decompress(buffer.array(), storedLength, location.getCodec(),
+                        decoded.array(), 0);
+                out.write(decoded.array(), 0, length);
+            }
+        }
+    }
+
+    // Writes length bytes of the uncompressed chunk starting at from; uncompressed chunks fetch only that range
+    public void transferRange(ChunkLocation location, OutputStream out, long from, long length) throws IOException {
+        if (from == 0 && length == location.getChunkSize()) {
+            transferTo(location, out, false);
+            return;
+        }
+        if (location.getCodec() == null || location.getCodec() == CompressionCodec.NONE) {
+            long start = (location.isPacked() ? location.getOffset() : 0) + from;
+            try (InputStream in = s3Service.openRange(location.getS3Key(), start, length)) {
+                in.transferTo(out);
+            }
+            return;
+        }
+        if (location.getChunkSize() > bufferPool.getBufferSize()) {
+            try (InputStream stored = openStored(location);
+                    InputStream in = compressionService.decompressingStream(stored, location.getCodec())) {
+                in.skipNBytes(from);
+                byte[] buffer = new byte[8192];
+                for (long remaining = length; remaining > 0;) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0) {
+                        throw new IOException("Chunk ended early: " + location.getS3Key());
+                    }
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            }
+            return;
+        }
+        try (ChunkBufferPool.Lease buffer = bufferPool.acquire()) {
+            read(location, buffer.array(), 0);
+            out.write(buffer.array(), (int) from, (int) length);
+        }
+    }
+
+    private InputStream openStored(ChunkLocation location) {
+        return location.isPacked()
+                ? s3Service.openRange(location.getS3Key(), location.getOffset(), location.getStoredSize())
+                : s3Service.openChunk(location.getS3Key());
+    }
+
+    // Needs the pack loaded, see FileChunkMappingRepository.findManifest
+    public static ChunkLocation locate(Chunk chunk) {
+        if (chunk.getPack() != null) {
+            return new ChunkLocation(chunk.getPack().getS3Key(), chunk.getPackOffset(), chunk.getCodec(),
+                    chunk.getChunkSize(), chunk.getStoredSize());
+        }
+        return new ChunkLocation(chunk.getS3Key(), null, chunk.getCodec(), chunk.getChunkSize(),
+                chunk.getStoredSize());
+    }
+}
@@ -1,71 +1,218 @@
 package com.hydrangea.storage_service.service;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.hydrangea.storage_service.constant.ChunkingStrategy;
 import com.hydrangea.storage_service.dto.response.ChunkInfo;
+import com.hydrangea.storage_service.util.ChunkHash;
+
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class ChunkingService {
 
-    @Value("${file.chunk.size}")
-    private int chunkSize;
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(ChunkInfo chunk) throws IOException;
+    }
 
-    public List<ChunkInfo> splitFileIntoChunks(byte[] fileData) throws IOException {
-        List<ChunkInfo> chunks = new ArrayList<>();
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(fileData);
+    private final ChunkHasher chunkHasher;
+    private final ChunkBufferPool bufferPool;
+    private final ExecutorService hashExecutor;
+    private final int hashThreads;
+
+    // Random 64-bit values per byte for the gear rolling hash. Chunk boundaries,
+    // and so dedup against everything already stored, depend on this table:
+    // it must never change.
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            // SplitMix64
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
 
-        byte[] buffer = new byte[chunkSize];
-        int bytesRead;
-        int chunkOrder = 0;
+    private final ChunkingStrategy strategy;
+    // FIXED: the chunk size; CDC: the average chunk size, rounded down to a power of two
+    private final int chunkSize;
+    private final int minSize;
+    private final int maxSize;
+    // Boundary masks on the top bits of the gear hash; the strict one applies below the average size
+    private final long strictMask;
+    private final long looseMask;
+
+    public ChunkingService(ChunkHasher chunkHasher, ChunkBufferPool bufferPool,
+            @Value("${file.chunk.hash-threads:0}") int hashThreads,
+            @Value("${file.chunk.strategy:FIXED}") ChunkingStrategy strategy,
+            @Value("${file.chunk.size}") int chunkSize,
+            @Value("${file.chunk.min-size:0}") int minSize) {
+        this.chunkHasher = chunkHasher;
+        this.bufferPool = bufferPool;
+        this.strategy = strategy;
+        this.maxSize = bufferPool.getBufferSize();
+        if (strategy == ChunkingStrategy.CDC) {
+            int bits = 31 - Integer.numberOfLeadingZeros(chunkSize);
+            this.chunkSize = 1 << bits;
+            this.minSize = minSize > 0 ? minSize : this.chunkSize / 4;
+            // Normalized chunking: cutting is harder before the average and easier after it
+            this.strictMask = -1L << (64 - (bits + 2));
+            this.looseMask = -1L << (64 - (bits - 2));
+            if (this.minSize >= this.chunkSize || this.chunkSize >= maxSize) {
+                throw new IllegalStateException("CDC needs file.chunk.min-size < file.chunk.size < file.chunk.max-size");
+            }
+        } else {
+            this.chunkSize = chunkSize;
+            this.minSize = chunkSize;
+            this.strictMask = 0;
+            this.looseMask = 0;
+            if (chunkSize > maxSize) {
+                throw new IllegalStateException("file.chunk.size exceeds file.chunk.max-size");
+            }
+        }
+        this.hashThreads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.hashExecutor = Executors.newFixedThreadPool(this.hashThreads, r -> {
+            Thread thread = new Thread(r, "chunk-hasher-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-        while ((bytesRead = inputStream.read(buffer)) != -1) {
-            byte[] chunkData = new byte[bytesRead];
-            System.arraycopy(buffer, 0, chunkData, 0, bytesRead);
+    /**
+     * Reads the stream chunk by chunk into pooled buffers and hands each
+     * chunk to the consumer in order. Up to hash-threads chunks are read ahead
+     * and hashed in parallel; no buffer outlives its consumer call, so memory
+     * stays bounded whatever the file size. Returns the number of chunks.
+     *
+     * With CDC each buffer is filled up to max-size and cut at the content
+     * boundary; the bytes past the cut are moved to the front of the next
+     * buffer and become the start of the next chunk.
+     */
+    public int forEachChunk(InputStream in, ChunkConsumer consumer) throws IOException {
+        int readSize = strategy == ChunkingStrategy.CDC ? maxSize : chunkSize;
+        int chunkOrder = 0;
+        boolean eof = false;
+        ChunkBufferPool.Lease carry = null;
+        int carryLength = 0;
 
-            String hash = calculateHash(chunkData);
-            chunks.add(new ChunkInfo(chunkData, hash, chunkOrder++));
+        try {
+            while (!eof) {
+                List<ChunkBufferPool.Lease> leases = new ArrayList<>(hashThreads);
+                List<Integer> lengths = new ArrayList<>(hashThreads);
+                try {
+                    while (leases.size() < hashThreads) {
+                        ChunkBufferPool.Lease lease = carry != null ? carry : bufferPool.acquire();
+                        int filled = carry != null ? carryLength : 0;
+                        carry = null;
+
+                        filled += in.readNBytes(lease.array(), filled, readSize - filled);
+                        if (filled == 0) {
+                            lease.close();
+                            eof = true;
+                            break;
+                        }
+                        leases.add(lease);
+
+                        int cut = strategy == ChunkingStrategy.CDC ? cutPoint(lease.array(), filled) : filled;
+                        lengths.add(cut);
+                        if (cut < filled) {
+                            carry = bufferPool.acquire();
+                            carryLength = filled - cut;
+                            System.arraycopy(lease.array(), cut, carry.array(), 0, carryLength);
+                        } else if (filled < readSize) {
+                            eof = true;
+                            break;
+                        }
+                    }
+
+                    List<ChunkHash> hashes = hashAll(leases, lengths);
+                    for (int i = 0; i < leases.size(); i++) {
+                        consumer.accept(new ChunkInfo(leases.get(i).array(), lengths.get(i), hashes.get(i),
+                                chunkOrder++));
+                    }
+                } finally {
+                    for (ChunkBufferPool.Lease lease : leases) {
+                        lease.close();
+                    }
+                }
+            }
+        } finally {
+            if (carry != null) {
+                carry.close();
+            }
         }
 
-        return chunks;
+        return chunkOrder;
     }
 
-    public byte[] reassembleChunks(List<byte[]> chunkDataList) {
-        int totalSize = chunkDataList.stream().mapToInt(chunk -> chunk.length).sum();
-        byte[] result = new byte[totalSize];
-
-        int position = 0;
-        for (byte[] chunk : chunkDataList) {
-            System.arraycopy(chunk, 0, result, position, chunk.length);
-            position += chunk.length;
+    // FastCDC: gear-hash the bytes after min-size and cut where the top bits of the hash are zero
+    private int cutPoint(byte[] data, int length) {
+        if (length <= minSize) {
+            return length;
         }
-
-        return result;
+        int normal = Math.min(chunkSize, length);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
     }
 
-    private String calculateHash(byte[] data) {
+    // Chunks are independent, so a batch is hashed on all cores at once
+    private List<ChunkHash> hashAll(List<ChunkBufferPool.Lease> leases, List<Integer> lengths) {
+        List<ChunkHash> hashes = new ArrayList<>(leases.size());
+        if (leases.size() == 1) {
+            hashes.add(chunkHasher.hash(leases.get(0).array(), 0, lengths.get(0)));
+            return hashes;
+        }
+
+        List<CompletableFuture<ChunkHash>> futures = new ArrayList<>(leases.size());
+        for (int i = 0; i < leases.size(); i++) {
+            byte[] data = leases.get(i).array();
+            int length = lengths.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> chunkHasher.hash(data, 0, length), hashExecutor));
+        }
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
-            StringBuilder hexString = new StringBuilder();
-
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1)
-                    hexString.append('0');
-                hexString.append(hex);
+            for (CompletableFuture<ChunkHash> future : futures) {
+                hashes.add(future.join());
             }
-
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not found", e);
+        } catch (CompletionException e) {
+            // Don't release buffers still being read by other hash tasks
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(ex -> null).join();
+            throw e;
         }
+        return hashes;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashExecutor.shutdown();
     }
 }
@@ -1,11 +1,13 @@
 package com.hydrangea.storage_service.service;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.hydrangea.storage_service.constant.Permission;
 import com.hydrangea.storage_service.dto.request.AddCollaboratorRequest;
 import com.hydrangea.storage_service.dto.request.RemoveCollaboratorRequest;
 import com.hydrangea.storage_service.dto.request.UpdatePermissionRequest;
@@ -15,9 +17,9 @@ import com.hydrangea.storage_service.entity.Collaborator;
 import com.hydrangea.storage_service.entity.User;
 import com.hydrangea.storage_service.exception.AppException;
 import com.hydrangea.storage_service.exception.ErrorCode;
-import com.hydrangea.storage_service.repository.BucketRepository;
 import com.hydrangea.storage_service.repository.CollaboratorRepository;
 import com.hydrangea.storage_service.repository.UserRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,18 +30,16 @@ import lombok.extern.slf4j.Slf4j;
 public class CollabService {
 
     private final CollaboratorRepository collaboratorRepository;
-    private final BucketRepository bucketRepository;
+    private final PermissionResolver permissionResolver;
     private final UserRepository userRepository;
 
+    @Value("${collab.list.max-page-size:500}")
+    private int maxPageSize;
+
     @Transactional
     public void addCollaborators(AddCollaboratorRequest request, Long ownerId) {
-        Bucket bucket = bucketRepository.findByBucketId(request.getBucketId())
-                .orElseThrow(() -> new AppException(ErrorCode.BUCKET_NOT_FOUND));
-
-        // Verify the owner is the bucket owner
-        if (!bucket.getUser().getId().equals(ownerId)) {
-            throw new AppException(ErrorCode.UNAUTHORIZED);
-        }
+        // Only the bucket owner manages collaborators
+        Bucket bucket = permissionResolver.requireBucket(request.getBucketId(), ownerId, Permission.MANAGE);
 
         for (Long collaboratorId : request.getCollaboratorId()) {
             // Can't add yourself as a collaborator
@@ -65,6 +65,7 @@ public class CollabService {
                     .accessLevel(request.getAccessLevel())
                     .build();
             collaboratorRepository.save(collaborator);
+            permissionResolver.invalidate(collaboratorId, bucket.getId());
             log.info("Added user {} as collaborator to bucket {} with access level {}",
                     collaboratorId, request.getBucketId(), request.getAccessLevel());
         }
@@ -72,30 +73,21 @@ public class CollabService {
 
     @Transactional
     public void removeCollaborator(RemoveCollaboratorRequest request, Long ownerId) {
-        Bucket bucket = bucketRepository.findByBucketId(request.getBucketId())
-                .orElseThrow(() -> new AppException(ErrorCode.BUCKET_NOT_FOUND));
-
-        // Verify the owner is the bucket owner
-        if (!bucket.getUser().getId().equals(ownerId)) {
-            throw new AppException(ErrorCode.UNAUTHORIZED);
-        }
+        // Only the bucket owner manages collaborators
+        Bucket bucket = permissionResolver.requireBucket(request.getBucketId(), ownerId, Permission.MANAGE);
 
         User collaborator = userRepository.findById(request.getCollaboratorId())
                 .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
 
         collaboratorRepository.deleteByBucketAndCollaborator(bucket, collaborator);
+        permissionResolver.invalidate(collaborator.getId(), bucket.getId());
         log.info("Removed user {} as collaborator from bucket {}", request.getCollaboratorId(), request.getBucketId());
     }
 
     @Transactional
     public void updatePermission(UpdatePermissionRequest request, Long ownerId) {
-        Bucket bucket = bucketRepository.findByBucketId(request.getBucketId())
-                .orElseThrow(() -> new AppException(ErrorCode.BUCKET_NOT_FOUND));
-
-        // Verify the owner is the bucket owner
-        if (!bucket.getUser().getId().equals(ownerId)) {
-            throw new AppException(ErrorCode.UNAUTHORIZED);
-        }
+        // Only the bucket owner manages collaborators
+        Bucket bucket = permissionResolver.requireBucket(request.getBucketId(), ownerId, Permission.MANAGE);
 
         User collaborator = userRepository.findById(request.getCollaboratorId())
                 .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
@@ -105,29 +97,18 @@ public class CollabService {
 
         collabRecord.setAccessLevel(request.getAccessLevel());
         collaboratorRepository.save(collabRecord);
+        permissionResolver.invalidate(collaborator.getId(), bucket.getId());
         log.info("Updated permission for user {} on bucket {} to {}", request.getCollaboratorId(),
                 request.getBucketId(), request.getAccessLevel());
     }
 
-    public List<CollaboratorResponse> getCollaborators(String bucketId, Long userId) {
-        Bucket bucket = bucketRepository.findByBucketId(bucketId)
-                .orElseThrow(() -> new AppException(ErrorCode.BUCKET_NOT_FOUND));
-
-        // Allow bucket owner or any collaborator to view collaborators
-        if (!bucket.getUser().getId().equals(userId)
-                && !collaboratorRepository.existsByBucketAndCollaborator(
-                        bucket, userRepository.findById(userId).orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND)))) {
-            throw new AppException(ErrorCode.UNAUTHORIZED);
-        }
+    // One page after the given collaborator id; pass the last id of a page to get the next
+    public List<CollaboratorResponse> getCollaborators(String bucketId, Long userId, Long after, Integer limit) {
+        // The bucket owner and any collaborator may see who else has access
+        Bucket bucket = permissionResolver.requireBucket(bucketId, userId, Permission.READ);
 
-        return collaboratorRepository.findAll().stream()
-                .filter(c -> c.getBucket().getId().equals(bucket.getId()))
-                .map(c -> CollaboratorResponse.builder()
-                        .id(c.getId())
-                        .collaboratorUsername(c.getCollaborator().getUsername())
-                        .collaboratorEmail(c.getCollaborator().getEmail())
-                        .accessLevel(c.getAccessLevel())
-                        .build())
-                .collect(Collectors.toList());
+        int pageSize = limit == null || limit <= 0 ? maxPageSize : Math.min(limit, maxPageSize);
+        return collaboratorRepository.findPageByBucketId(bucket.getId(), after == null ? 0 : after,
+                PageRequest.of(0, pageSize));
     }
 }
@@ -0,0 +1,195 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.ZstdInputStream;
+import com.hydrangea.storage_service.constant.CompressionCodec;
+
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+@Service
+@Slf4j
+public class CompressionService {
+
+    // Number of evenly spaced windows sampled by the entropy check
+    private static final int SAMPLE_WINDOWS = 16;
+    private static final int SAMPLE_WINDOW_SIZE = 256;
+
+    @Value("${file.chunk.compression.codec:NONE}")
+    private CompressionCodec codec;
+
+    @Value("${file.chunk.compression.zstd-level:3}")
+    private int zstdLevel;
+
+    // Chunks whose sampled entropy is above this (bits per byte) are stored raw
+    @Value("${file.chunk.compression.max-entropy:7.5}")
+    private double maxEntropy;
+
+    // Compressed output must save at least this fraction to be kept
+    @Value("${file.chunk.compression.min-savings:0.1}")
+    private double minSavings;
+
+    // The stored bytes are data[0, length); data is either the caller's source or target buffer
+    public record CompressedChunk(CompressionCodec codec, byte[] data, int length) {
+    }
+
+    /**
+     * Compresses data[0, length) into target, which must be at least length
+     * bytes. Output that wouldn't meet min-savings never fits in the space it
+     * is given, so a full target just means "store raw" and nothing is
+     * allocated per chunk on the ZSTD path.
+     */
+    public CompressedChunk compress(byte[] data, int length, byte[] target) {
+        if (codec == CompressionCodec.NONE || length == 0 || looksIncompressible(data, length)) {
+            return new CompressedChunk(CompressionCodec.NONE, data, length);
+        }
+
+        int limit = (int) (length * (1 - minSavings));
+        try {
+            int compressedLength = switch (codec) {
+                case ZSTD -> {
+                    // zstd-jni reports a full destination by throwing rather than with an error code
+                    try {
+                        long result = Zstd.compressByteArray(target, 0, limit, data, 0, length, zstdLevel);
+                        yield Zstd.isError(result) ? -1 : (int) result;
+                    } catch (ZstdException e) {
+                        yield -1;
+                    }
+                }
+                case LZ4 -> compressLz4(data, length, target, limit);
+                case NONE -> -1;
+            };
+            if (compressedLength < 0) {
+                return new CompressedChunk(CompressionCodec.NONE, data, length);
+            }
+            return new CompressedChunk(codec, target, compressedLength);
+        } catch (IOException e) {
+            log.warn("Failed to compress chunk with {}, storing raw: {}", codec, e.getMessage());
+            return new CompressedChunk(CompressionCodec.NONE, data, length);
+        }
+    }
+
+    // Decompresses src[0, srcLength) into target at targetOffset and returns the uncompressed length
+    public int decompress(byte[] src, int srcLength, CompressionCodec storedCodec, byte[] target, int targetOffset) {
+        if (storedCodec == null || storedCodec == CompressionCodec.NONE) {
+            System.arraycopy(src, 0, target, targetOffset, srcLength);
+            return srcLength;
+        }
+        if (storedCodec == CompressionCodec.ZSTD) {
+            long result = Zstd.decompressByteArray(target, targetOffset, target.length - targetOffset,
+                    src, 0, srcLength);
+            if (Zstd.isError(result)) {
+                throw new RuntimeException("Failed to decompress chunk with ZSTD: " + Zstd.getErrorName(result));
+            }
+            return (int) result;
+        }
+        try (InputStream in = decompressingStream(new ByteArrayInputStream(src, 0, srcLength), storedCodec)) {
+            return in.readNBytes(target, targetOffset, target.length - targetOffset);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decompress chunk with " + storedCodec, e);
+        }
+    }
+
+    public InputStream decompressingStream(InputStream in, CompressionCodec storedCodec) throws IOException {
+        if (storedCodec == null) {
+            return in;
+        }
+        return switch (storedCodec) {
+            case ZSTD -> new ZstdInputStream(in);
+            case LZ4 -> new LZ4FrameInputStream(in);
+            case NONE -> in;
+        };
+    }
+
+    // Returns -1 if the frame doesn't fit in target[0, limit)
+    private int compressLz4(byte[] data, int length, byte[] target, int limit) throws IOException {
+        BoundedOutputStream out = new BoundedOutputStream(target, limit);
+        try (LZ4FrameOutputStream lz4 = new LZ4FrameOutputStream(out)) {
+            lz4.write(data, 0, length);
+        } catch (BoundedOutputStream.Overflow e) {
+            return -1;
+        }
+        return out.count;
+    }
+
+    private static final class BoundedOutputStream extends OutputStream {
+        private static final class Overflow extends IOException {
+            private Overflow() {
+                super("Compressed output exceeds limit");
+            }
+        }
+
+        private final byte[] target;
+        private final int limit;
+        private int count;
+
+        private BoundedOutputStream(byte[] target, int limit) {
+            this.target = target;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count >= limit) {
+                throw new Overflow();
+            }
+            target[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (count + len > limit) {
+                throw new Overflow();
+            }
+            System.arraycopy(b, off, target, count, len);
+            count += len;
+        }
+    }
+
+    // Shannon entropy over a few sampled windows; already-compressed media
+    // (JPEG, ZIP, video) sits close to 8 bits per byte.
+    private boolean looksIncompressible(byte[] data, int length) {
+        int[] histogram = new int[256];
+        int sampled = 0;
+
+        if (length <= SAMPLE_WINDOWS * SAMPLE_WINDOW_SIZE) {
+            for (int i = 0; i < length; i++) {
+                histogram[data[i] & 0xFF]++;
+            }
+            sampled = length;
+        } else {
+            long stride = (length - SAMPLE_WINDOW_SIZE) / (SAMPLE_WINDOWS - 1);
+            for (int w = 0; w < SAMPLE_WINDOWS; w++) {
+                int start = (int) (w * stride);
+                for (int i = start; i < start + SAMPLE_WINDOW_SIZE; i++) {
+                    histogram[data[i] & 0xFF]++;
+                }
+            }
+            sampled = SAMPLE_WINDOWS * SAMPLE_WINDOW_SIZE;
+        }
+
+        // Tiny samples can't reach high entropy, let the codec decide
+        if (sampled < SAMPLE_WINDOW_SIZE) {
+            return false;
+        }
+
+        double entropy = 0;
+        for (int count : histogram) {
+            if (count > 0) {
+                double p = (double) count / sampled;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+        return entropy > maxEntropy;
+    }
+}
@@ -0,0 +1,349 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.request.FileComposeRequest;
+import com.hydrangea.storage_service.dto.response.ChunkLocation;
+import com.hydrangea.storage_service.dto.response.FileUploadResponse;
+import com.hydrangea.storage_service.entity.FileChunkMapping;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.entity.InlineFileContent;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.FileChunkMappingRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.InlineFileContentRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds a file from existing files or byte ranges of them by concatenating
+ * their manifests. Whole chunks are mapped again with a single set-based
+ * statement; only a chunk cut by a range boundary (or inline content) is
+ * read, and its covered slice is stored as new chunks. Composing whole files
+ * reads no content at all.
+ */
+@Service
+@Slf4j
+public class FileComposeService {
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileChunkMappingRepository fileChunkMappingRepository;
+    private final InlineFileContentRepository inlineFileContentRepository;
+    private final BucketRepository bucketRepository;
+    private final ChunkingService chunkingService;
+    private final ChunkStorageService chunkStorageService;
+    private final ChunkBufferPool bufferPool;
+    private final BulkUploadService bulkUploadService;
+    private final FileStorageService fileStorageService;
+    private final PermissionResolver permissionResolver;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTransaction;
+
+    @Value("${file.compose.max-parts:10000}")
+    private int maxParts;
+
+    @Value("${file.inline.max-size:8192}")
+    private int inlineMaxSize;
+
+    public FileComposeService(FileMetadataRepository fileMetadataRepository,
+            FileChunkMappingRepository fileChunkMappingRepository,
+            InlineFileContentRepository inlineFileContentRepository,
+            BucketRepository bucketRepository,
+            ChunkingService chunkingService,
+            ChunkStorageService chunkStorageService,
+            ChunkBufferPool bufferPool,
+            BulkUploadService bulkUploadService,
+            FileStorageService fileStorageService,
+            PermissionResolver permissionResolver,
+            PlatformTransactionManager transactionManager) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.fileChunkMappingRepository = fileChunkMappingRepository;
+        this.inlineFileContentRepository = inlineFileContentRepository;
+        this.bucketRepository = bucketRepository;
+        this.chunkingService = chunkingService;
+        this.chunkStorageService = chunkStorageService;
+        this.bufferPool = bufferPool;
+        this.bulkUploadService = bulkUploadService;
+        this.fileStorageService = fileStorageService;
+        this.permissionResolver = permissionResolver;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    private record Segment(int order, long start, ChunkLocation location) {
+        long end() {
+            return start + location.getChunkSize();
+        }
+    }
+
+    // A source file as of planning: inline bytes or its chunks with their offsets
+    private record Source(Long id, long size, byte[] inlineData, List<Segment> segments) {
+    }
+
+    // Chunks [fromOrder, toOrder) of a source, shifted to start at the composed file's chunk order
+    private record ChunkRange(Long sourceId, int fromOrder, int toOrder, int orderShift) {
+    }
+
+    public FileUploadResponse compose(FileComposeRequest request, Long userId) throws IOException {
+        if (request.getName() == null || request.getName().isBlank()) {
+            throw new RuntimeException("File name is required");
+        }
+        if (request.getParts() == null || request.getParts().isEmpty()) {
+            throw new RuntimeException("At least one part is required");
+        }
+        if (request.getParts().size() > maxParts) {
+            throw new RuntimeException("A file can be composed from at most " + maxParts + " parts");
+        }
+        Long bucketPk = bulkUploadService.resolveBucket(request.getBucketId(), userId).getId();
+        Map<String, Source> sources = readTransaction.execute(status -> loadSources(request.getParts(), userId));
+
+        long[][] ranges = new long[request.getParts().size()][];
+        long totalSize = 0;
+        for (int i = 0; i < ranges.length; i++) {
+            FileComposeRequest.Part part = request.getParts().get(i);
+            ranges[i] = resolveRange(part, sources.get(part.getFileId()));
+            totalSize += ranges[i][1] - ranges[i][0];
+        }
+        String contentType = request.getContentType() != null ? request.getContentType() : "application/octet-stream";
+
+        // Small results are stored inline like any other small upload
+        if (totalSize <= inlineMaxSize) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int) totalSize);
+            for (int i = 0; i < ranges.length; i++) {
+                content.write(readSlice(sources.get(request.getParts().get(i).getFileId()), ranges[i][0],
+                        ranges[i][1]));
+            }
+            BulkUploadService.PreparedFile prepared = bulkUploadService.prepare(request.getName(), contentType,
+                    new ByteArrayInputStream(content.toByteArray()), null);
+            return transactionTemplate.execute(status -> {
+                lockSources(sources);
+                return bulkUploadService.commit(prepared, bucketPk);
+            });
+        }
+
+        List<ChunkRange> chunkRanges = new ArrayList<>();
+        List<BulkUploadService.PreparedChunk> newChunks = new ArrayList<>();
+        long size = totalSize;
+        int totalChunks = 0;
+        FileUploadResponse response;
+        try {
+            for (int i = 0; i < ranges.length; i++) {
+                totalChunks = plan(sources.get(request.getParts().get(i).getFileId()), ranges[i][0], ranges[i][1],
+                        totalChunks, chunkRanges, newChunks);
+            }
+            int chunkCount = totalChunks;
+            response = transactionTemplate.execute(status -> {
+                lockSources(sources);
+                FileMetadata file = new FileMetadata();
+                file.setFileId(UUID.randomUUID().toString());
+                file.setOriginalFileName(request.getName());
+                file.setBucket(bucketRepository.getReferenceById(bucketPk));
+                file.setFileSize(size);
+                file.setContentType(contentType);
+                fileStorageService.assignVersion(file);
+                int uniqueChunks = bulkUploadService.mapChunks(file, newChunks);
+                fileMetadataRepository.saveAndFlush(file);
+                copyRanges(file.getId(), chunkRanges);
+
+                FileUploadResponse result = new FileUploadResponse();
+                result.setFileId(file.getFileId());
+                result.setOriginalFileName(file.getOriginalFileName());
+                result.setFileSize(file.getFileSize());
+                result.setTotalChunks(chunkCount);
+                result.setUniqueChunks(uniqueChunks);
+                result.setDuplicateChunks(chunkCount - uniqueChunks);
+                result.setMessage("File composed successfully");
+                return result;
+            });
+        } catch (IOException | RuntimeException e) {
+            // Chunks stored for the rewritten ranges go to the garbage collector
+            bulkUploadService.discard(newChunks);
+            throw e;
+        }
+
+        log.info("Composed file {} from {} parts: {} bytes, {} chunks, {} rewritten", response.getFileId(),
+                ranges.length, size, totalChunks, newChunks.size());
+        return response;
+    }
+
+    private Map<String, Source> loadSources(List<FileComposeRequest.Part> parts, Long userId) {
+        Set<String> fileIds = new HashSet<>();
+        for (FileComposeRequest.Part part : parts) {
+            fileIds.add(part.getFileId());
+        }
+
+        List<FileMetadata> files = permissionResolver.filterFiles(fileMetadataRepository.findByFileIds(fileIds), userId,
+                Permission.DOWNLOAD);
+        if (files.size() != fileIds.size()) {
+            throw new RuntimeException("Some source files were not found");
+        }
+
+        Map<Long, List<Segment>> segments = new HashMap<>();
+        List<Long> chunkedIds = files.stream().filter(file -> !file.isInline()).map(FileMetadata::getId).toList();
+        if (!chunkedIds.isEmpty()) {
+            long position = 0;
+            Long current = null;
+            for (FileChunkMapping mapping : fileChunkMappingRepository.findManifests(chunkedIds)) {
+                Long fileId = mapping.getFile().getId();
+                if (!fileId.equals(current)) {
+                    current = fileId;
+                    position = 0;
+                }
+                ChunkLocation location = ChunkStorageService.locate(mapping.getChunk());
+                segments.computeIfAbsent(fileId, id -> new ArrayList<>())
+                        .add(new Segment(mapping.getChunkOrder(), position, location));
+                position += location.getChunkSize();
+            }
+        }
+
+        Map<String, Source> sources = new HashMap<>();
+        for (FileMetadata file : files) {
+            byte[] inlineData = null;
+            if (file.isInline()) {
+                inlineData = inlineFileContentRepository.findById(file.getId())
+                        .map(InlineFileContent::getData)
+                        .orElseThrow(() -> new RuntimeException("Inline content missing for file: " + file.getFileId()));
+            }
+            sources.put(file.getFileId(), new Source(file.getId(), file.getFileSize(), inlineData,
+                    segments.getOrDefault(file.getId(), List.of())));
+        }
+        return sources;
+    }
+
+    // Returns {start, end} of the part within its source
+    private static long[] resolveRange(FileComposeRequest.Part part, Source source) {
+        long start = part.getOffset() != null ? part.getOffset() : 0;
+        long end = part.getLength() != null ? start + part.getLength() : source.size();
+        if (start < 0 || end < start || end > source.size()) {
+            throw new RuntimeException("Range " + start + "-" + end + " is outside file " + part.getFileId()
+                    + " (" + source.size() + " bytes)");
+        }
+        return new long[] { start, end };
+    }
+
+    /**
+     * Adds the source's [start, end) to the composed manifest from nextOrder:
+     * fully covered chunks as a range to map, the covered part of a cut chunk
+     * (or of inline content) as new chunks. Returns the next free order.
+     */
+    private int plan(Source source, long start, long end, int nextOrder, List<ChunkRange> chunkRanges,
+            List<BulkUploadService.PreparedChunk> newChunks) throws IOException {
+        if (start == end) {
+            return nextOrder;
+        }
+        if (source.inlineData() != null) {
+            return storeSlice(readSlice(source, start, end), nextOrder, newChunks);
+        }
+
+        int rangeFrom = -1;
+        int rangeTo = -1;
+        for (Segment segment : source.segments()) {
+            if (segment.end() <= start || segment.start() >= end) {
+                continue;
+            }
+            if (segment.start() >= start && segment.end() <= end) {
+                if (rangeFrom < 0) {
+                    rangeFrom = segment.order();
+                }
+                rangeTo = segment.order() + 1;
+                continue;
+            }
+            // A boundary chunk: only the leading one can precede the range, the trailing one follows it
+            if (rangeFrom >= 0) {
+                chunkRanges.add(new ChunkRange(source.id(), rangeFrom, rangeTo, nextOrder - rangeFrom));
+                nextOrder += rangeTo - rangeFrom;
+                rangeFrom = -1;
+            }
+            nextOrder = storeSlice(readChunkSlice(segment, Math.max(start, segment.start()),
+                    Math.min(end, segment.end())), nextOrder, newChunks);
+        }
+        if (rangeFrom >= 0) {
+            chunkRanges.add(new ChunkRange(source.id(), rangeFrom, rangeTo, nextOrder - rangeFrom));
+            nextOrder += rangeTo - rangeFrom;
+        }
+        return nextOrder;
+    }
+
+    private int storeSlice(byte[] slice, int nextOrder, List<BulkUploadService.PreparedChunk> newChunks)
+            throws IOException {
+        int[] order = { nextOrder };
+        chunkingService.forEachChunk(new ByteArrayInputStream(slice),
+                chunkInfo -> newChunks.add(bulkUploadService.prepareChunk(chunkInfo, order[0]++)));
+        return order[0];
+    }
+
+    private byte[] readSlice(Source source, long start, long end) throws IOException {
+        if (source.inlineData() != null) {
+            byte[] slice = new byte[(int) (end - start)];
+            System.arraycopy(source.inlineData(), (int) start, slice, 0, slice.length);
+            return slice;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) (end - start));
+        for (Segment segment : source.segments()) {
+            if (segment.end() > start && segment.start() < end) {
+                out.write(readChunkSlice(segment, Math.max(start, segment.start()), Math.min(end, segment.end())));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] readChunkSlice(Segment segment, long start, long end) throws IOException {
+        // Chunks written under a larger chunk size than today's buffers get an array of their own
+        if (segment.location().getChunkSize() > bufferPool.getBufferSize()) {
+            byte[] data = new byte[(int) segment.location().getChunkSize()];
+            chunkStorageService.read(segment.location(), data, 0);
+            return Arrays.copyOfRange(data, (int) (start - segment.start()), (int) (end - segment.start()));
+        }
+        try (ChunkBufferPool.Lease buffer = bufferPool.acquire()) {
+            chunkStorageService.read(segment.location(), buffer.array(), 0);
+            byte[] slice = new byte[(int) (end - start)];
+            System.arraycopy(buffer.array(), (int) (start - segment.start()), slice, 0, slice.length);
+            return slice;
+        }
+    }
+
+    // Sources must not be deleted between planning and mapping their chunks
+    private void lockSources(Map<String, Source> sources) {
+        List<Long> ids = sources.values().stream().map(Source::id).toList();
+        if (fileMetadataRepository.lockForShare(ids).size() != ids.size()) {
+            throw new RuntimeException("A source file was deleted while composing");
+        }
+    }
+
+    private void copyRanges(Long targetId, List<ChunkRange> chunkRanges) {
+        if (chunkRanges.isEmpty()) {
+            return;
+        }
+        int count = chunkRanges.size();
+        Long[] sourceIds = new Long[count];
+        Integer[] fromOrders = new Integer[count];
+        Integer[] toOrders = new Integer[count];
+        Integer[] orderShifts = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            ChunkRange range = chunkRanges.get(i);
+            sourceIds[i] = range.sourceId();
+            fromOrders[i] = range.fromOrder();
+            toOrders[i] = range.toOrder();
+            orderShifts[i] = range.orderShift();
+        }
+        fileChunkMappingRepository.copyRanges(targetId, sourceIds, fromOrders, toOrders, orderShifts);
+    }
+}
@@ -0,0 +1,163 @@
+package com.hydrangea.storage_service.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.request.BucketCreationRequest;
+import com.hydrangea.storage_service.dto.response.BucketResponse;
+import com.hydrangea.storage_service.entity.Bucket;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.UserRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copies, moves and clones files by rewriting metadata only. Chunks are
+ * shared and reference counted, so a copy is new file and mapping rows plus a
+ * reference bump; no content passes through the service or the object store.
+ */
+@Service
+@Slf4j
+public class FileCopyService {
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final BucketRepository bucketRepository;
+    private final UserRepository userRepository;
+    private final PermissionResolver permissionResolver;
+
+    // Files per copy statement when cloning a whole bucket
+    @Value("${file.copy.batch-size:1000}")
+    private int batchSize;
+
+    public FileCopyService(FileMetadataRepository fileMetadataRepository, BucketRepository bucketRepository,
+            UserRepository userRepository, PermissionResolver permissionResolver) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.bucketRepository = bucketRepository;
+        this.userRepository = userRepository;
+        this.permissionResolver = permissionResolver;
+    }
+
+    // Returns source file id -> copy file id; files the user can't download are skipped
+    @Transactional
+    public Map<String, String> copyFiles(List<String> fileIds, String targetBucketId, Long userId) {
+        Bucket target = permissionResolver.requireBucket(targetBucketId, userId, Permission.WRITE);
+        List<FileMetadata> files = resolvePermitted(fileIds, userId, Permission.DOWNLOAD);
+        List<Long> ids = files.stream().map(FileMetadata::getId).toList();
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+
+        // Copies join the target's existing chains; uploads of the same names wait until this commits
+        lockNames(target.getId(), names(files));
+        fileMetadataRepository.findLatestByNamesForUpdate(target.getId(), names(files));
+        Map<String, String> copies = new LinkedHashMap<>();
+        for (FileMetadataRepository.FileCopyRow row : fileMetadataRepository.copyFiles(ids, target.getId())) {
+            copies.put(row.getSourceFileId(), row.getCopyFileId());
+        }
+        log.info("Copied {} files into bucket {}", copies.size(), targetBucketId);
+        return copies;
+    }
+
+    /**
+     * Moving only re-parents the rows; references don't change. Chains can't
+     * be merged, so the move is rejected when the target already has another
+     * file of the same name, or two of the moved files share a name.
+     */
+    @Transactional
+    public int moveFiles(List<String> fileIds, String targetBucketId, Long userId) {
+        Bucket target = permissionResolver.requireBucket(targetBucketId, userId, Permission.WRITE);
+        List<FileMetadata> files = resolvePermitted(fileIds, userId, Permission.WRITE);
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, String> groupsByName = new HashMap<>();
+        for (FileMetadata file : files) {
+            String group = groupsByName.putIfAbsent(file.getOriginalFileName(), file.getVersionGroup());
+            if (group != null && !group.equals(file.getVersionGroup())) {
+                throw new RuntimeException("More than one file named " + file.getOriginalFileName() + " is being moved");
+            }
+        }
+        lockNames(target.getId(), groupsByName.keySet());
+        for (FileMetadata existing : fileMetadataRepository.findLatestByNamesForUpdate(target.getId(),
+                groupsByName.keySet())) {
+            if (!existing.getVersionGroup().equals(groupsByName.get(existing.getOriginalFileName()))) {
+                throw new RuntimeException("A file named " + existing.getOriginalFileName()
+                        + " already exists in bucket " + targetBucketId);
+            }
+        }
+
+        List<Long> ids = files.stream().map(FileMetadata::getId).toList();
+        int moved = fileMetadataRepository.moveFiles(ids, target.getId());
+        log.info("Moved {} files into bucket {}", moved, targetBucketId);
+        return moved;
+    }
+
+    @Transactional
+    public BucketResponse cloneBucket(String bucketId, BucketCreationRequest request, Long userId) {
+        Bucket source = permissionResolver.requireBucket(bucketId, userId, Permission.DOWNLOAD);
+        String name = request != null && request.getName() != null ? request.getName() : source.getName() + " (copy)";
+        String description = request != null && request.getDescription() != null ? request.getDescription()
+                : source.getDescription();
+
+        Bucket clone = Bucket.builder()
+                .name(name)
+                .bucketId(UUID.randomUUID().toString())
+                .description(description)
+                // The clone belongs to whoever made it, collaborators included
+                .user(userRepository.getReferenceById(userId))
+                .build();
+        clone = bucketRepository.save(clone);
+
+        long copied = 0;
+        long afterId = 0;
+        List<Long> ids;
+        do {
+            ids = fileMetadataRepository.findLatestIdsByBucketIdAfter(source.getId(), afterId,
+                    PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+            copied += fileMetadataRepository.copyFiles(ids, clone.getId()).size();
+        } while (ids.size() == batchSize);
+
+        log.info("Cloned bucket {} into {} with {} files", bucketId, clone.getBucketId(), copied);
+        return BucketResponse.builder()
+                .bucketId(clone.getBucketId())
+                .name(clone.getName())
+                .description(clone.getDescription())
+                .build();
+    }
+
+    private List<FileMetadata> resolvePermitted(List<String> fileIds, Long userId, Permission permission) {
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new RuntimeException("No files given");
+        }
+        return permissionResolver.filterFiles(fileMetadataRepository.findByFileIds(fileIds), userId, permission);
+    }
+
+    // Also covers names the target doesn't have yet; sorted, so two callers locking several names can't deadlock
+    private void lockNames(Long bucketPk, Collection<String> names) {
+        names.stream().sorted().forEach(name -> fileMetadataRepository.lockName(bucketPk, name));
+    }
+
+    private static Set<String> names(List<FileMetadata> files) {
+        return files.stream().map(FileMetadata::getOriginalFileName).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,410 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.response.ChunkLocation;
+import com.hydrangea.storage_service.dto.response.FileUploadResponse;
+import com.hydrangea.storage_service.entity.FileChunkMapping;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.entity.InlineFileContent;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.FileChunkMappingRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.InlineFileContentRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ranged writes and appends. Only the chunks a write touches are read and
+ * re-chunked: chunking restarts at the chunk containing the write offset and
+ * stops as soon as a new boundary lands on an old one past the write, after
+ * which the old chunks line up again and are reused. The result is committed
+ * as a new version in one transaction, so readers see the whole update or
+ * none of it, and an append costs the appended bytes plus one tail chunk.
+ */
+@Service
+@Slf4j
+public class FilePatchService {
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileChunkMappingRepository fileChunkMappingRepository;
+    private final InlineFileContentRepository inlineFileContentRepository;
+    private final BucketRepository bucketRepository;
+    private final ChunkingService chunkingService;
+    private final ChunkStorageService chunkStorageService;
+    private final ChunkBufferPool bufferPool;
+    private final BulkUploadService bulkUploadService;
+    private final FileStorageService fileStorageService;
+    private final PermissionResolver permissionResolver;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTransaction;
+
+    public FilePatchService(FileMetadataRepository fileMetadataRepository,
+            FileChunkMappingRepository fileChunkMappingRepository,
+            InlineFileContentRepository inlineFileContentRepository,
+            BucketRepository bucketRepository,
+            ChunkingService chunkingService,
+            ChunkStorageService chunkStorageService,
+            ChunkBufferPool bufferPool,
+            BulkUploadService bulkUploadService,
+            FileStorageService fileStorageService,
+            PermissionResolver permissionResolver,
+            PlatformTransactionManager transactionManager) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.fileChunkMappingRepository = fileChunkMappingRepository;
+        this.inlineFileContentRepository = inlineFileContentRepository;
+        this.bucketRepository = bucketRepository;
+        this.chunkingService = chunkingService;
+        this.chunkStorageService = chunkStorageService;
+        this.bufferPool = bufferPool;
+        this.bulkUploadService = bulkUploadService;
+        this.fileStorageService = fileStorageService;
+        this.permissionResolver = permissionResolver;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    // One chunk of the file being patched, at its byte offset in the file
+    private record Segment(int order, long start, ChunkLocation location) {
+        long end() {
+            return start + location.getChunkSize();
+        }
+    }
+
+    private record Base(Long id, Long bucketPk, String name, String contentType, long size, byte[] inlineData,
+            List<Segment> segments) {
+    }
+
+    // Thrown from the chunk consumer to stop reading once boundaries line up with the old manifest
+    private static final class Resynchronized extends IOException {
+        private Resynchronized() {
+            super("Chunk boundaries resynchronized");
+        }
+    }
+
+    // Counts the bytes of the write as they are consumed
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        // The request body belongs to the container
+        @Override
+        public void close() {
+        }
+    }
+
+    public FileUploadResponse append(String fileId, Long userId, InputStream data) throws IOException {
+        return write(fileId, userId, -1, data);
+    }
+
+    /**
+     * Overwrites the file from offset with the data, extending it if the data
+     * runs past the end; offset -1 appends. The file must be the latest
+     * version and must not gain a hole, so offset can't exceed its size.
+     */
+    public FileUploadResponse write(String fileId, Long userId, long offset, InputStream data) throws IOException {
+        Base base = readTransaction.execute(status -> loadBase(fileId, userId));
+        long start = offset < 0 ? base.size() : offset;
+        if (start > base.size()) {
+            throw new RuntimeException("Offset " + start + " is beyond the end of the file (" + base.size() + " bytes)");
+        }
+
+        CountingInputStream written = new CountingInputStream(data);
+        if (base.inlineData() != null) {
+            return writeInline(base, start, written);
+        }
+        return writeChunked(base, start, written);
+    }
+
+    // Inline content is tiny, so the new content is simply prepared in full
+    private FileUploadResponse writeInline(Base base, long start, CountingInputStream written) throws IOException {
+        byte[] inline = base.inlineData();
+        InputStream content = concat(
+                () -> new ByteArrayInputStream(inline, 0, (int) start),
+                () -> written,
+                () -> {
+                    int from = (int) Math.min(inline.length, start + written.count);
+                    return new ByteArrayInputStream(inline, from, inline.length - from);
+                });
+
+        BulkUploadService.PreparedFile prepared = bulkUploadService.prepare(base.name(), base.contentType(), content,
+                null);
+        return transactionTemplate.execute(status -> {
+            lockBase(base);
+            FileUploadResponse response = bulkUploadService.commit(prepared, base.bucketPk());
+            response.setMessage("File updated successfully");
+            return response;
+        });
+    }
+
+    private FileUploadResponse writeChunked(Base base, long start, CountingInputStream written) throws IOException {
+        List<Segment> segments = base.segments();
+        // Appends re-chunk the tail chunk, whose end was only a boundary because the file ended there
+        int first = start == base.size() ? segments.size() - 1 : indexOf(segments, start);
+        Segment firstSegment = segments.get(first);
+
+        // Old boundaries from the first rewritten chunk on, by file offset
+        Map<Long, Integer> boundaries = new HashMap<>();
+        for (int i = first; i < segments.size(); i++) {
+            boundaries.put(segments.get(i).end(), i);
+        }
+
+        long[] writeEnd = { -1 };
+        InputStream content = concat(
+                () -> new ManifestInputStream(segments, firstSegment.start(), start),
+                () -> written,
+                () -> {
+                    writeEnd[0] = start + written.count;
+                    return new ManifestInputStream(segments, writeEnd[0], base.size());
+                });
+
+        List<BulkUploadService.PreparedChunk> rewritten = new ArrayList<>();
+        long[] position = { firstSegment.start() };
+        int[] resumeAt = { segments.size() };
+        try (content) {
+            chunkingService.forEachChunk(content, chunkInfo -> {
+                rewritten.add(bulkUploadService.prepareChunk(chunkInfo, firstSegment.order() + rewritten.size()));
+                position[0] += chunkInfo.getLength();
+                Integer old = boundaries.get(position[0]);
+                if (writeEnd[0] >= 0 && position[0] >= writeEnd[0] && old != null) {
+                    resumeAt[0] = old + 1;
+                    throw new Resynchronized();
+                }
+            });
+        } catch (Resynchronized e) {
+            // Everything from resumeAt on is unchanged
+        } catch (IOException | RuntimeException e) {
+            bulkUploadService.discard(rewritten);
+            throw e;
+        }
+
+        long newSize = Math.max(base.size(), start + written.count);
+        int reused = first + (segments.size() - resumeAt[0]);
+        FileUploadResponse response;
+        try {
+            response = transactionTemplate.execute(status -> {
+                lockBase(base);
+                FileMetadata file = newVersion(base, newSize);
+                int uniqueChunks = bulkUploadService.mapChunks(file, rewritten);
+                fileMetadataRepository.saveAndFlush(file);
+
+                fileChunkMappingRepository.copyRange(base.id(), file.getId(), Integer.MIN_VALUE, firstSegment.order(),
+                        0);
+                if (resumeAt[0] < segments.size()) {
+                    int resumeOrder = segments.get(resumeAt[0]).order();
+                    fileChunkMappingRepository.copyRange(base.id(), file.getId(), resumeOrder, Integer.MAX_VALUE,
+                            firstSegment.order() + rewritten.size() - resumeOrder);
+                }
+
+                FileUploadResponse result = new FileUploadResponse();
+                result.setFileId(file.getFileId());
+                result.setOriginalFileName(file.getOriginalFileName());
+                result.setFileSize(file.getFileSize());
+                result.setTotalChunks(reused + rewritten.size());
+                result.setUniqueChunks(uniqueChunks);
+                result.setDuplicateChunks(reused + rewritten.size() - uniqueChunks);
+                result.setMessage("File updated successfully, " + rewritten.size() + " chunks rewritten");
+                return result;
+            });
+        } catch (RuntimeException e) {
+            bulkUploadService.discard(rewritten);
+            throw e;
+        }
+
+        log.info("Updated file {} at offset {} with {} bytes: {} chunks rewritten, {} reused",
+                response.getFileId(), start, written.count, rewritten.size(), reused);
+        return response;
+    }
+
+    private Base loadBase(String fileId, Long userId) {
+        FileMetadata file = permissionResolver.requireFile(fileId, userId, Permission.WRITE);
+        if (!file.isLatest()) {
+            throw new RuntimeException("Only the latest version of a file can be updated");
+        }
+
+        byte[] inlineData = null;
+        List<Segment> segments = new ArrayList<>();
+        if (file.isInline()) {
+            inlineData = inlineFileContentRepository.findById(file.getId())
+                    .map(InlineFileContent::getData)
+                    .orElseThrow(() -> new RuntimeException("Inline content missing for file: " + fileId));
+        } else {
+            long position = 0;
+            for (FileChunkMapping mapping : fileChunkMappingRepository.findManifest(file.getId())) {
+                ChunkLocation location = ChunkStorageService.locate(mapping.getChunk());
+                segments.add(new Segment(mapping.getChunkOrder(), position, location));
+                position += location.getChunkSize();
+            }
+        }
+        return new Base(file.getId(), file.getBucket().getId(), file.getOriginalFileName(), file.getContentType(),
+                file.getFileSize(), inlineData, segments);
+    }
+
+    // Fails the update if another write committed a newer version since the base was read
+    private void lockBase(Base base) {
+        // In the same order as assignVersion, which runs after this
+        fileMetadataRepository.lockName(base.bucketPk(), base.name());
+        List<FileMetadata> latest = fileMetadataRepository.findLatestForUpdate(base.bucketPk(), base.name(),
+                PageRequest.of(0, 1));
+        if (latest.isEmpty() || !latest.get(0).getId().equals(base.id())) {
+            throw new RuntimeException("File was modified concurrently, retry the update");
+        }
+    }
+
+    private FileMetadata newVersion(Base base, long size) {
+        FileMetadata file = new FileMetadata();
+        file.setFileId(UUID.randomUUID().toString());
+        file.setOriginalFileName(base.name());
+        file.setBucket(bucketRepository.getReferenceById(base.bucketPk()));
+        file.setFileSize(size);
+        file.setContentType(base.contentType());
+        fileStorageService.assignVersion(file);
+        return file;
+    }
+
+    private static int indexOf(List<Segment> segments, long offset) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).start() <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Streams are created only when reached, so later parts can depend on how much earlier ones yielded
+    @SafeVarargs
+    private static InputStream concat(Supplier<InputStream>... parts) {
+        return new SequenceInputStream(new Enumeration<>() {
+            private int next;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < parts.length;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (next >= parts.length) {
+                    throw new NoSuchElementException();
+                }
+                return parts[next++].get();
+            }
+        });
+    }
+
+    // The file's stored content between two offsets, one pooled chunk buffer at a time
+    private final class ManifestInputStream extends InputStream {
+        private final List<Segment> segments;
+        private final long end;
+        private long position;
+        private int index;
+        private ChunkBufferPool.Lease lease;
+        private byte[] buffer;
+        private long bufferStart;
+        private int bufferLength;
+
+        private ManifestInputStream(List<Segment> segments, long from, long to) {
+            this.segments = segments;
+            this.position = from;
+            this.end = to;
+            this.index = from < to ? indexOf(segments, from) : segments.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            if (buffer == null || position >= bufferStart + bufferLength) {
+                load();
+            }
+            int from = (int) (position - bufferStart);
+            int n = (int) Math.min(len, Math.min(bufferLength - from, end - position));
+            System.arraycopy(buffer, from, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private void load() throws IOException {
+            while (segments.get(index).end() <= position) {
+                index++;
+            }
+            Segment segment = segments.get(index);
+            // Chunks written under a larger chunk size than today's buffers get an array of their own
+            if (segment.location().getChunkSize() > bufferPool.getBufferSize()) {
+                buffer = new byte[(int) segment.location().getChunkSize()];
+            } else {
+                if (lease == null) {
+                    lease = bufferPool.acquire();
+                }
+                buffer = lease.array();
+            }
+            bufferStart = segment.start();
+            bufferLength = chunkStorageService.read(segment.location(), buffer, 0);
+        }
+
+        @Override
+        public void close() {
+            buffer = null;
+            if (lease != null) {
+                lease.close();
+                lease = null;
+            }
+        }
+    }
+}
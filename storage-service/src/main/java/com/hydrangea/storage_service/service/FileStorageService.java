@@ -1,27 +1,40 @@
 package com.hydrangea.storage_service.service;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionSynchronization;
-import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.hydrangea.storage_service.dto.response.ChunkInfo;
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.response.ChunkLocation;
+import com.hydrangea.storage_service.dto.response.FileManifest;
 import com.hydrangea.storage_service.dto.response.FileUploadResponse;
 import com.hydrangea.storage_service.entity.Bucket;
 import com.hydrangea.storage_service.entity.Chunk;
 import com.hydrangea.storage_service.entity.FileChunkMapping;
 import com.hydrangea.storage_service.entity.FileMetadata;
-import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.entity.InlineFileContent;
 import com.hydrangea.storage_service.repository.ChunkRepository;
+import com.hydrangea.storage_service.repository.FileChunkMappingRepository;
 import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.InlineFileContentRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+import com.hydrangea.storage_service.util.ChunkHash;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -32,20 +45,36 @@ public class FileStorageService {
 
     private final FileMetadataRepository fileMetadataRepository;
     private final ChunkRepository chunkRepository;
+    private final FileChunkMappingRepository fileChunkMappingRepository;
     private final ChunkingService chunkingService;
-    private final S3Service s3Service;
-    private final BucketRepository bucketRepository;
+    private final ChunkStorageService chunkStorageService;
+    private final InlineFileContentRepository inlineFileContentRepository;
+    private final ChunkGarbageCollector chunkGarbageCollector;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final PermissionResolver permissionResolver;
+
+    // Files up to this size are kept in the database instead of the chunk store
+    @Value("${file.inline.max-size:8192}")
+    private int inlineMaxSize;
 
     public FileStorageService(FileMetadataRepository fileMetadataRepository,
             ChunkRepository chunkRepository,
+            FileChunkMappingRepository fileChunkMappingRepository,
             ChunkingService chunkingService,
-            S3Service s3Service,
-            BucketRepository bucketRepository) {
+            ChunkStorageService chunkStorageService,
+            InlineFileContentRepository inlineFileContentRepository,
+            ChunkGarbageCollector chunkGarbageCollector,
+            CacheInvalidationBus cacheInvalidationBus,
+            PermissionResolver permissionResolver) {
         this.fileMetadataRepository = fileMetadataRepository;
         this.chunkRepository = chunkRepository;
+        this.fileChunkMappingRepository = fileChunkMappingRepository;
         this.chunkingService = chunkingService;
-        this.s3Service = s3Service;
-        this.bucketRepository = bucketRepository;
+        this.chunkStorageService = chunkStorageService;
+        this.inlineFileContentRepository = inlineFileContentRepository;
+        this.chunkGarbageCollector = chunkGarbageCollector;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.permissionResolver = permissionResolver;
     }
 
     @Transactional
@@ -55,63 +84,38 @@ public class FileStorageService {
             throw new RuntimeException("Bucket ID is required");
         }
 
-        Bucket bucket = bucketRepository.findByBucketIdAndUserId(bucketId, userId)
-                .orElseThrow(() -> new RuntimeException(
-                        "Bucket not found with ID and user ID: " + bucketId + " and " + userId));
-        // Read file data
-        byte[] fileData = file.getBytes();
-
-        // Split into chunks
-        List<ChunkInfo> chunks = chunkingService.splitFileIntoChunks(fileData);
-
+        Bucket bucket = permissionResolver.requireBucket(bucketId, userId, Permission.WRITE);
         // Create file metadata
         FileMetadata fileMetadata = new FileMetadata();
         fileMetadata.setFileId(UUID.randomUUID().toString());
         fileMetadata.setOriginalFileName(file.getOriginalFilename());
         fileMetadata.setBucket(bucket);
-        fileMetadata.setFileSize((long) fileData.length);
+        fileMetadata.setFileSize(file.getSize());
         fileMetadata.setContentType(file.getContentType());
+        assignVersion(fileMetadata);
 
-        int uniqueChunks = 0;
-        int duplicateChunks = 0;
-        List<String> uploadedS3Keys = new ArrayList<>();
+        // Tiny files skip chunking and the object store entirely
+        if (file.getSize() <= inlineMaxSize) {
+            fileMetadata.setStoredInline(true);
+            fileMetadataRepository.save(fileMetadata);
+            inlineFileContentRepository.save(new InlineFileContent(fileMetadata, file.getBytes()));
 
-        try {
-            // Process each chunk
-            for (ChunkInfo chunkInfo : chunks) {
-
-                System.out.println("Uploading chunk: order=" + chunkInfo.getOrder() +
-                        ", hash=" + chunkInfo.getHash() +
-                        ", size=" + chunkInfo.getData().length);
-
-                Chunk chunk;
-                Optional<Chunk> existingChunk = chunkRepository.findByChunkHash(chunkInfo.getHash());
-
-                if (existingChunk.isPresent()) {
-                    // Chunk already exists - deduplicated!
-                    chunk = existingChunk.get();
-                    chunk.incrementReference();
-                    duplicateChunks++;
-                } else {
-                    // New chunk - upload to S3
-                    String s3Key = "chunks/" + chunkInfo.getHash();
-                    s3Service.uploadChunk(s3Key, chunkInfo.getData());
-                    uploadedS3Keys.add(s3Key);
-
-                    chunk = new Chunk();
-                    chunk.setChunkHash(chunkInfo.getHash());
-                    chunk.setS3Key(s3Key);
-                    chunk.setChunkSize((long) chunkInfo.getData().length);
-                    chunk.setReferenceCount(1);
-                    uniqueChunks++;
-                }
-
-                chunk = chunkRepository.save(chunk);
-
-                // Create mapping
-                FileChunkMapping mapping = new FileChunkMapping(fileMetadata, chunk, chunkInfo.getOrder());
-                fileMetadata.getChunkMappings().add(mapping);
-            }
+            FileUploadResponse response = new FileUploadResponse();
+            response.setFileId(fileMetadata.getFileId());
+            response.setOriginalFileName(fileMetadata.getOriginalFileName());
+            response.setFileSize(fileMetadata.getFileSize());
+            response.setTotalChunks(0);
+            response.setUniqueChunks(0);
+            response.setDuplicateChunks(0);
+            response.setMessage("File uploaded successfully");
+            return response;
+        }
+
+        List<Chunk> storedChunks = new ArrayList<>();
+
+        // Chunks are streamed from the upload through pooled buffers, never the whole file at once
+        try (InputStream in = file.getInputStream()) {
+            ChunkCounts counts = attachChunks(fileMetadata, in, storedChunks);
 
             fileMetadataRepository.save(fileMetadata);
 
@@ -120,44 +124,159 @@ public class FileStorageService {
             response.setFileId(fileMetadata.getFileId());
             response.setOriginalFileName(fileMetadata.getOriginalFileName());
             response.setFileSize(fileMetadata.getFileSize());
-            response.setTotalChunks(chunks.size());
-            response.setUniqueChunks(uniqueChunks);
-            response.setDuplicateChunks(duplicateChunks);
+            response.setTotalChunks(counts.totalChunks());
+            response.setUniqueChunks(counts.uniqueChunks());
+            response.setDuplicateChunks(counts.totalChunks() - counts.uniqueChunks());
             response.setMessage("File uploaded successfully with deduplication");
 
             return response;
         } catch (Exception e) {
-            // Rollback S3 uploads if database operation fails
-            for (String s3Key : uploadedS3Keys) {
-                try {
-                    s3Service.deleteChunk(s3Key);
-                } catch (Exception ex) {
-                    // Log but don't throw - we want to complete the rollback
-                    System.err.println("Failed to delete chunk during rollback: " + s3Key);
-                }
-            }
+            rollbackUploads(storedChunks);
             throw new RuntimeException("Failed to upload file: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Makes a new, unsaved file the next version of the newest file with the
+     * same name in its bucket, or the first version of a new chain. The name
+     * is locked and the previous version demoted in the caller's transaction,
+     * so concurrent uploads of one name get consecutive version numbers, and
+     * concurrent first uploads one chain.
+     */
+    public void assignVersion(FileMetadata fileMetadata) {
+        fileMetadataRepository.lockName(fileMetadata.getBucket().getId(), fileMetadata.getOriginalFileName());
+        List<FileMetadata> previous = fileMetadataRepository.findLatestForUpdate(fileMetadata.getBucket().getId(),
+                fileMetadata.getOriginalFileName(), PageRequest.of(0, 1));
+        if (previous.isEmpty()) {
+            fileMetadata.setVersionGroup(fileMetadata.getFileId());
+            fileMetadata.setVersionNumber(1);
+        } else {
+            FileMetadata current = previous.get(0);
+            current.setLatest(false);
+            fileMetadataRepository.saveAndFlush(current);
+            fileMetadata.setVersionGroup(current.getVersionGroup());
+            fileMetadata.setVersionNumber(current.getVersionNumber() + 1);
+        }
+        fileMetadata.setLatest(true);
+    }
+
+    /**
+     * Moves an inline file into chunked storage, e.g. after the inline
+     * threshold was lowered. Every instance runs the migrator over the same
+     * ids, so the row is claimed with SKIP LOCKED and a file another instance
+     * is already moving is left to it. Returns whether this call moved it.
+     */
+    @Transactional
+    public boolean migrateInlineFile(Long id) throws IOException {
+        Optional<FileMetadata> claimed = fileMetadataRepository.lockInlineForMigration(id);
+        if (claimed.isEmpty()) {
+            return false;
+        }
+        FileMetadata fileMetadata = claimed.get();
+        InlineFileContent content = inlineFileContentRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Inline content missing for file: " + id));
+
+        List<Chunk> storedChunks = new ArrayList<>();
+        try {
+            attachChunks(fileMetadata, new ByteArrayInputStream(content.getData()), storedChunks);
+            fileMetadata.setStoredInline(false);
+            fileMetadataRepository.save(fileMetadata);
+            inlineFileContentRepository.delete(content);
+            return true;
+        } catch (Exception e) {
+            rollbackUploads(storedChunks);
+            throw new RuntimeException("Failed to migrate inline file: " + e.getMessage(), e);
+        }
+    }
+
+    private record ChunkCounts(int totalChunks, int uniqueChunks) {
+    }
+
+    // A chunk first stored by this upload; repeats of its content within the file map the same row
+    private static final class NewChunk {
+        private final ChunkStorageService.StoredChunk stored;
+        private final List<Integer> orders = new ArrayList<>();
+
+        private NewChunk(ChunkStorageService.StoredChunk stored) {
+            this.stored = stored;
+        }
+    }
+
+    /**
+     * Dedups each chunk against the store and maps it into the file. New
+     * chunks are uploaded, or appended to a pack, as they are read, but only
+     * saved once the whole input is chunked: waiting for each pack write
+     * before reading on would cost a pack flush per chunk and leave every
+     * pack with about one chunk in it.
+     */
+    private ChunkCounts attachChunks(FileMetadata fileMetadata, InputStream in, List<Chunk> storedChunks)
+            throws IOException {
+        Map<ChunkHash, NewChunk> newChunks = new LinkedHashMap<>();
+
+        int totalChunks = chunkingService.forEachChunk(in, chunkInfo -> {
+
+            log.debug("Uploading chunk: order={}, hash={}, size={}",
+                    chunkInfo.getOrder(), chunkInfo.getHash(), chunkInfo.getLength());
+
+            NewChunk stored = newChunks.get(chunkInfo.getHash());
+            if (stored != null) {
+                stored.orders.add(chunkInfo.getOrder());
+                return;
+            }
+
+            Optional<Chunk> existingChunk = chunkRepository.findByChunkHash(chunkInfo.getHash());
+
+            // The increment is atomic and fails if the garbage collector got to the row first
+            if (existingChunk.isPresent() && chunkRepository.incrementReference(existingChunk.get().getId()) == 1) {
+                // Chunk already exists - deduplicated!
+                fileMetadata.getChunkMappings().add(
+                        new FileChunkMapping(fileMetadata, existingChunk.get(), chunkInfo.getOrder()));
+                return;
+            }
+
+            // New chunk - compress and upload to S3 (packed chunks are reclaimed by compaction)
+            NewChunk created = new NewChunk(chunkStorageService.storeDeferred(chunkInfo));
+            if (created.stored.chunk().getS3Key() != null) {
+                storedChunks.add(created.stored.chunk());
+            }
+            created.orders.add(chunkInfo.getOrder());
+            newChunks.put(chunkInfo.getHash(), created);
+        });
+
+        // Usually waits for just the last pack, which the earlier ones were written before
+        for (NewChunk created : newChunks.values()) {
+            Chunk chunk = chunkStorageService.complete(created.stored);
+            chunk.setReferenceCount(created.orders.size());
+            chunk = chunkRepository.save(chunk);
+            for (int order : created.orders) {
+                fileMetadata.getChunkMappings().add(new FileChunkMapping(fileMetadata, chunk, order));
+            }
+        }
+
+        return new ChunkCounts(totalChunks, newChunks.size());
+    }
+
+    /**
+     * Hands the objects stored for a failed upload to the garbage collector
+     * instead of deleting them: they are keyed by content hash, and a
+     * concurrent upload of the same content may have committed a row that
+     * points at the same object.
+     */
+    private void rollbackUploads(List<Chunk> storedChunks) {
+        try {
+            chunkGarbageCollector.enqueueOrphans(storedChunks);
+        } catch (Exception e) {
+            // Don't hide the upload failure; unreferenced objects only cost space
+            log.warn("Failed to hand {} chunks of a failed upload to the garbage collector", storedChunks.size(), e);
+        }
+    }
+
     @Transactional(readOnly = true)
     public byte[] downloadFile(String fileId, Long userId) {
-        FileMetadata fileMetadata = fileMetadataRepository
-                .findByFileIdAndBucket_User_Id(fileId, userId)
-                .orElseThrow(() -> new RuntimeException("File not found"));
-
-        System.out.println("=== DOWNLOAD DEBUG ===");
-        System.out.println("File ID: " + fileId);
-        System.out.println("Original filename: " + fileMetadata.getOriginalFileName());
-        System.out.println("Expected file size: " + fileMetadata.getFileSize());
-        System.out.println("Number of chunk mappings: " + fileMetadata.getChunkMappings().size());
-
-        // Check if chunks are already ordered
-        System.out.println("Chunk mappings order BEFORE sorting:");
-        for (FileChunkMapping mapping : fileMetadata.getChunkMappings()) {
-            System.out.println("  Order: " + mapping.getChunkOrder() +
-                    ", Hash: " + mapping.getChunk().getChunkHash() +
-                    ", Size: " + mapping.getChunk().getChunkSize());
+        FileMetadata fileMetadata = permissionResolver.requireFile(fileId, userId, Permission.DOWNLOAD);
+
+        if (fileMetadata.isInline()) {
+            return readInline(fileMetadata);
         }
 
         // Sort explicitly
@@ -165,105 +284,143 @@ public class FileStorageService {
                 .stream()
                 .sorted(Comparator.comparingInt(FileChunkMapping::getChunkOrder))
                 .collect(Collectors.toList());
+        log.debug("Downloading file {} ({} bytes, {} chunks)", fileId, fileMetadata.getFileSize(),
+                sortedMappings.size());
 
-        System.out.println("Chunk mappings order AFTER sorting:");
-        for (FileChunkMapping mapping : sortedMappings) {
-            System.out.println("  Order: " + mapping.getChunkOrder() +
-                    ", Hash: " + mapping.getChunk().getChunkHash() +
-                    ", Size: " + mapping.getChunk().getChunkSize());
-        }
-
-        List<byte[]> chunkDataList = new ArrayList<>();
+        // Chunks are decompressed straight into their slot of the result
+        byte[] result = new byte[Math.toIntExact(fileMetadata.getFileSize())];
+        int offset = 0;
 
         for (FileChunkMapping mapping : sortedMappings) {
-            System.out.println("Downloading chunk: order=" + mapping.getChunkOrder() +
-                    ", s3Key=" + mapping.getChunk().getS3Key());
-            byte[] chunkData = s3Service.downloadChunk(mapping.getChunk().getS3Key());
-            System.out.println("  Downloaded size: " + chunkData.length +
-                    ", Expected size: " + mapping.getChunk().getChunkSize());
-            chunkDataList.add(chunkData);
+            try {
+                offset += chunkStorageService.read(ChunkStorageService.locate(mapping.getChunk()), result, offset);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read chunk: " + e.getMessage(), e);
+            }
         }
 
-        byte[] result = chunkingService.reassembleChunks(chunkDataList);
-        System.out.println("Final reassembled size: " + result.length);
-        System.out.println("Expected size: " + fileMetadata.getFileSize());
-        System.out.println("Size match: " + (result.length == fileMetadata.getFileSize()));
-        System.out.println("=== END DOWNLOAD DEBUG ===");
-
+        if (offset != result.length) {
+            log.warn("File {} reassembled to {} bytes, expected {}", fileId, offset, result.length);
+        }
         return result;
     }
 
-    @Transactional
-    public void deleteFile(String fileId, Long userId) {
-        log.info("Deleting file: " + fileId);
-        FileMetadata fileMetadata = fileMetadataRepository.findByFileIdAndBucket_User_Id(fileId, userId)
-                .orElseThrow(() -> new RuntimeException("File not found: " + fileId));
+    // Resolves everything needed to stream the file so the transfer itself needs no session
+    @Transactional(readOnly = true)
+    public FileManifest getFileManifest(String fileId, Long userId) {
+        FileMetadata fileMetadata = permissionResolver.requireFile(fileId, userId, Permission.DOWNLOAD);
+        return toManifest(fileMetadata);
+    }
 
-        if (!fileMetadata.getBucket().getUser().getId().equals(userId)) {
-            throw new RuntimeException("User is not authorized to delete this file");
+    // Must run inside a transaction
+    public FileManifest toManifest(FileMetadata fileMetadata) {
+        if (fileMetadata.isInline()) {
+            return new FileManifest(fileMetadata.getFileId(), fileMetadata.getOriginalFileName(),
+                    fileMetadata.getContentType(), fileMetadata.getFileSize(), List.of(),
+                    readInline(fileMetadata));
         }
 
-        // Collect S3 keys to delete AFTER successful transaction
-        List<String> s3KeysToDelete = new ArrayList<>();
-
-        // Collect chunks to process BEFORE deleting file metadata
-        List<Chunk> chunksToProcess = fileMetadata.getChunkMappings().stream()
-                .map(FileChunkMapping::getChunk)
-                .distinct()
+        List<ChunkLocation> chunks = fileChunkMappingRepository.findManifest(fileMetadata.getId())
+                .stream()
+                .map(mapping -> ChunkStorageService.locate(mapping.getChunk()))
                 .collect(Collectors.toList());
 
-        // Remove from bucket association to avoid Hibernate disassociation updates
-        if (fileMetadata.getBucket() != null) {
-            fileMetadata.getBucket().getFiles().remove(fileMetadata);
+        return new FileManifest(fileMetadata.getFileId(), fileMetadata.getOriginalFileName(),
+                fileMetadata.getContentType(), fileMetadata.getFileSize(), chunks, null);
+    }
+
+    // Writes the file chunk by chunk; with raw=true the stored (compressed) bytes are passed through
+    public void writeFile(FileManifest manifest, OutputStream out, boolean raw) throws IOException {
+        if (manifest.getInlineData() != null) {
+            out.write(manifest.getInlineData());
+            out.flush();
+            return;
+        }
+        for (ChunkLocation chunk : manifest.getChunks()) {
+            chunkStorageService.transferTo(chunk, out, raw);
+        }
+        out.flush();
+    }
+
+    // Writes the uncompressed bytes [start, end) of the file
+    public void writeFileRange(FileManifest manifest, OutputStream out, long start, long end) throws IOException {
+        if (manifest.getInlineData() != null) {
+            out.write(manifest.getInlineData(), (int) start, (int) (end - start));
+            out.flush();
+            return;
         }
+        long chunkStart = 0;
+        for (ChunkLocation chunk : manifest.getChunks()) {
+            long chunkEnd = chunkStart + chunk.getChunkSize();
+            if (chunkEnd > start && chunkStart < end) {
+                long from = Math.max(start, chunkStart) - chunkStart;
+                long to = Math.min(end, chunkEnd) - chunkStart;
+                chunkStorageService.transferRange(chunk, out, from, to - from);
+            }
+            if (chunkEnd >= end) {
+                break;
+            }
+            chunkStart = chunkEnd;
+        }
+        out.flush();
+    }
 
-        // Delete file metadata - this will cascade delete all mappings
-        fileMetadataRepository.delete(fileMetadata);
+    @Transactional
+    public void deleteFile(String fileId, Long userId) {
+        log.info("Deleting file: " + fileId);
+        permissionResolver.requireFile(fileId, userId, Permission.WRITE);
 
-        // Process each chunk
-        for (Chunk chunk : chunksToProcess) {
-            chunk.decrementReference();
+        // Deleting a file removes its whole version history
+        deleteFilesByIds(fileMetadataRepository.findChainIdsByFileIds(List.of(fileId)));
+    }
 
-            // If no more references, delete from S3 and database
-            if (chunk.getReferenceCount() == 0) {
-                s3KeysToDelete.add(chunk.getS3Key());
-                chunkRepository.delete(chunk);
-            } else {
-                chunkRepository.save(chunk);
-            }
+    /**
+     * Set-based deletion of files by primary key: one reference per mapping is
+     * released, chunks left unreferenced go to the deletion outbox in this same
+     * transaction, then mappings, inline content and file rows are removed in
+     * bulk. ChunkGarbageCollector deletes the objects later, so no caller ever
+     * waits on the object store. Cached share downloads of the files are
+     * evicted on every instance once this commits.
+     *
+     * The file rows are locked first and only the ones still there are
+     * deleted, so when two callers delete the same file concurrently its
+     * references are released once. Returns the number of files deleted.
+     */
+    @Transactional
+    public int deleteFilesByIds(Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> claimed = fileMetadataRepository.lockExistingIds(fileIds);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+        for (String fileId : fileMetadataRepository.findFileIdsByIds(claimed)) {
+            cacheInvalidationBus.publish(CacheName.SHARE_FILE, fileId);
         }
+        chunkRepository.releaseFileReferences(claimed);
+        chunkGarbageCollector.enqueueReleased(claimed);
+        fileChunkMappingRepository.deleteByFileIds(claimed);
+        inlineFileContentRepository.deleteByFileIds(claimed);
+        fileMetadataRepository.deleteByIds(claimed);
+        return claimed.size();
+    }
 
-        // Register S3 deletion to happen AFTER transaction commits successfully
-        TransactionSynchronizationManager.registerSynchronization(
-                new TransactionSynchronization() {
-                    @Override
-                    public void afterCommit() {
-                        // This runs ONLY if transaction commits successfully
-                        for (String s3Key : s3KeysToDelete) {
-                            try {
-                                s3Service.deleteChunk(s3Key);
-                            } catch (Exception e) {
-                                log.error("Failed to delete chunk from S3: {}", s3Key, e);
-                                // Consider adding to a dead letter queue for retry
-                            }
-                        }
-                    }
-                });
+    private byte[] readInline(FileMetadata fileMetadata) {
+        return inlineFileContentRepository.findById(fileMetadata.getId())
+                .map(InlineFileContent::getData)
+                .orElseThrow(() -> new RuntimeException("Inline content missing for file: " + fileMetadata.getFileId()));
     }
 
     @Transactional(readOnly = true)
     public List<FileMetadata> listFiles(String bucketId, Long userId) {
 
-        Bucket bucket = bucketRepository.findByBucketIdAndUserId(bucketId, userId)
-                .orElseThrow(() -> new RuntimeException(
-                        "Bucket not found with ID and user ID: " + bucketId + " and " + userId));
-
-        return fileMetadataRepository.findByBucketAndBucket_User_Id(bucket, userId);
+        Bucket bucket = permissionResolver.requireBucket(bucketId, userId, Permission.READ);
+        return fileMetadataRepository.findByBucketAndLatestTrue(bucket);
     }
 
     @Transactional(readOnly = true)
     public FileMetadata getFileMetadata(String fileId, Long userId) {
-        return fileMetadataRepository.findByFileIdAndBucket_User_Id(fileId, userId)
-                .orElseThrow(() -> new RuntimeException("File not found: " + fileId));
+        return permissionResolver.requireFile(fileId, userId, Permission.READ);
     }
 }
@@ -0,0 +1,162 @@
+package com.hydrangea.storage_service.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.response.FileVersionResponse;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Version history of files. Every upload of a name into a bucket becomes a
+ * new version (see FileStorageService.assignVersion); versions are ordinary
+ * file rows sharing a versionGroup, so unchanged chunks are shared between
+ * them through the usual reference counts and a version costs only the
+ * chunks it changed.
+ */
+@Service
+@Slf4j
+public class FileVersionService {
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileStorageService fileStorageService;
+    private final PermissionResolver permissionResolver;
+    private final TransactionTemplate transactionTemplate;
+
+    // Older versions kept per file besides the latest, 0 = unlimited
+    @Value("${file.versioning.max-versions:0}")
+    private int maxVersions;
+
+    // Older versions are pruned once they are this old, 0 = never
+    @Value("${file.versioning.max-age-days:0}")
+    private int maxAgeDays;
+
+    @Value("${file.versioning.prune-batch-size:500}")
+    private int pruneBatchSize;
+
+    public FileVersionService(FileMetadataRepository fileMetadataRepository, FileStorageService fileStorageService,
+            PermissionResolver permissionResolver, PlatformTransactionManager transactionManager) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.fileStorageService = fileStorageService;
+        this.permissionResolver = permissionResolver;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Newest first; any version's fileId identifies the file
+    @Transactional(readOnly = true)
+    public List<FileVersionResponse> listVersions(String fileId, Long userId) {
+        return findChain(fileId, userId, Permission.READ).stream()
+                .map(FileVersionResponse::from)
+                .toList();
+    }
+
+    // Makes an older version's content the latest again, as a new version; no content is copied
+    @Transactional
+    public FileVersionResponse restoreVersion(String fileId, int versionNumber, Long userId) {
+        List<FileMetadata> chain = findChain(fileId, userId, Permission.WRITE);
+        FileMetadata source = findVersion(chain, versionNumber);
+
+        FileMetadata restored = new FileMetadata();
+        restored.setFileId(UUID.randomUUID().toString());
+        restored.setOriginalFileName(source.getOriginalFileName());
+        restored.setBucket(source.getBucket());
+        restored.setFileSize(source.getFileSize());
+        restored.setContentType(source.getContentType());
+        restored.setStoredInline(source.getStoredInline());
+        restored.setVersionGroup(source.getVersionGroup());
+        // The unique (group, number) index rejects a concurrent upload that took the same number
+        restored.setVersionNumber(chain.get(0).getVersionNumber() + 1);
+        restored.setLatest(true);
+        chain.forEach(file -> file.setLatest(false));
+        fileMetadataRepository.saveAndFlush(restored);
+        fileMetadataRepository.copyContent(source.getId(), restored.getId());
+
+        log.info("Restored version {} of file {} as version {}", versionNumber, fileId, restored.getVersionNumber());
+        return FileVersionResponse.from(restored);
+    }
+
+    // Deletes one version; deleting the latest makes the next newest one the latest
+    @Transactional
+    public void deleteVersion(String fileId, int versionNumber, Long userId) {
+        List<FileMetadata> chain = findChain(fileId, userId, Permission.WRITE);
+        FileMetadata version = findVersion(chain, versionNumber);
+
+        if (version.isLatest()) {
+            chain.stream()
+                    .filter(file -> !file.getId().equals(version.getId()))
+                    .findFirst()
+                    .ifPresent(previous -> previous.setLatest(true));
+        }
+        fileStorageService.deleteFilesByIds(List.of(version.getId()));
+    }
+
+    // Keeps the latest version and the newest `keep` older ones; returns the number deleted
+    @Transactional
+    public int pruneVersions(String fileId, int keep, Long userId) {
+        if (keep < 0) {
+            throw new RuntimeException("keep must not be negative");
+        }
+        List<Long> expired = findChain(fileId, userId, Permission.WRITE).stream()
+                .filter(file -> !file.isLatest())
+                .skip(keep)
+                .map(FileMetadata::getId)
+                .toList();
+        return fileStorageService.deleteFilesByIds(expired);
+    }
+
+    /**
+     * Enforces the retention policy in batches; each batch releases its chunk
+     * references in bulk. Every instance runs this, so a batch is claimed with
+     * SKIP LOCKED and deleted in the same transaction, and instances running
+     * at the same time split the work instead of deleting the same versions.
+     */
+    @Scheduled(fixedDelayString = "${file.versioning.prune-interval-ms:3600000}")
+    public void pruneExpiredVersions() {
+        if (maxVersions <= 0 && maxAgeDays <= 0) {
+            return;
+        }
+
+        int pruned = 0;
+        Integer deleted;
+        do {
+            try {
+                // The claimed rows stay locked until the commit, so every one of them is deleted here
+                deleted = transactionTemplate.execute(status -> fileStorageService.deleteFilesByIds(
+                        fileMetadataRepository.lockExpiredVersionIds(maxVersions, maxAgeDays,
+                                LocalDateTime.now().minusDays(maxAgeDays), pruneBatchSize)));
+            } catch (Exception e) {
+                log.error("Failed to prune file versions", e);
+                break;
+            }
+            pruned += deleted;
+        } while (deleted == pruneBatchSize);
+
+        if (pruned > 0) {
+            log.info("Pruned {} file versions outside the retention policy", pruned);
+        }
+    }
+
+    private List<FileMetadata> findChain(String fileId, Long userId, Permission permission) {
+        FileMetadata file = permissionResolver.requireFile(fileId, userId, permission);
+        return fileMetadataRepository.findByVersionGroupOrderByVersionNumberDesc(file.getVersionGroup());
+    }
+
+    private static FileMetadata findVersion(List<FileMetadata> chain, int versionNumber) {
+        return chain.stream()
+                .filter(file -> file.getVersionNumber() == versionNumber)
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Version not found: " + versionNumber));
+    }
+}
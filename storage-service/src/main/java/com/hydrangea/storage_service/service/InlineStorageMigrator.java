@@ -0,0 +1,49 @@
+package com.hydrangea.storage_service.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Moves inline files that no longer fit under file.inline.max-size into chunked storage
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InlineStorageMigrator {
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileStorageService fileStorageService;
+
+    @Value("${file.inline.max-size:8192}")
+    private long inlineMaxSize;
+
+    @Value("${file.inline.migration-batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${file.inline.migration-interval-ms:300000}")
+    public void migrateOversizedFiles() {
+        List<Long> ids = fileMetadataRepository.findInlineIdsLargerThan(inlineMaxSize, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        int migrated = 0;
+        for (Long id : ids) {
+            try {
+                if (fileStorageService.migrateInlineFile(id)) {
+                    migrated++;
+                }
+            } catch (Exception e) {
+                log.error("Failed to move inline file {} to chunked storage", id, e);
+            }
+        }
+        log.info("Moved {} of {} inline files to chunked storage", migrated, ids.size());
+    }
+}
@@ -0,0 +1,131 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.entity.Chunk;
+import com.hydrangea.storage_service.entity.Pack;
+import com.hydrangea.storage_service.repository.ChunkRepository;
+import com.hydrangea.storage_service.repository.PackRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rewrites packs once most of their bytes belong to unreferenced chunks, and
+ * deletes retired pack objects after a grace period so in-flight reads that
+ * resolved the old location can still finish.
+ *
+ * An unreferenced chunk left behind in a retired pack can be referenced again
+ * by a dedup hit before the garbage collector removes it. Such chunks are
+ * moved out on a later run, otherwise the retired pack could never be purged.
+ */
+@Service
+@Slf4j
+public class PackCompactor {
+
+    private final PackRepository packRepository;
+    private final ChunkRepository chunkRepository;
+    private final S3Service s3Service;
+    private final TransactionTemplate transactionTemplate;
+
+    // Compact a pack once referenced bytes drop below this share of its size
+    @Value("${file.pack.compaction.max-live-ratio:0.5}")
+    private double maxLiveRatio;
+
+    // Leave young packs alone, uploads pointing into them may not have committed yet
+    @Value("${file.pack.compaction.min-age-minutes:10}")
+    private long minAgeMinutes;
+
+    @Value("${file.pack.compaction.retired-grace-minutes:60}")
+    private long retiredGraceMinutes;
+
+    public PackCompactor(PackRepository packRepository, ChunkRepository chunkRepository, S3Service s3Service,
+            PlatformTransactionManager transactionManager) {
+        this.packRepository = packRepository;
+        this.chunkRepository = chunkRepository;
+        this.s3Service = s3Service;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${file.pack.compaction.interval-ms:600000}")
+    public void compact() {
+        List<Long> candidates = new ArrayList<>(packRepository.findCompactionCandidates(
+                LocalDateTime.now().minusMinutes(minAgeMinutes), maxLiveRatio));
+        candidates.addAll(packRepository.findRetiredWithLiveChunks());
+
+        for (Long packId : candidates) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> compactPack(packId));
+            } catch (Exception e) {
+                log.error("Failed to compact pack {}", packId, e);
+            }
+        }
+
+        purgeRetired();
+    }
+
+    private void compactPack(Long packId) {
+        Pack pack = packRepository.findById(packId).orElse(null);
+        if (pack == null) {
+            return;
+        }
+
+        List<Chunk> live = chunkRepository.findLiveInPackForUpdate(packId);
+        if (!live.isEmpty()) {
+            // One GET for the whole pack is cheaper than a ranged GET per survivor
+            byte[] source = s3Service.downloadChunk(pack.getS3Key());
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            long[] offsets = new long[live.size()];
+            for (int i = 0; i < live.size(); i++) {
+                Chunk chunk = live.get(i);
+                offsets[i] = target.size();
+                target.write(source, chunk.getPackOffset().intValue(), chunk.getStoredSize().intValue());
+            }
+
+            String s3Key = "packs/" + UUID.randomUUID();
+            byte[] data = target.toByteArray();
+            s3Service.uploadChunk(s3Key, data);
+
+            Pack replacement = new Pack();
+            replacement.setS3Key(s3Key);
+            replacement.setTotalSize((long) data.length);
+            replacement.setChunkCount(live.size());
+            replacement = packRepository.save(replacement);
+
+            for (int i = 0; i < live.size(); i++) {
+                live.get(i).setPack(replacement);
+                live.get(i).setPackOffset(offsets[i]);
+            }
+            chunkRepository.saveAll(live);
+            log.info("Compacted pack {} into {}: kept {} of {} bytes", pack.getS3Key(), s3Key,
+                    data.length, pack.getTotalSize());
+        }
+
+        // Reads that resolved the moved chunks here may still be running, so the grace period starts over
+        if (!live.isEmpty() || pack.getRetiredAt() == null) {
+            pack.setRetiredAt(LocalDateTime.now());
+            packRepository.save(pack);
+        }
+    }
+
+    private void purgeRetired() {
+        List<Pack> purgeable = packRepository.findPurgeable(LocalDateTime.now().minusMinutes(retiredGraceMinutes));
+        for (Pack pack : purgeable) {
+            try {
+                s3Service.deleteChunk(pack.getS3Key());
+                packRepository.delete(pack);
+            } catch (Exception e) {
+                log.error("Failed to purge retired pack {}", pack.getS3Key(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hydrangea.storage_service.entity.Pack;
+import com.hydrangea.storage_service.repository.PackRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Group-commits small chunks from concurrent uploads into shared pack objects.
+ * A pack is written once it reaches the target size or its oldest chunk has
+ * waited max-delay-ms. Callers wait for the pack holding their bytes before
+ * committing, so an upload never commits metadata pointing at data that isn't
+ * durable yet.
+ */
+@Service
+@Slf4j
+public class PackWriter {
+
+    public record PackSlot(Long packId, long offset) {
+    }
+
+    // Exposes the backing array so a full pack is uploaded without a final copy
+    private static class PackBuffer extends ByteArrayOutputStream {
+        private PackBuffer(int initialSize) {
+            super(initialSize);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+    }
+
+    private static class OpenPack {
+        private final PackBuffer buffer;
+        private final CompletableFuture<Long> written = new CompletableFuture<>();
+        private int chunkCount;
+        private ScheduledFuture<?> timer;
+
+        private OpenPack(int initialSize) {
+            this.buffer = new PackBuffer(initialSize);
+        }
+    }
+
+    private final S3Service s3Service;
+    private final PackRepository packRepository;
+    private final TransactionTemplate packTransaction;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pack-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${file.pack.target-size:16777216}")
+    private int targetSize;
+
+    @Value("${file.pack.max-delay-ms:50}")
+    private long maxDelayMs;
+
+    // Guarded by this
+    private OpenPack current;
+
+    public PackWriter(S3Service s3Service, PackRepository packRepository,
+            PlatformTransactionManager transactionManager) {
+        this.s3Service = s3Service;
+        this.packRepository = packRepository;
+        // Pack rows are shared by many uploads and must not roll back with any one of them
+        this.packTransaction = new TransactionTemplate(transactionManager);
+        this.packTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Copies the bytes into the open pack and returns a future completed once
+     * the pack is durable. The data array can be reused as soon as this
+     * returns; callers must wait on the future before committing metadata.
+     */
+    public CompletableFuture<PackSlot> appendAsync(byte[] data, int length) {
+        OpenPack pack;
+        long offset;
+        boolean full;
+
+        synchronized (this) {
+            if (current == null) {
+                OpenPack opened = new OpenPack(Math.min(targetSize, 1 << 20));
+                opened.timer = flusher.schedule(() -> flushIfCurrent(opened), maxDelayMs, TimeUnit.MILLISECONDS);
+                current = opened;
+            }
+            pack = current;
+            offset = pack.buffer.size();
+            pack.buffer.write(data, 0, length);
+            pack.chunkCount++;
+
+            full = pack.buffer.size() >= targetSize;
+            if (full) {
+                current = null;
+            }
+        }
+
+        if (full) {
+            pack.timer.cancel(false);
+            write(pack);
+        }
+
+        return pack.written.thenApply(packId -> new PackSlot(packId, offset));
+    }
+
+    private void flushIfCurrent(OpenPack pack) {
+        synchronized (this) {
+            if (current != pack) {
+                return;
+            }
+            current = null;
+        }
+        write(pack);
+    }
+
+    private void write(OpenPack pack) {
+        String s3Key = "packs/" + UUID.randomUUID();
+        int size = pack.buffer.size();
+        boolean uploaded = false;
+        try {
+            s3Service.uploadChunk(s3Key, pack.buffer.array(), 0, size);
+            uploaded = true;
+
+            Pack entity = new Pack();
+            entity.setS3Key(s3Key);
+            entity.setTotalSize((long) size);
+            entity.setChunkCount(pack.chunkCount);
+            Long packId = packTransaction.execute(status -> packRepository.save(entity).getId());
+
+            log.debug("Wrote pack {} with {} chunks ({} bytes)", s3Key, pack.chunkCount, size);
+            pack.written.complete(packId);
+        } catch (Exception e) {
+            log.error("Failed to write pack {}", s3Key, e);
+            if (uploaded) {
+                try {
+                    s3Service.deleteChunk(s3Key);
+                } catch (Exception ex) {
+                    log.error("Failed to delete unrecorded pack {}", s3Key, ex);
+                }
+            }
+            pack.written.completeExceptionally(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        OpenPack pending;
+        synchronized (this) {
+            pending = current;
+            current = null;
+        }
+        if (pending != null) {
+            write(pending);
+        }
+        flusher.shutdown();
+    }
+}
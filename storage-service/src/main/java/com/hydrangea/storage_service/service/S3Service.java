@@ -9,12 +9,18 @@ import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
 public class S3Service {
 
+    private static final int MAX_DELETE_BATCH = 1000;
+
     private final S3Client s3Client;
 
     @Value("${aws.s3.bucket-name}")
@@ -25,13 +31,19 @@ public class S3Service {
     }
 
     public void uploadChunk(String s3Key, byte[] chunkData) {
+        uploadChunk(s3Key, chunkData, 0, chunkData.length);
+    }
+
+    // Uploads data[offset, offset + length) without copying it; the array may be reused once this returns
+    public void uploadChunk(String s3Key, byte[] data, int offset, int length) {
         PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                 .bucket(bucketName)
                 .key(s3Key)
                 .contentType("application/octet-stream")
                 .build();
 
-        s3Client.putObject(putObjectRequest, RequestBody.fromBytes(chunkData));
+        s3Client.putObject(putObjectRequest, RequestBody.fromContentProvider(
+                () -> new ByteArrayInputStream(data, offset, length), length, "application/octet-stream"));
     }
 
     public byte[] downloadChunk(String s3Key) {
@@ -47,6 +59,35 @@ public class S3Service {
         }
     }
 
+    // Caller owns the returned stream and must close it
+    public ResponseInputStream<GetObjectResponse> openChunk(String s3Key) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .build();
+
+        return s3Client.getObject(getObjectRequest);
+    }
+
+    // Ranged GET of [offset, offset + length) within an object, used for packed chunks
+    public ResponseInputStream<GetObjectResponse> openRange(String s3Key, long offset, long length) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .range("bytes=" + offset + "-" + (offset + length - 1))
+                .build();
+
+        return s3Client.getObject(getObjectRequest);
+    }
+
+    public byte[] downloadRange(String s3Key, long offset, long length) {
+        try (ResponseInputStream<GetObjectResponse> response = openRange(s3Key, offset, length)) {
+            return response.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading range from S3", e);
+        }
+    }
+
     public void deleteChunk(String s3Key) {
         log.info("Deleting chunk from S3: " + s3Key);
         DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
@@ -56,4 +97,31 @@ public class S3Service {
 
         s3Client.deleteObject(deleteObjectRequest);
     }
+
+    // Multi-object delete, at most 1000 keys per request; returns the keys that failed with their error
+    public Map<String, String> deleteChunks(List<String> s3Keys) {
+        Map<String, String> failed = new HashMap<>();
+        for (int start = 0; start < s3Keys.size(); start += MAX_DELETE_BATCH) {
+            List<String> batch = s3Keys.subList(start, Math.min(start + MAX_DELETE_BATCH, s3Keys.size()));
+            List<ObjectIdentifier> objects = batch.stream()
+                    .map(key -> ObjectIdentifier.builder().key(key).build())
+                    .toList();
+            DeleteObjectsRequest deleteObjectsRequest = DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(objects).quiet(true).build())
+                    .build();
+
+            try {
+                DeleteObjectsResponse response = s3Client.deleteObjects(deleteObjectsRequest);
+                for (S3Error error : response.errors()) {
+                    failed.put(error.key(), error.code() + ": " + error.message());
+                }
+            } catch (Exception e) {
+                for (String key : batch) {
+                    failed.put(key, e.getMessage());
+                }
+            }
+        }
+        return failed;
+    }
 }
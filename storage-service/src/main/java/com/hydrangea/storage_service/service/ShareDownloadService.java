@@ -0,0 +1,237 @@
+package com.hydrangea.storage_service.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.dto.response.FileManifest;
+import com.hydrangea.storage_service.dto.response.FileResponse;
+import com.hydrangea.storage_service.dto.response.SharedFilePage;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.exception.AppException;
+import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.ShareLinkRepository;
+import com.hydrangea.storage_service.security.BucketLookupCache;
+import com.hydrangea.storage_service.security.PermissionResolver;
+import com.hydrangea.storage_service.security.ShareLinkStateCache;
+import com.hydrangea.storage_service.security.ShareLinkStateCache.ShareLinkState;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Anonymous access to whatever a share link points at: one file, or a
+ * bucket's latest files. Link state, the shared resource and listing pages
+ * are all cached, so a busy link is served from memory and S3 with no
+ * database round trip per request. Entries live for a short TTL; deleted
+ * files are evicted through CacheInvalidationBus, while listing pages may
+ * show them until the TTL runs out.
+ */
+@Service
+@Slf4j
+public class ShareDownloadService {
+
+    public record SharedFile(Long bucketPk, FileManifest manifest) {
+    }
+
+    private record PageKey(Long bucketPk, long afterId, int limit) {
+    }
+
+    private static final class Usage {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+    }
+
+    private final ShareLinkService shareLinkService;
+    private final ShareLinkStateCache shareLinkStateCache;
+    private final ShareLinkRepository shareLinkRepository;
+    private final FileStorageService fileStorageService;
+    private final PermissionResolver permissionResolver;
+    private final BucketLookupCache bucketLookupCache;
+    private final TransactionTemplate writeTransaction;
+
+    private final LoadingCache<String, SharedFile> files;
+    private final LoadingCache<PageKey, SharedFilePage> pages;
+
+    // Per link id, drained into share_links by flushUsage; one small entry per link ever served
+    private final Map<Long, Usage> usage = new ConcurrentHashMap<>();
+
+    @Value("${share-link.download.max-page-size:200}")
+    private int maxPageSize;
+
+    public ShareDownloadService(ShareLinkService shareLinkService,
+            ShareLinkStateCache shareLinkStateCache,
+            ShareLinkRepository shareLinkRepository,
+            FileStorageService fileStorageService,
+            FileMetadataRepository fileMetadataRepository,
+            BucketLookupCache bucketLookupCache,
+            PermissionResolver permissionResolver,
+            CacheInvalidationBus cacheInvalidationBus,
+            PlatformTransactionManager transactionManager,
+            @Value("${share-link.download.cache.max-size:10000}") long maxSize,
+            @Value("${share-link.download.cache.max-weight-bytes:67108864}") long maxWeightBytes,
+            @Value("${share-link.download.cache.ttl-seconds:30}") long ttlSeconds) {
+        this.shareLinkService = shareLinkService;
+        this.shareLinkStateCache = shareLinkStateCache;
+        this.shareLinkRepository = shareLinkRepository;
+        this.fileStorageService = fileStorageService;
+        this.permissionResolver = permissionResolver;
+        this.bucketLookupCache = bucketLookupCache;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        TransactionTemplate readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        // Missing files load as null, which Caffeine doesn't cache.
+        // Weighed by size since inline files carry their content
+        this.files = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .<String, SharedFile>weigher((fileId, file) -> file.manifest().getInlineData() != null
+                        ? 256 + file.manifest().getInlineData().length
+                        : 256 + 64 * file.manifest().getChunks().size())
+                .expireAfterWrite(ttl)
+                .build(fileId -> readTransaction.execute(status -> fileMetadataRepository.findByFileId(fileId)
+                        .map(file -> new SharedFile(file.getBucket().getId(), fileStorageService.toManifest(file)))
+                        .orElse(null)));
+        cacheInvalidationBus.register(CacheName.SHARE_FILE, files::invalidate, files::invalidateAll);
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build(key -> readTransaction.execute(status -> loadPage(fileMetadataRepository, key)));
+    }
+
+    /**
+     * The link's state if it can be used anonymously: active, and either not
+     * password protected or presented with an access token from a verification.
+     */
+    public ShareLinkState resolve(String link, String accessToken) {
+        if (accessToken != null && !accessToken.isEmpty()) {
+            return shareLinkService.resolveAccessToken(link, accessToken);
+        }
+        ShareLinkState state = shareLinkStateCache.get(link);
+        if (state == null) {
+            throw new AppException(ErrorCode.SHARE_LINK_NOT_FOUND);
+        }
+        if (!state.active()) {
+            throw new AppException(ErrorCode.INVALID_SHARE_LINK);
+        }
+        if (state.passwordProtected()) {
+            throw new AppException(ErrorCode.SHARE_LINK_PASSWORD_INVALID);
+        }
+        return state;
+    }
+
+    /**
+     * The shared file, or with a fileId a latest or older file inside the
+     * shared bucket. VIEW links can be streamed for display but not downloaded
+     * as attachments.
+     */
+    public SharedFile resolveFile(ShareLinkState state, String fileId, boolean download) {
+        permissionResolver.checkShareLink(state, download ? Permission.DOWNLOAD : Permission.READ);
+        if (fileId == null) {
+            SharedFile file = files.get(state.resourceId());
+            if (file == null) {
+                throw new AppException(ErrorCode.FILE_NOT_FOUND);
+            }
+            return file;
+        }
+
+        Long bucketPk = bucketLookupCache.get(state.resourceId());
+        SharedFile file = bucketPk == null ? null : files.get(fileId);
+        if (file == null || !bucketPk.equals(file.bucketPk())) {
+            throw new AppException(ErrorCode.FILE_NOT_FOUND);
+        }
+        return file;
+    }
+
+    public SharedFilePage listFiles(ShareLinkState state, Long after, Integer limit) {
+        Long bucketPk = bucketLookupCache.get(state.resourceId());
+        if (bucketPk == null) {
+            throw new AppException(ErrorCode.BUCKET_NOT_FOUND);
+        }
+        int pageSize = limit == null || limit <= 0 ? maxPageSize : Math.min(limit, maxPageSize);
+        SharedFilePage page = pages.get(new PageKey(bucketPk, after == null ? 0 : after, pageSize));
+        recordAccess(state.id(), 0);
+        return page;
+    }
+
+    // Streams [start, end) of the file and accounts whatever actually reached the client
+    public void stream(ShareLinkState state, FileManifest manifest, OutputStream out, long start, long end)
+            throws IOException {
+        long[] written = { 0 };
+        OutputStream counting = new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                written[0] += len;
+            }
+        };
+        try {
+            fileStorageService.writeFileRange(manifest, counting, start, end);
+        } finally {
+            recordAccess(state.id(), written[0]);
+        }
+    }
+
+    private void recordAccess(Long linkId, long bytes) {
+        Usage linkUsage = usage.computeIfAbsent(linkId, id -> new Usage());
+        linkUsage.requests.increment();
+        linkUsage.bytes.add(bytes);
+    }
+
+    // Counts are best effort: an instance that stops between flushes loses at most one interval
+    @Scheduled(fixedDelayString = "${share-link.usage.flush-interval-ms:60000}")
+    public void flushUsage() {
+        for (Map.Entry<Long, Usage> entry : usage.entrySet()) {
+            long requests = entry.getValue().requests.sumThenReset();
+            long bytes = entry.getValue().bytes.sumThenReset();
+            if (requests == 0) {
+                continue;
+            }
+            try {
+                writeTransaction.executeWithoutResult(
+                        status -> shareLinkRepository.addUsage(entry.getKey(), requests, bytes));
+            } catch (Exception e) {
+                log.warn("Failed to record usage for share link {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private static SharedFilePage loadPage(FileMetadataRepository fileMetadataRepository, PageKey key) {
+        List<FileMetadata> page = fileMetadataRepository.findBucketPage(key.bucketPk(), key.afterId(), "%",
+                PageRequest.of(0, key.limit()));
+        List<FileResponse> files = page.stream()
+                .map(file -> FileResponse.builder()
+                        .id(file.getFileId())
+                        .name(file.getOriginalFileName())
+                        .type(file.getContentType())
+                        .size(file.getFileSize())
+                        .createdAt(file.getUploadedAt())
+                        .build())
+                .toList();
+        Long nextCursor = page.size() < key.limit() ? null : page.get(page.size() - 1).getId();
+        return new SharedFilePage(files, nextCursor);
+    }
+}
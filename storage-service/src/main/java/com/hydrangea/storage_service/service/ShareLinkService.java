@@ -1,25 +1,35 @@
 package com.hydrangea.storage_service.service;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.hydrangea.storage_service.constant.Permission;
 import com.hydrangea.storage_service.dto.request.CreateShareLinkRequest;
 import com.hydrangea.storage_service.dto.request.UpdateShareLinkRequest;
 import com.hydrangea.storage_service.dto.request.VerifyShareLinkRequest;
 import com.hydrangea.storage_service.dto.response.ShareLinkResponse;
-import com.hydrangea.storage_service.entity.Bucket;
 import com.hydrangea.storage_service.entity.ShareLink;
 import com.hydrangea.storage_service.entity.User;
 import com.hydrangea.storage_service.exception.AppException;
 import com.hydrangea.storage_service.exception.ErrorCode;
-import com.hydrangea.storage_service.repository.BucketRepository;
 import com.hydrangea.storage_service.repository.FileMetadataRepository;
 import com.hydrangea.storage_service.repository.ShareLinkRepository;
 import com.hydrangea.storage_service.repository.UserRepository;
+import com.hydrangea.storage_service.security.BucketLookupCache;
+import com.hydrangea.storage_service.security.PermissionResolver;
+import com.hydrangea.storage_service.security.ShareLinkStateCache;
+import com.hydrangea.storage_service.security.ShareLinkStateCache.ShareLinkState;
+import com.hydrangea.storage_service.util.ShareLinkTokenUtil;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -30,33 +40,22 @@ import lombok.extern.slf4j.Slf4j;
 public class ShareLinkService {
 
     private final ShareLinkRepository shareLinkRepository;
-    private final BucketRepository bucketRepository;
+    private final BucketLookupCache bucketLookupCache;
     private final FileMetadataRepository fileMetadataRepository;
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ShareLinkTokenUtil shareLinkTokenUtil;
+    private final ShareLinkStateCache shareLinkStateCache;
+    private final PermissionResolver permissionResolver;
+
+    @Value("${share-link.list.max-page-size:500}")
+    private int maxPageSize;
 
     @Transactional
     public ShareLinkResponse createShareLink(CreateShareLinkRequest request, Long userId) {
-        // Verify user owns the resource
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
-
-        // Check if resourceId is a bucket or file
-        boolean isBucket = bucketRepository.findByBucketId(request.getResourceId()).isPresent();
-        boolean isFile = fileMetadataRepository.findByFileId(request.getResourceId()).isPresent();
-
-        if (!isBucket && !isFile) {
-            throw new AppException(ErrorCode.INVALID_SHARE_LINK);
-        }
-
-        // If it's a bucket, verify ownership
-        if (isBucket) {
-            Bucket bucket = bucketRepository.findByBucketId(request.getResourceId())
-                    .orElseThrow(() -> new AppException(ErrorCode.INVALID_SHARE_LINK));
-            if (!bucket.getUser().getId().equals(userId)) {
-                throw new AppException(ErrorCode.UNAUTHORIZED);
-            }
-        }
+        requireManage(request.getResourceId(), userId);
 
         // Generate unique link
         String link;
@@ -114,9 +113,12 @@ public class ShareLinkService {
                 shareLink.setIsPasswordProtected(true);
                 shareLink.setHashPassword(passwordEncoder.encode(request.getPassword()));
             }
+            // Whoever knew the old password keeps no access through an earlier token
+            revokeAccessTokens(shareLink);
         }
 
         shareLinkRepository.save(shareLink);
+        shareLinkStateCache.invalidate(shareLink.getLink());
         log.info("Updated share link {} by user {}", linkId, userId);
 
         return toResponse(shareLink);
@@ -133,6 +135,7 @@ public class ShareLinkService {
         }
 
         shareLinkRepository.delete(shareLink);
+        shareLinkStateCache.invalidate(shareLink.getLink());
         log.info("Deleted share link {} by user {}", linkId, userId);
     }
 
@@ -147,31 +150,38 @@ public class ShareLinkService {
         }
 
         shareLink.setIsActive(false);
+        revokeAccessTokens(shareLink);
         shareLinkRepository.save(shareLink);
+        shareLinkStateCache.invalidate(shareLink.getLink());
         log.info("Deactivated share link {} by user {}", linkId, userId);
 
         return toResponse(shareLink);
     }
 
-    public List<ShareLinkResponse> getMyShareLinks(Long userId, Boolean activeOnly) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
-
-        List<ShareLink> links;
-        if (activeOnly != null && activeOnly) {
-            links = shareLinkRepository.findByCreatedByAndIsActive(user, true);
-        } else {
-            links = shareLinkRepository.findAll().stream()
-                    .filter(l -> l.getCreatedBy().getId().equals(userId))
-                    .toList();
-        }
+    // One page after the given link id; pass the last id of a page to get the next
+    @Transactional(readOnly = true)
+    public List<ShareLinkResponse> getMyShareLinks(Long userId, Boolean activeOnly, Long after, Integer limit) {
+        int pageSize = limit == null || limit <= 0 ? maxPageSize : Math.min(limit, maxPageSize);
+        List<ShareLink> links = shareLinkRepository.findPageByCreator(userId, after == null ? 0 : after,
+                Boolean.TRUE.equals(activeOnly), PageRequest.of(0, pageSize));
 
         return links.stream()
                 .map(this::toResponse)
                 .toList();
     }
 
-    public ShareLinkResponse verifyAndAccessShareLink(VerifyShareLinkRequest request) {
+    /**
+     * With an access token from an earlier verification this is an HMAC check
+     * against cached link state; the password and the database are only
+     * consulted when there is no token. A token is never combined with a
+     * password, so presenting one can't be used to skip the rate limit on
+     * password guesses.
+     */
+    public ShareLinkResponse verifyAndAccessShareLink(VerifyShareLinkRequest request, String accessToken) {
+        if (accessToken != null && !accessToken.isEmpty()) {
+            return accessWithToken(request.getLink(), accessToken);
+        }
+
         ShareLink shareLink = shareLinkRepository.findByLink(request.getLink())
                 .orElseThrow(() -> new AppException(ErrorCode.SHARE_LINK_NOT_FOUND));
 
@@ -193,22 +203,52 @@ public class ShareLinkService {
             throw new AppException(ErrorCode.SHARE_LINK_PASSWORD_INVALID);
         }
 
-        return toResponse(shareLink);
+        ShareLinkResponse response = toResponse(shareLink);
+        response.setAccessToken(shareLinkTokenUtil.generateToken(shareLink));
+        response.setAccessTokenExpiresIn(shareLinkTokenUtil.getTtlSeconds());
+        return response;
     }
 
-    public ShareLinkResponse getShareLinkByResourceId(String resourceId, Long userId) {
-        // Verify user owns the resource
-        boolean isBucketOwner = bucketRepository.findByBucketId(resourceId)
-                .map(b -> b.getUser().getId().equals(userId))
-                .orElse(false);
-
-        boolean isFileOwner = fileMetadataRepository.findByFileId(resourceId)
-                .map(f -> f.getBucket().getUser().getId().equals(userId))
-                .orElse(false);
+    // The link state for a valid access token; throws INVALID_SHARE_LINK once the token is expired or revoked
+    public ShareLinkState resolveAccessToken(String link, String accessToken) {
+        Claims claims;
+        try {
+            claims = shareLinkTokenUtil.parseToken(accessToken);
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new AppException(ErrorCode.INVALID_SHARE_LINK);
+        }
+        if (!claims.getSubject().equals(link)) {
+            throw new AppException(ErrorCode.INVALID_SHARE_LINK);
+        }
 
-        if (!isBucketOwner && !isFileOwner) {
-            throw new AppException(ErrorCode.UNAUTHORIZED);
+        ShareLinkState state = shareLinkStateCache.get(link);
+        if (state == null || !state.active()
+                || state.tokenGeneration() != shareLinkTokenUtil.getGeneration(claims)) {
+            throw new AppException(ErrorCode.INVALID_SHARE_LINK);
         }
+        return state;
+    }
+
+    private ShareLinkResponse accessWithToken(String link, String accessToken) {
+        ShareLinkState state = resolveAccessToken(link, accessToken);
+        return ShareLinkResponse.builder()
+                .id(state.id())
+                .link(state.link())
+                .resourceId(state.resourceId())
+                .createdByUsername(state.createdByUsername())
+                .accessLevel(state.accessLevel())
+                .isPasswordProtected(state.passwordProtected())
+                .isActive(state.active())
+                .createdAt(state.createdAt())
+                .build();
+    }
+
+    private void revokeAccessTokens(ShareLink shareLink) {
+        shareLink.setTokenGeneration(ShareLinkTokenUtil.generationOf(shareLink) + 1);
+    }
+
+    public ShareLinkResponse getShareLinkByResourceId(String resourceId, Long userId) {
+        requireManage(resourceId, userId);
 
         List<ShareLink> links = shareLinkRepository.findByResourceIdAndIsActive(resourceId, true);
         if (links.isEmpty()) {
@@ -218,6 +258,16 @@ public class ShareLinkService {
         return toResponse(links.get(0)); // Return first active link
     }
 
+    // Sharing a bucket or a file in it is up to whoever manages the bucket
+    private void requireManage(String resourceId, Long userId) {
+        Long bucketPk = Optional.ofNullable(bucketLookupCache.get(resourceId))
+                .or(() -> fileMetadataRepository.findByFileId(resourceId).map(file -> file.getBucket().getId()))
+                .orElseThrow(() -> new AppException(ErrorCode.INVALID_SHARE_LINK));
+        if (!permissionResolver.can(userId, bucketPk, Permission.MANAGE)) {
+            throw new AppException(ErrorCode.UNAUTHORIZED);
+        }
+    }
+
     private String generateUniqueLink() {
         return UUID.randomUUID().toString().substring(0, 8) + "-" +
                 UUID.randomUUID().toString().substring(0, 8);
@@ -233,6 +283,8 @@ public class ShareLinkService {
                 .isPasswordProtected(shareLink.getIsPasswordProtected())
                 .isActive(shareLink.getIsActive())
                 .createdAt(shareLink.getCreatedAt())
+                .accessCount(shareLink.getAccessCount())
+                .bytesServed(shareLink.getBytesServed())
                 .build();
     }
 }
@@ -0,0 +1,53 @@
+package com.hydrangea.storage_service.service;
+
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+import com.hydrangea.storage_service.dto.auth.UserDTO;
+import com.hydrangea.storage_service.entity.User;
+import com.hydrangea.storage_service.exception.AppException;
+import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.mapper.UserMapper;
+import com.hydrangea.storage_service.repository.UserRepository;
+import com.hydrangea.storage_service.security.UserCache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Account changes that must reach requests authenticated from token claims right away
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserAdminService {
+
+    private static final Set<String> ROLES = Set.of("USER", "ADMIN");
+
+    private final UserRepository userRepository;
+    private final UserCache userCache;
+    private final UserMapper userMapper;
+
+    public UserDTO setEnabled(Long userId, boolean enabled) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
+        user.setEnabled(enabled);
+        userRepository.save(user);
+        // After the commit, so a concurrent lookup can't cache the old state again
+        userCache.invalidate(userId);
+        log.info("User {} {}", user.getUsername(), enabled ? "enabled" : "disabled");
+        return userMapper.toUserDTO(user);
+    }
+
+    public UserDTO setRole(Long userId, String role) {
+        if (role == null || !ROLES.contains(role)) {
+            throw new RuntimeException("Unknown role: " + role);
+        }
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new AppException(ErrorCode.USER_NOT_FOUND));
+        user.setRole(role);
+        userRepository.save(user);
+        userCache.invalidate(userId);
+        log.info("User {} is now {}", user.getUsername(), role);
+        return userMapper.toUserDTO(user);
+    }
+}
@@ -1,8 +1,8 @@
 package com.hydrangea.storage_service.service;
 
-import com.hydrangea.storage_service.entity.User;
-import com.hydrangea.storage_service.repository.UserRepository;
 import com.hydrangea.storage_service.security.CustomUserDetails;
+import com.hydrangea.storage_service.security.UserCache;
+
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -16,23 +16,25 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
-@Slf4j
 @RequiredArgsConstructor
+@Slf4j
 public class UserDetailsServiceImpl implements UserDetailsService {
 
-    private final UserRepository userRepository;
+    private final UserCache userCache;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+        UserCache.CachedUser user = userCache.get(username);
+        if (user == null) {
+            throw new UsernameNotFoundException("User not found: " + username);
+        }
 
         CustomUserDetails customUserDetails = new CustomUserDetails();
-        customUserDetails.setId(user.getId());
-        customUserDetails.setUsername(user.getUsername());
-        customUserDetails.setPassword(user.getPasswordHash());
-        customUserDetails.setRole(user.getRole());
-        customUserDetails.setEnabled(user.getEnabled());
+        customUserDetails.setId(user.id());
+        customUserDetails.setUsername(user.username());
+        customUserDetails.setPassword(user.passwordHash());
+        customUserDetails.setRole(user.role());
+        customUserDetails.setEnabled(user.enabled());
 
         return customUserDetails;
     }
@@ -0,0 +1,90 @@
+package com.hydrangea.storage_service.util;
+
+import java.nio.ByteBuffer;
+
+import com.hydrangea.storage_service.constant.HashAlgorithm;
+
+/**
+ * Immutable 256-bit content hash of a chunk together with the algorithm that
+ * produced it. The digest is held as four longs so that equality and hashing
+ * never touch a byte array or a hex string; hex is only produced for object
+ * keys and logs. Hashes from different algorithms are never equal.
+ */
+public final class ChunkHash {
+
+    public static final int LENGTH = 32;
+
+    private final HashAlgorithm algorithm;
+    private final long h0;
+    private final long h1;
+    private final long h2;
+    private final long h3;
+
+    private ChunkHash(HashAlgorithm algorithm, long h0, long h1, long h2, long h3) {
+        this.algorithm = algorithm;
+        this.h0 = h0;
+        this.h1 = h1;
+        this.h2 = h2;
+        this.h3 = h3;
+    }
+
+    public static ChunkHash of(HashAlgorithm algorithm, byte[] digest) {
+        if (digest.length != LENGTH) {
+            throw new IllegalArgumentException("Chunk hash must be " + LENGTH + " bytes, got " + digest.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(digest);
+        return new ChunkHash(algorithm, buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    public static ChunkHash fromHex(HashAlgorithm algorithm, String hex) {
+        if (hex.length() != LENGTH * 2) {
+            throw new IllegalArgumentException("Chunk hash must be " + LENGTH * 2 + " hex characters");
+        }
+        return new ChunkHash(algorithm, parseLong(hex, 0), parseLong(hex, 16), parseLong(hex, 32),
+                parseLong(hex, 48));
+    }
+
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(LENGTH).putLong(h0).putLong(h1).putLong(h2).putLong(h3).array();
+    }
+
+    public String toHex() {
+        return HashUtils.toHex(toBytes());
+    }
+
+    // Object key for a chunk stored on its own
+    public String toS3Key() {
+        return algorithm.getKeyPrefix() + toHex();
+    }
+
+    private static long parseLong(String hex, int from) {
+        return Long.parseUnsignedLong(hex, from, from + 16, 16);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ChunkHash other)) {
+            return false;
+        }
+        return algorithm == other.algorithm
+                && h0 == other.h0 && h1 == other.h1 && h2 == other.h2 && h3 == other.h3;
+    }
+
+    // The digest is already uniformly distributed, any 32 bits of it will do
+    @Override
+    public int hashCode() {
+        return (int) h0;
+    }
+
+    @Override
+    public String toString() {
+        return algorithm.name().toLowerCase() + ":" + toHex();
+    }
+}
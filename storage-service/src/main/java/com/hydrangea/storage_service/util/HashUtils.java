@@ -1,30 +1,18 @@
 package com.hydrangea.storage_service.util;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-
 public final class HashUtils {
 
-    private HashUtils() {
-    }
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
-    public static String sha256Hex(byte[] data, int len) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            digest.update(data, 0, len);
-            byte[] hash = digest.digest();
-            return toHex(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
+    private HashUtils() {
     }
 
-    private static String toHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder(bytes.length * 2);
-        for (byte b : bytes) {
-            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
-            sb.append(Character.forDigit((b & 0xF), 16));
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
         }
-        return sb.toString();
+        return new String(chars);
     }
 }
@@ -1,8 +1,16 @@
 package com.hydrangea.storage_service.util;
 
+import com.hydrangea.storage_service.security.CustomUserDetails;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -14,12 +22,18 @@ import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Component
 @RequiredArgsConstructor
 public class JwtUtil {
 
+    private static final String CLAIM_USER_ID = "uid";
+    private static final String CLAIM_ROLE = "role";
+    private static final String CLAIM_ENABLED = "enabled";
+
     @Value("${jwt.secret}")
     private String secret;
 
@@ -29,8 +43,54 @@ public class JwtUtil {
     @Value("${jwt.refresh-token-expiration}")
     private Long refreshTokenExpiration; // 7 days in milliseconds
 
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private long verifiedCacheMaxSize;
+
+    // Built once: deriving the key and the parser per call showed up on every request
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    /**
+     * Tokens that already passed signature verification, kept until they
+     * expire so repeat requests with the same token skip base64, JSON parsing
+     * and the HMAC. Only valid tokens are cached; a forged token never gets
+     * in because the key is the full token string.
+     */
+    private Cache<String, Claims> verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String token, Claims claims, long currentTime) {
+                        Date expiration = claims.getExpiration();
+                        long remaining = expiration == null ? 0 : expiration.getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String token, Claims claims, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String token, Claims claims, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        return signingKey;
     }
 
     public String extractUsername(String token) {
@@ -47,15 +107,23 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        Claims cached = verifiedTokens.getIfPresent(token);
+        // Eviction is lazy, so check the expiry the parser would have checked
+        if (cached != null && !isTokenExpired(cached)) {
+            return cached;
+        }
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+        verifiedTokens.put(token, claims);
+        return claims;
+    }
+
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration() != null && claims.getExpiration().before(new Date());
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    // Verifies the signature and expiry once; every other check should reuse the returned claims
+    public Claims parseClaims(String token) {
+        return extractAllClaims(token);
     }
 
     public String generateAccessToken(UserDetails userDetails) {
@@ -63,9 +131,33 @@ public class JwtUtil {
         claims.put("roles", userDetails.getAuthorities().stream()
                 .map(authority -> authority.getAuthority())
                 .toList());
+        // Lets requests be authenticated from the token alone, without loading the user
+        if (userDetails instanceof CustomUserDetails user) {
+            claims.put(CLAIM_USER_ID, user.getId());
+            claims.put(CLAIM_ROLE, user.getRole());
+            claims.put(CLAIM_ENABLED, user.isEnabled());
+        }
         return createToken(claims, userDetails.getUsername(), accessTokenExpiration);
     }
 
+    // Null when the token predates the identity claims
+    public CustomUserDetails toUserDetails(Claims claims) {
+        Number userId = claims.get(CLAIM_USER_ID, Number.class);
+        if (userId == null) {
+            return null;
+        }
+        CustomUserDetails user = new CustomUserDetails();
+        user.setId(userId.longValue());
+        user.setUsername(claims.getSubject());
+        user.setRole(claims.get(CLAIM_ROLE, String.class));
+        user.setEnabled(Boolean.TRUE.equals(claims.get(CLAIM_ENABLED, Boolean.class)));
+        return user;
+    }
+
+    public boolean isRefreshToken(Claims claims) {
+        return "refresh".equals(claims.get("type", String.class));
+    }
+
     public String generateRefreshToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("type", "refresh");
@@ -78,6 +170,8 @@ public class JwtUtil {
     private String createToken(Map<String, Object> claims, String subject, Long expiration) {
         return Jwts.builder()
                 .claims(claims)
+                // jti, so a single token can be revoked
+                .id(UUID.randomUUID().toString())
                 .subject(subject)
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
@@ -86,17 +180,17 @@ public class JwtUtil {
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        try {
+            return userDetails.getUsername().equals(extractAllClaims(token).getSubject());
+        } catch (Exception e) {
+            return false;
+        }
     }
 
     public Boolean validateToken(String token) {
         try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
-            return !isTokenExpired(token);
+            extractAllClaims(token);
+            return true;
         } catch (Exception e) {
             return false;
         }
@@ -0,0 +1,83 @@
+package com.hydrangea.storage_service.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.hydrangea.storage_service.entity.ShareLink;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Short-lived tokens handed out by a successful share link verification, so
+ * a visitor proves the password once and then pays an HMAC per request
+ * instead of a BCrypt. A token is scoped to one link and one token
+ * generation; bumping the link's generation revokes every token issued so far.
+ */
+@Component
+public class ShareLinkTokenUtil {
+
+    // Header that carries the token on share link requests
+    public static final String HEADER = "X-Share-Link-Token";
+
+    private static final String CLAIM_GENERATION = "gen";
+
+    @Value("${jwt.secret}")
+    private String secret;
+
+    @Value("${share-link.access-token.ttl-seconds:900}")
+    private long ttlSeconds;
+
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // Derived from the JWT secret so a share token can never pass as a login token, or the reverse
+    @PostConstruct
+    void init() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        signingKey = Keys.hmacShaKeyFor(mac.doFinal("share-link-access".getBytes(StandardCharsets.UTF_8)));
+        parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+    }
+
+    public String generateToken(ShareLink shareLink) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .subject(shareLink.getLink())
+                .claim(CLAIM_GENERATION, generationOf(shareLink))
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + ttlSeconds * 1000))
+                .signWith(signingKey, Jwts.SIG.HS256)
+                .compact();
+    }
+
+    // Verifies the signature and expiry; throws JwtException when either fails
+    public Claims parseToken(String token) {
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    public int getGeneration(Claims claims) {
+        Number generation = claims.get(CLAIM_GENERATION, Number.class);
+        return generation == null ? -1 : generation.intValue();
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public static int generationOf(ShareLink shareLink) {
+        return shareLink.getTokenGeneration() == null ? 0 : shareLink.getTokenGeneration();
+    }
+}
@@ -0,0 +1,87 @@
+package com.hydrangea.storage_service.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.hydrangea.storage_service.entity.ShareLink;
+import com.hydrangea.storage_service.util.ShareLinkTokenUtil;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AuthRateLimitFilterTests {
+
+    private static final int CAPACITY = 3;
+
+    private final ShareLinkTokenUtil tokenUtil = new ShareLinkTokenUtil();
+    private final AuthRateLimitFilter filter;
+
+    AuthRateLimitFilterTests() {
+        ReflectionTestUtils.setField(tokenUtil, "secret", "a-test-secret-that-is-long-enough-for-hmac-sha256");
+        ReflectionTestUtils.setField(tokenUtil, "ttlSeconds", 60L);
+        ReflectionTestUtils.invokeMethod(tokenUtil, "init");
+        filter = new AuthRateLimitFilter(new SimpleMeterRegistry(), tokenUtil,
+                List.of("/api/auth/login", "/api/share-links/verify"), CAPACITY, 1, 1000);
+    }
+
+    private int post(String path, String shareToken) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr("10.0.0.1");
+        if (shareToken != null) {
+            request.addHeader(ShareLinkTokenUtil.HEADER, shareToken);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    private String validToken() {
+        ShareLink link = new ShareLink();
+        link.setLink("abc");
+        return tokenUtil.generateToken(link);
+    }
+
+    @Test
+    void limitsPasswordAttempts() throws Exception {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(200, post("/api/auth/login", null));
+        }
+        assertEquals(429, post("/api/auth/login", null));
+    }
+
+    @Test
+    void shareLinkTokenHeaderDoesNotExemptLogin() throws Exception {
+        String token = validToken();
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(200, post("/api/auth/login", token));
+        }
+        assertEquals(429, post("/api/auth/login", token));
+    }
+
+    @Test
+    void invalidShareLinkTokenIsCharged() throws Exception {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(200, post("/api/share-links/verify", "x"));
+        }
+        assertEquals(429, post("/api/share-links/verify", "x"));
+    }
+
+    @Test
+    void verifyWithValidTokenIsNotCharged() throws Exception {
+        String token = validToken();
+        for (int i = 0; i < CAPACITY * 3; i++) {
+            assertEquals(200, post("/api/share-links/verify", token));
+        }
+        // The client's budget for password attempts is untouched
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(200, post("/api/share-links/verify", null));
+        }
+        assertEquals(429, post("/api/share-links/verify", null));
+    }
+}
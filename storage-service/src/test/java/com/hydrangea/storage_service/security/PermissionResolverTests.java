@@ -0,0 +1,140 @@
+package com.hydrangea.storage_service.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.hydrangea.storage_service.constant.AccessLevel;
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.constant.Permission;
+import com.hydrangea.storage_service.exception.AppException;
+import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.service.CacheFactory;
+import com.hydrangea.storage_service.service.CacheInvalidationBus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PermissionResolverTests {
+
+    private static final Long OWNER = 1L;
+    private static final Long USER = 2L;
+    private static final Long BUCKET = 10L;
+
+    private final BucketRepository bucketRepository = mock(BucketRepository.class);
+    private final BucketLookupCache bucketLookupCache = mock(BucketLookupCache.class);
+    private final CacheInvalidationBus cacheInvalidationBus = mock(CacheInvalidationBus.class);
+    private final PermissionResolver resolver = new PermissionResolver(bucketRepository,
+            mock(FileMetadataRepository.class), bucketLookupCache,
+            new CacheFactory(cacheInvalidationBus, new SimpleMeterRegistry()), cacheInvalidationBus, 100, 60);
+
+    // The rows findAccess returns for the user; no levels means the bucket exists but the user isn't on it
+    private void access(Long bucketPk, AccessLevel... levels) {
+        List<BucketRepository.AccessRow> rows = levels.length == 0 ? List.of(row(null))
+                : Arrays.stream(levels).map(PermissionResolverTests::row).toList();
+        when(bucketRepository.findAccess(bucketPk, USER)).thenReturn(rows);
+    }
+
+    private static BucketRepository.AccessRow row(AccessLevel accessLevel) {
+        return new BucketRepository.AccessRow() {
+            @Override
+            public Long getOwnerId() {
+                return OWNER;
+            }
+
+            @Override
+            public AccessLevel getAccessLevel() {
+                return accessLevel;
+            }
+        };
+    }
+
+    private ErrorCode failure(Permission permission) {
+        when(bucketLookupCache.get("bucket")).thenReturn(BUCKET);
+        return assertThrows(AppException.class, () -> resolver.requireBucket("bucket", USER, permission))
+                .getErrorCode();
+    }
+
+    @Test
+    void ownerMayDoAnything() {
+        when(bucketRepository.findAccess(BUCKET, OWNER)).thenReturn(List.of(row(null)));
+
+        for (Permission permission : Permission.values()) {
+            assertTrue(resolver.can(OWNER, BUCKET, permission), permission.name());
+        }
+    }
+
+    @Test
+    void accessLevelsAllowIncreasingPermissions() {
+        access(11L, AccessLevel.VIEW);
+        access(12L, AccessLevel.DOWNLOAD);
+        access(13L, AccessLevel.EDIT);
+
+        assertTrue(resolver.can(USER, 11L, Permission.READ));
+        assertFalse(resolver.can(USER, 11L, Permission.DOWNLOAD));
+        assertTrue(resolver.can(USER, 12L, Permission.DOWNLOAD));
+        assertFalse(resolver.can(USER, 12L, Permission.WRITE));
+        assertTrue(resolver.can(USER, 13L, Permission.WRITE));
+        assertFalse(resolver.can(USER, 13L, Permission.MANAGE));
+    }
+
+    @Test
+    void widestOfDuplicateGrantsWins() {
+        access(11L, AccessLevel.EDIT, AccessLevel.VIEW);
+        access(12L, AccessLevel.VIEW, AccessLevel.DOWNLOAD, AccessLevel.VIEW);
+
+        assertTrue(resolver.can(USER, 11L, Permission.WRITE));
+        assertTrue(resolver.can(USER, 12L, Permission.DOWNLOAD));
+        assertFalse(resolver.can(USER, 12L, Permission.WRITE));
+    }
+
+    @Test
+    void strangersSeeNotFoundAndCollaboratorsUnauthorized() {
+        access(BUCKET);
+        assertEquals(ErrorCode.BUCKET_NOT_FOUND, failure(Permission.READ));
+
+        evict(CacheName.PERMISSION, USER + ":" + BUCKET);
+        access(BUCKET, AccessLevel.VIEW);
+        assertEquals(ErrorCode.UNAUTHORIZED, failure(Permission.WRITE));
+    }
+
+    @Test
+    void grantsAreCachedUntilEvicted() {
+        access(BUCKET, AccessLevel.VIEW);
+        assertFalse(resolver.can(USER, BUCKET, Permission.WRITE));
+        access(BUCKET, AccessLevel.EDIT);
+        assertFalse(resolver.can(USER, BUCKET, Permission.WRITE));
+        verify(bucketRepository, times(1)).findAccess(BUCKET, USER);
+
+        evict(CacheName.PERMISSION, USER + ":" + BUCKET);
+        assertTrue(resolver.can(USER, BUCKET, Permission.WRITE));
+
+        access(BUCKET);
+        evict(CacheName.PERMISSION_BUCKET, BUCKET.toString());
+        assertFalse(resolver.can(USER, BUCKET, Permission.READ));
+        verify(bucketRepository, times(3)).findAccess(BUCKET, USER);
+    }
+
+    // What the bus does on every instance once an invalidation commits
+    @SuppressWarnings("unchecked")
+    private void evict(CacheName cache, String key) {
+        ArgumentCaptor<Consumer<String>> handler = ArgumentCaptor.forClass(Consumer.class);
+        verify(cacheInvalidationBus).register(eq(cache), handler.capture(), any());
+        handler.getValue().accept(key);
+    }
+}
@@ -0,0 +1,126 @@
+package com.hydrangea.storage_service.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.hydrangea.storage_service.entity.RevokedToken;
+import com.hydrangea.storage_service.repository.RevokedTokenRepository;
+
+// Instances sharing an in-memory revoked_tokens table; the table's unique jti is what makes rotation single-use
+class TokenRevocationListTests {
+
+    private final Map<String, RevokedToken> table = new ConcurrentHashMap<>();
+    private final RevokedTokenRepository repository = mock(RevokedTokenRepository.class);
+
+    TokenRevocationListTests() {
+        when(repository.insertIfAbsent(anyString(), any(), any())).thenAnswer(invocation -> {
+            RevokedToken token = new RevokedToken();
+            token.setJti(invocation.getArgument(0));
+            token.setExpiresAt(invocation.getArgument(1));
+            token.setRevokedAt(invocation.getArgument(2));
+            return table.putIfAbsent(token.getJti(), token) == null ? 1 : 0;
+        });
+        when(repository.findRevokedSince(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime since = invocation.getArgument(0);
+            LocalDateTime now = invocation.getArgument(1);
+            return table.values().stream()
+                    .filter(token -> token.getRevokedAt().isAfter(since) && token.getExpiresAt().isAfter(now))
+                    .toList();
+        });
+    }
+
+    private TokenRevocationList instance() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        TokenRevocationList list = new TokenRevocationList(repository, transactionManager);
+        ReflectionTestUtils.setField(list, "refreshOverlapSeconds", 30L);
+        list.load();
+        return list;
+    }
+
+    private static Date inMinutes(long minutes) {
+        return new Date(System.currentTimeMillis() + minutes * 60_000);
+    }
+
+    @Test
+    void refreshTokenCanBeUsedOnce() {
+        TokenRevocationList list = instance();
+
+        assertFalse(list.isRevoked("jti-1"));
+        assertTrue(list.markUsed("jti-1", inMinutes(10)));
+        assertTrue(list.isRevoked("jti-1"));
+        assertFalse(list.markUsed("jti-1", inMinutes(10)));
+    }
+
+    @Test
+    void concurrentUsesOnSeveralInstancesRotateOnce() throws Exception {
+        List<TokenRevocationList> instances = List.of(instance(), instance(), instance());
+        ExecutorService executor = Executors.newFixedThreadPool(12);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> attempts = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                TokenRevocationList list = instances.get(i % instances.size());
+                attempts.add(executor.submit(() -> {
+                    start.await();
+                    return list.markUsed("jti-1", inMinutes(10));
+                }));
+            }
+            start.countDown();
+
+            int rotated = 0;
+            for (Future<Boolean> attempt : attempts) {
+                rotated += attempt.get() ? 1 : 0;
+            }
+            assertEquals(1, rotated);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void revocationOnAnotherInstanceArrivesWithTheNextRefresh() {
+        TokenRevocationList first = instance();
+        TokenRevocationList second = instance();
+
+        first.revoke("jti-1", inMinutes(10));
+        assertFalse(second.isRevoked("jti-1"));
+
+        second.refresh();
+        assertTrue(second.isRevoked("jti-1"));
+        assertFalse(second.markUsed("jti-1", inMinutes(10)));
+    }
+
+    @Test
+    void expiredEntriesArePruned() {
+        TokenRevocationList list = instance();
+        list.revoke("expired", inMinutes(-1));
+        list.revoke("live", inMinutes(10));
+
+        list.prune();
+
+        assertFalse(list.isRevoked("expired"));
+        assertTrue(list.isRevoked("live"));
+    }
+}
@@ -0,0 +1,162 @@
+package com.hydrangea.storage_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.hydrangea.storage_service.constant.CompressionCodec;
+import com.hydrangea.storage_service.constant.HashAlgorithm;
+import com.hydrangea.storage_service.dto.response.FileUploadResponse;
+import com.hydrangea.storage_service.entity.Bucket;
+import com.hydrangea.storage_service.entity.Chunk;
+import com.hydrangea.storage_service.entity.FileChunkMapping;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.ChunkRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.InlineFileContentRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+import com.hydrangea.storage_service.util.ChunkHash;
+
+// The chunks table is an in-memory stand-in whose uncommitted rows go away on rollback, like the database's
+class BulkUploadServiceTests {
+
+    private static final long BUCKET_ID = 10L;
+
+    private final FileMetadataRepository fileMetadataRepository = mock(FileMetadataRepository.class);
+    private final ChunkRepository chunkRepository = mock(ChunkRepository.class);
+    private final BucketRepository bucketRepository = mock(BucketRepository.class);
+    private final ChunkGarbageCollector chunkGarbageCollector = mock(ChunkGarbageCollector.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    // Chunk rows by id: committed, and written by the open transaction
+    private final Map<Long, Chunk> committed = new HashMap<>();
+    private final Map<Long, Chunk> pending = new HashMap<>();
+    private long nextId = 1;
+
+    private final BulkUploadService service;
+
+    BulkUploadServiceTests() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        doAnswer(invocation -> {
+            committed.putAll(pending);
+            pending.clear();
+            return null;
+        }).when(transactionManager).commit(any());
+        doAnswer(invocation -> {
+            pending.clear();
+            return null;
+        }).when(transactionManager).rollback(any());
+
+        when(chunkRepository.findByChunkHash(any())).thenAnswer(invocation -> visibleRows().values().stream()
+                .filter(chunk -> chunk.getChunkHash().equals(invocation.getArgument(0)))
+                .findFirst());
+        when(chunkRepository.incrementReference(any()))
+                .thenAnswer(invocation -> visibleRows().containsKey(invocation.getArgument(0)) ? 1 : 0);
+        when(chunkRepository.save(any())).thenAnswer(invocation -> {
+            Chunk chunk = invocation.getArgument(0);
+            chunk.setId(nextId++);
+            pending.put(chunk.getId(), chunk);
+            return chunk;
+        });
+        // Mappings carry a foreign key to the chunks table; a file with a colliding version never commits
+        when(fileMetadataRepository.save(any())).thenAnswer(invocation -> {
+            FileMetadata file = invocation.getArgument(0);
+            if (file.getOriginalFileName().equals("collides.bin")) {
+                throw new DataIntegrityViolationException("duplicate key value violates idx_file_version");
+            }
+            for (FileChunkMapping mapping : file.getChunkMappings()) {
+                if (!visibleRows().containsKey(mapping.getChunk().getId())) {
+                    throw new DataIntegrityViolationException("chunk " + mapping.getChunk().getId() + " not found");
+                }
+            }
+            return file;
+        });
+        Bucket bucket = new Bucket();
+        bucket.setId(BUCKET_ID);
+        when(bucketRepository.getReferenceById(BUCKET_ID)).thenReturn(bucket);
+
+        ChunkStorageService chunkStorageService = new ChunkStorageService(mock(S3Service.class),
+                mock(CompressionService.class), mock(PackWriter.class), null, mock(ChunkBufferPool.class));
+        service = new BulkUploadService(fileMetadataRepository, chunkRepository,
+                mock(InlineFileContentRepository.class), bucketRepository, mock(ChunkingService.class),
+                chunkStorageService, mock(FileStorageService.class), chunkGarbageCollector,
+                mock(PermissionResolver.class), transactionManager, 1);
+    }
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    private Map<Long, Chunk> visibleRows() {
+        Map<Long, Chunk> rows = new HashMap<>(committed);
+        rows.putAll(pending);
+        return rows;
+    }
+
+    // A file of one freshly stored chunk whose object is keyed by the seed
+    private static BulkUploadService.PreparedFile storedFile(String name, int seed) {
+        byte[] digest = new byte[ChunkHash.LENGTH];
+        digest[0] = (byte) seed;
+        ChunkHash hash = ChunkHash.of(HashAlgorithm.SHA256, digest);
+        Chunk chunk = new Chunk();
+        chunk.setChunkHash(hash);
+        chunk.setS3Key(hash.toS3Key());
+        chunk.setChunkSize(100_000L);
+        chunk.setStoredSize(100_000L);
+        chunk.setCodec(CompressionCodec.NONE);
+        BulkUploadService.PreparedChunk prepared = new BulkUploadService.PreparedChunk(0, hash, null,
+                new ChunkStorageService.StoredChunk(chunk, null));
+        return new BulkUploadService.PreparedFile(name, "application/octet-stream", 100_000L, null,
+                List.of(prepared), null);
+    }
+
+    @Test
+    void aFailingFileDoesNotFailItsNeighbours() {
+        List<FileUploadResponse> results = service.commitBatch(List.of(storedFile("a.bin", 1),
+                storedFile("collides.bin", 2), storedFile("c.bin", 3)), BUCKET_ID);
+
+        assertEquals(3, results.size());
+        assertNotNull(results.get(0).getFileId(), results.get(0).getMessage());
+        assertNull(results.get(1).getFileId());
+        assertNotNull(results.get(2).getFileId(), results.get(2).getMessage());
+        // The retries stored their own rows; the ids the rolled back batch assigned are gone
+        assertEquals(2, committed.size());
+        assertEquals(1, results.get(0).getUniqueChunks());
+        assertEquals(1, results.get(2).getUniqueChunks());
+        // Only the failed file's object goes to the collector
+        verify(chunkGarbageCollector).enqueueOrphans(argThat(orphans -> orphans.size() == 1
+                && orphans.get(0).getChunkHash().toBytes()[0] == 2));
+    }
+
+    @Test
+    void aBatchThatCommitsWritesEveryFileOnce() {
+        List<FileUploadResponse> results = service.commitBatch(List.of(storedFile("a.bin", 1),
+                storedFile("b.bin", 1)), BUCKET_ID);
+
+        assertNotNull(results.get(0).getFileId());
+        assertNotNull(results.get(1).getFileId());
+        // The second file finds the row the first one wrote in the same transaction
+        assertEquals(1, committed.size());
+        assertEquals(0, results.get(1).getUniqueChunks());
+        assertTrue(pending.isEmpty());
+    }
+}
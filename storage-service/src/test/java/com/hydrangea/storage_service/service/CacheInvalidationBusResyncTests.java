@@ -0,0 +1,145 @@
+package com.hydrangea.storage_service.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.hydrangea.storage_service.constant.CacheName;
+import com.hydrangea.storage_service.entity.CacheInvalidation;
+import com.hydrangea.storage_service.repository.CacheInvalidationRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// The listener's resync and the polling fallback, without a database; see CacheInvalidationBusTests for H2
+class CacheInvalidationBusResyncTests {
+
+    private final CacheInvalidationRepository repository = mock(CacheInvalidationRepository.class);
+    private final CacheInvalidationBus bus = new CacheInvalidationBus(repository, mock(DataSource.class),
+            mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+
+    private final List<String> userEvictions = new ArrayList<>();
+    private final AtomicInteger userClears = new AtomicInteger();
+    private final AtomicInteger bucketClears = new AtomicInteger();
+
+    CacheInvalidationBusResyncTests() {
+        ReflectionTestUtils.setField(bus, "listeningPollIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(bus, "overlapSeconds", 30L);
+        ReflectionTestUtils.setField(bus, "retentionMinutes", 60L);
+        bus.register(CacheName.USER, userEvictions::add, userClears::incrementAndGet);
+        bus.register(CacheName.BUCKET, key -> {
+        }, bucketClears::incrementAndGet);
+        when(repository.findByCreatedAtAfterAndOriginNotOrderById(any(), anyString())).thenReturn(List.of());
+    }
+
+    private static CacheInvalidation event(long id, CacheName cache, String key) {
+        CacheInvalidation event = new CacheInvalidation();
+        event.setId(id);
+        event.setCacheName(cache);
+        event.setCacheKey(key);
+        event.setOrigin("other-instance");
+        event.setCreatedAt(LocalDateTime.now());
+        return event;
+    }
+
+    private void listening(boolean listening) {
+        ReflectionTestUtils.setField(bus, "listening", listening);
+    }
+
+    // What the listener does right after (re)connecting
+    private void resync() {
+        ReflectionTestUtils.invokeMethod(bus, "poll", true);
+    }
+
+    private void receive(long id, String origin, CacheName cache, String key) {
+        ReflectionTestUtils.invokeMethod(bus, "receive", id + "\t" + origin + "\t" + cache + "\t" + key);
+    }
+
+    @Test
+    void resyncReadsTheTableEvenWhileListening() {
+        listening(true);
+        when(repository.findByCreatedAtAfterAndOriginNotOrderById(any(), anyString()))
+                .thenReturn(List.of(event(1, CacheName.USER, "42")));
+
+        // A scheduled poll is skipped while notifications arrive and the last poll is recent
+        bus.poll();
+        verify(repository, never()).findByCreatedAtAfterAndOriginNotOrderById(any(), anyString());
+        assertThat(userEvictions).isEmpty();
+
+        resync();
+        assertThat(userEvictions).containsExactly("42");
+    }
+
+    @Test
+    void eventHeardByNotifyAndPollIsAppliedOnce() {
+        listening(true);
+        receive(1, "other-instance", CacheName.USER, "42");
+        when(repository.findByCreatedAtAfterAndOriginNotOrderById(any(), anyString()))
+                .thenReturn(List.of(event(1, CacheName.USER, "42"), event(2, CacheName.USER, "43")));
+
+        resync();
+        resync();
+
+        assertThat(userEvictions).containsExactly("42", "43");
+    }
+
+    @Test
+    void ownAndMalformedNotificationsAreIgnored() {
+        String origin = (String) ReflectionTestUtils.getField(bus, "origin");
+        receive(1, origin, CacheName.USER, "42");
+        ReflectionTestUtils.invokeMethod(bus, "receive", "2\tother-instance\tNOT_A_CACHE\t42");
+        ReflectionTestUtils.invokeMethod(bus, "receive", "garbage");
+
+        assertThat(userEvictions).isEmpty();
+    }
+
+    @Test
+    void gapLongerThanRetentionClearsEveryCache() {
+        ReflectionTestUtils.setField(bus, "polledAt", LocalDateTime.now().minusMinutes(90));
+
+        resync();
+
+        // Events from the gap may be pruned already, so the table isn't read at all
+        verify(repository, never()).findByCreatedAtAfterAndOriginNotOrderById(any(), anyString());
+        assertThat(userClears).hasValue(1);
+        assertThat(bucketClears).hasValue(1);
+
+        // Caught up; the next poll reads the table again
+        resync();
+        verify(repository).findByCreatedAtAfterAndOriginNotOrderById(any(), anyString());
+        assertThat(userClears).hasValue(1);
+    }
+
+    @Test
+    void failedPollIsCoveredByTheNextOne() {
+        LocalDateTime polledAt = LocalDateTime.now().minusSeconds(10);
+        ReflectionTestUtils.setField(bus, "polledAt", polledAt);
+        when(repository.findByCreatedAtAfterAndOriginNotOrderById(any(), anyString()))
+                .thenThrow(new RuntimeException("connection refused"))
+                .thenReturn(List.of(event(1, CacheName.USER, "42")));
+
+        bus.poll();
+        bus.poll();
+
+        ArgumentCaptor<LocalDateTime> since = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository, times(2)).findByCreatedAtAfterAndOriginNotOrderById(since.capture(), anyString());
+        assertThat(since.getAllValues()).containsOnly(polledAt.minusSeconds(30));
+        assertThat(userEvictions).containsExactly("42");
+    }
+}
@@ -0,0 +1,74 @@
+package com.hydrangea.storage_service.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.hydrangea.storage_service.StorageServiceApplication;
+import com.hydrangea.storage_service.entity.User;
+import com.hydrangea.storage_service.repository.UserRepository;
+import com.hydrangea.storage_service.security.UserCache;
+
+// Two instances in one JVM sharing a database; H2 has no LISTEN/NOTIFY, so this covers the polling path
+class CacheInvalidationBusTests {
+
+    // As arguments, so they win over application.yaml
+    private static final String[] ARGS = {
+            "--spring.datasource.url=jdbc:h2:mem:cache-bus;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+            "--spring.datasource.username=sa",
+            "--spring.datasource.password=",
+            "--spring.datasource.driver-class-name=org.h2.Driver",
+            "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+            "--server.port=0",
+            "--aws.access-key-id=test",
+            "--aws.secret-access-key=test",
+            "--aws.s3.bucket-name=test",
+            // Far longer than the test waits, so only an invalidation can refresh the entry
+            "--user.cache.ttl-seconds=3600",
+            "--cache.invalidation.poll-interval-ms=100",
+    };
+
+    private ConfigurableApplicationContext first;
+    private ConfigurableApplicationContext second;
+
+    @BeforeEach
+    void startInstances() {
+        first = new SpringApplicationBuilder(StorageServiceApplication.class).run(ARGS);
+        second = new SpringApplicationBuilder(StorageServiceApplication.class).run(ARGS);
+    }
+
+    @AfterEach
+    void stopInstances() {
+        if (second != null) {
+            second.close();
+        }
+        if (first != null) {
+            first.close();
+        }
+    }
+
+    @Test
+    void changeOnOneInstanceEvictsTheOthersCache() {
+        String name = "bus-" + UUID.randomUUID().toString().substring(0, 8);
+        User user = first.getBean(UserRepository.class).save(User.builder()
+                .username(name)
+                .email(name + "@example.com")
+                .passwordHash("unused")
+                .build());
+        UserCache otherInstance = second.getBean(UserCache.class);
+        assertThat(otherInstance.get(user.getId()).role()).isEqualTo("USER");
+
+        first.getBean(UserAdminService.class).setRole(user.getId(), "ADMIN");
+
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertThat(otherInstance.get(user.getId()).role()).isEqualTo("ADMIN"));
+    }
+}
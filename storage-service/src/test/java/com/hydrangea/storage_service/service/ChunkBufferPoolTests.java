@@ -0,0 +1,69 @@
+package com.hydrangea.storage_service.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkBufferPoolTests {
+
+    private final ChunkBufferPool pool = new ChunkBufferPool(1024, 2, true);
+
+    @Test
+    void closedBuffersAreReused() {
+        byte[] first;
+        try (ChunkBufferPool.Lease lease = pool.acquire()) {
+            first = lease.array();
+            assertThat(pool.getOutstanding()).isEqualTo(1);
+        }
+        assertThat(pool.getOutstanding()).isZero();
+
+        try (ChunkBufferPool.Lease lease = pool.acquire()) {
+            assertThat(lease.array()).isSameAs(first);
+        }
+        assertThat(pool.getLeaks()).isZero();
+    }
+
+    @Test
+    void releasingTwiceIsRejected() {
+        ChunkBufferPool.Lease lease = pool.acquire();
+        lease.close();
+
+        assertThatThrownBy(lease::close).isInstanceOf(IllegalStateException.class);
+        assertThat(pool.getOutstanding()).isZero();
+    }
+
+    @Test
+    void exhaustedPoolHandsOutThrowawayBuffers() {
+        try (ChunkBufferPool.Lease a = pool.acquire();
+                ChunkBufferPool.Lease b = pool.acquire();
+                ChunkBufferPool.Lease c = pool.acquire()) {
+            assertThat(c.array()).hasSize(1024).isNotSameAs(a.array()).isNotSameAs(b.array());
+            assertThat(pool.getOutstanding()).isEqualTo(2);
+            assertThat(pool.getMisses()).isEqualTo(1);
+        }
+        assertThat(pool.getOutstanding()).isZero();
+    }
+
+    @Test
+    void unreleasedBufferIsCaught() {
+        ChunkBufferPool.Lease lease = pool.acquire();
+        lease.array()[0] = 1;
+        // What the pool-using tests assert after each run
+        assertThat(pool.getOutstanding()).isEqualTo(1);
+
+        lease = null;
+        await().atMost(Duration.ofSeconds(10)).until(() -> {
+            System.gc();
+            return pool.getLeaks() == 1;
+        });
+        // The leaked array is written off so the pool can create a replacement
+        assertThat(pool.getOutstanding()).isZero();
+        try (ChunkBufferPool.Lease a = pool.acquire(); ChunkBufferPool.Lease b = pool.acquire()) {
+            assertThat(pool.getMisses()).isZero();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.hydrangea.storage_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.hydrangea.storage_service.constant.CompressionCodec;
+import com.hydrangea.storage_service.dto.response.ChunkInfo;
+import com.hydrangea.storage_service.dto.response.ChunkLocation;
+import com.hydrangea.storage_service.entity.Chunk;
+import com.hydrangea.storage_service.entity.FileChunkMapping;
+import com.hydrangea.storage_service.entity.FileMetadata;
+
+/**
+ * An in-memory object store behind mocked ChunkStorageService and
+ * BulkUploadService, for tests of services that build a new file from
+ * existing chunk mappings plus newly stored chunks. Stored chunks are kept
+ * uncompressed by key; the chunks a service stores are collected in
+ * newChunks, and the new file's manifest is reassembled with content().
+ */
+class ChunkStoreFixture {
+
+    final Map<String, byte[]> store = new HashMap<>();
+    final List<BulkUploadService.PreparedChunk> newChunks = new ArrayList<>();
+
+    // New file's chunk keys by order: copied mappings plus newChunks
+    private final TreeMap<Integer, String> manifest = new TreeMap<>();
+
+    ChunkStoreFixture(ChunkStorageService chunkStorageService, BulkUploadService bulkUploadService)
+            throws IOException {
+        when(chunkStorageService.read(any(), any(), anyInt())).thenAnswer(invocation -> {
+            ChunkLocation location = invocation.getArgument(0);
+            byte[] data = store.get(location.getS3Key());
+            System.arraycopy(data, 0, invocation.getArgument(1), invocation.getArgument(2), data.length);
+            return data.length;
+        });
+        when(bulkUploadService.prepareChunk(any(), anyInt())).thenAnswer(invocation -> {
+            ChunkInfo info = invocation.getArgument(0);
+            store.put(info.getHash().toS3Key(), Arrays.copyOf(info.getData(), info.getLength()));
+            return new BulkUploadService.PreparedChunk(invocation.getArgument(1), info.getHash(), null, null);
+        });
+        when(bulkUploadService.mapChunks(any(), any())).thenAnswer(invocation -> {
+            List<BulkUploadService.PreparedChunk> chunks = invocation.getArgument(1);
+            newChunks.addAll(chunks);
+            return chunks.size();
+        });
+    }
+
+    // Chunks the content into the store and returns the file's manifest
+    List<FileChunkMapping> storeFile(ChunkingService chunkingService, FileMetadata file, byte[] content)
+            throws IOException {
+        List<FileChunkMapping> mappings = new ArrayList<>();
+        chunkingService.forEachChunk(new ByteArrayInputStream(content), info -> {
+            String key = info.getHash().toS3Key();
+            store.put(key, Arrays.copyOf(info.getData(), info.getLength()));
+            Chunk chunk = new Chunk();
+            chunk.setS3Key(key);
+            chunk.setChunkSize((long) info.getLength());
+            chunk.setStoredSize((long) info.getLength());
+            chunk.setCodec(CompressionCodec.NONE);
+            mappings.add(FileChunkMapping.builder().file(file).chunk(chunk).chunkOrder(info.getOrder()).build());
+        });
+        return mappings;
+    }
+
+    // Records that the new file maps source chunks with orders in [from, to), shifted by orderShift
+    void copied(List<FileChunkMapping> source, int from, int to, int orderShift) {
+        for (FileChunkMapping mapping : source) {
+            if (mapping.getChunkOrder() >= from && mapping.getChunkOrder() < to) {
+                assertNull(manifest.put(mapping.getChunkOrder() + orderShift, mapping.getChunk().getS3Key()));
+            }
+        }
+    }
+
+    // Content of the new file: the copied mappings plus the new chunks, by order
+    byte[] content() {
+        TreeMap<Integer, String> orders = new TreeMap<>(manifest);
+        for (BulkUploadService.PreparedChunk chunk : newChunks) {
+            assertNull(orders.put(chunk.order(), chunk.hash().toS3Key()));
+        }
+        assertEquals(orders.size() - 1, (int) orders.lastKey(), "chunk orders must be contiguous");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        orders.values().forEach(key -> out.writeBytes(store.get(key)));
+        return out.toByteArray();
+    }
+
+    // Runs transaction templates inline
+    static PlatformTransactionManager transactionManager() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        return transactionManager;
+    }
+
+    static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,199 @@
+package com.hydrangea.storage_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.hydrangea.storage_service.constant.ChunkingStrategy;
+import com.hydrangea.storage_service.constant.HashAlgorithm;
+import com.hydrangea.storage_service.util.ChunkHash;
+
+class ChunkingServiceTests {
+
+    private static final int AVG = 16 * 1024;
+    private static final int MIN = 4 * 1024;
+    private static final int MAX = 32 * 1024;
+
+    private record Chunk(byte[] data, ChunkHash hash, int order) {
+    }
+
+    private final ChunkHasher hasher = new ChunkHasher();
+    private final List<ChunkingService> services = new ArrayList<>();
+    private final List<ChunkBufferPool> pools = new ArrayList<>();
+
+    ChunkingServiceTests() {
+        ReflectionTestUtils.setField(hasher, "algorithm", HashAlgorithm.SHA256);
+    }
+
+    @AfterEach
+    void releasesEveryBuffer() {
+        services.forEach(ChunkingService::shutdown);
+        for (ChunkBufferPool pool : pools) {
+            assertEquals(0, pool.getOutstanding(), "chunk buffers leaked");
+        }
+    }
+
+    private ChunkingService cdc(int hashThreads) {
+        return service(ChunkingStrategy.CDC, hashThreads, AVG, MIN, MAX);
+    }
+
+    private ChunkingService service(ChunkingStrategy strategy, int hashThreads, int size, int minSize, int maxSize) {
+        ChunkBufferPool pool = new ChunkBufferPool(maxSize, 16, true);
+        pools.add(pool);
+        ChunkingService service = new ChunkingService(hasher, pool, hashThreads, strategy, size, minSize);
+        services.add(service);
+        return service;
+    }
+
+    private static List<Chunk> chunk(ChunkingService service, InputStream in) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        int count = service.forEachChunk(in, info -> chunks.add(
+                new Chunk(Arrays.copyOf(info.getData(), info.getLength()), info.getHash(), info.getOrder())));
+        assertEquals(chunks.size(), count);
+        return chunks;
+    }
+
+    private static List<Chunk> chunk(ChunkingService service, byte[] content) throws IOException {
+        return chunk(service, new ByteArrayInputStream(content));
+    }
+
+    private static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] concat(List<Chunk> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chunks.forEach(chunk -> out.writeBytes(chunk.data()));
+        return out.toByteArray();
+    }
+
+    private static Set<ChunkHash> hashes(List<Chunk> chunks) {
+        Set<ChunkHash> hashes = new HashSet<>();
+        chunks.forEach(chunk -> hashes.add(chunk.hash()));
+        return hashes;
+    }
+
+    @Test
+    void fixedCutsEverySizeBytes() throws IOException {
+        ChunkingService service = service(ChunkingStrategy.FIXED, 2, AVG, 0, AVG);
+        byte[] content = random(1, AVG * 3 + 100);
+
+        List<Chunk> chunks = chunk(service, content);
+
+        assertEquals(4, chunks.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AVG, chunks.get(i).data().length);
+        }
+        assertEquals(100, chunks.get(3).data().length);
+        assertArrayEquals(content, concat(chunks));
+    }
+
+    @Test
+    void emptyInputHasNoChunks() throws IOException {
+        assertEquals(0, chunk(cdc(2), new byte[0]).size());
+    }
+
+    @Test
+    void cdcChunksStayWithinMinAndMax() throws IOException {
+        byte[] content = random(2, 2 * 1024 * 1024);
+
+        List<Chunk> chunks = chunk(cdc(4), content);
+
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            int length = chunks.get(i).data().length;
+            assertTrue(length > MIN && length <= MAX, "chunk " + i + " is " + length + " bytes");
+        }
+        // The average lands near the configured size, not at either limit
+        int average = content.length / chunks.size();
+        assertTrue(average > AVG / 2 && average < AVG * 2, "average chunk is " + average + " bytes");
+        assertArrayEquals(content, concat(chunks));
+    }
+
+    @Test
+    void cdcCutsAtMaxWhenContentHasNoBoundary() throws IOException {
+        byte[] content = new byte[MAX * 3 + 10];
+
+        List<Chunk> chunks = chunk(cdc(2), content);
+
+        assertEquals(4, chunks.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(MAX, chunks.get(i).data().length);
+        }
+        assertEquals(10, chunks.get(3).data().length);
+    }
+
+    @Test
+    void cdcBoundariesResyncAfterAnInsertion() throws IOException {
+        ChunkingService service = cdc(4);
+        byte[] original = random(3, 1024 * 1024);
+        byte[] edited = new byte[original.length + 7];
+        int at = 100_000;
+        System.arraycopy(original, 0, edited, 0, at);
+        System.arraycopy(random(4, 7), 0, edited, at, 7);
+        System.arraycopy(original, at, edited, at + 7, original.length - at);
+
+        List<Chunk> before = chunk(service, original);
+        List<Chunk> after = chunk(service, edited);
+
+        // Only the chunks around the edit change; with fixed-size chunks every later chunk would
+        Set<ChunkHash> changed = hashes(after);
+        changed.removeAll(hashes(before));
+        assertTrue(changed.size() <= 2, changed.size() + " chunks changed");
+        assertArrayEquals(edited, concat(after));
+    }
+
+    @Test
+    void cdcBoundariesDontDependOnReadsOrHashThreads() throws IOException {
+        byte[] content = random(5, 1024 * 1024 + 123);
+
+        List<Chunk> expected = chunk(cdc(1), content);
+        // A stream that returns a few bytes per read, so buffers fill across many reads
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        List<Chunk> actual = chunk(cdc(8), trickle);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i).data(), actual.get(i).data());
+            assertEquals(expected.get(i).hash(), actual.get(i).hash());
+            assertEquals(i, actual.get(i).order());
+        }
+    }
+
+    @Test
+    void cdcHashesEachChunkOnItsOwnBytes() throws IOException {
+        // The tail of each read-ahead buffer is carried into the next one; its hash must not see the rest
+        for (Chunk chunk : chunk(cdc(4), random(6, 512 * 1024))) {
+            assertEquals(hasher.hash(chunk.data(), 0, chunk.data().length), chunk.hash());
+        }
+    }
+
+    @Test
+    void cdcRejectsSizesOutOfOrder() {
+        assertThrows(IllegalStateException.class, () -> service(ChunkingStrategy.CDC, 1, AVG, 0, AVG));
+        assertThrows(IllegalStateException.class, () -> service(ChunkingStrategy.CDC, 1, AVG, AVG, MAX));
+    }
+}
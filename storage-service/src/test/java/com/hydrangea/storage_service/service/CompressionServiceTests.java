@@ -0,0 +1,87 @@
+package com.hydrangea.storage_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.hydrangea.storage_service.constant.CompressionCodec;
+
+class CompressionServiceTests {
+
+    private static final int SIZE = 64 * 1024;
+
+    private CompressionService service(CompressionCodec codec) {
+        CompressionService service = new CompressionService();
+        ReflectionTestUtils.setField(service, "codec", codec);
+        ReflectionTestUtils.setField(service, "zstdLevel", 3);
+        ReflectionTestUtils.setField(service, "maxEntropy", 7.5);
+        ReflectionTestUtils.setField(service, "minSavings", 0.1);
+        return service;
+    }
+
+    private static byte[] text() {
+        byte[] line = "the quick brown fox jumps over the lazy dog\n".getBytes();
+        byte[] data = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            data[i] = line[i % line.length];
+        }
+        return data;
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionCodec.class, names = { "ZSTD", "LZ4" })
+    void compressibleChunkRoundTrips(CompressionCodec codec) {
+        CompressionService service = service(codec);
+        byte[] data = text();
+        byte[] target = new byte[SIZE];
+
+        CompressionService.CompressedChunk chunk = service.compress(data, SIZE, target);
+        assertEquals(codec, chunk.codec());
+        assertSame(target, chunk.data());
+        assertTrue(chunk.length() < SIZE * 0.9);
+
+        byte[] restored = new byte[SIZE];
+        assertEquals(SIZE, service.decompress(chunk.data(), chunk.length(), chunk.codec(), restored, 0));
+        assertArrayEquals(data, restored);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionCodec.class, names = { "ZSTD", "LZ4" })
+    void highEntropyChunkIsStoredRaw(CompressionCodec codec) {
+        byte[] data = new byte[SIZE];
+        new Random(1).nextBytes(data);
+        byte[] target = new byte[SIZE];
+
+        CompressionService.CompressedChunk chunk = service(codec).compress(data, SIZE, target);
+        assertEquals(CompressionCodec.NONE, chunk.codec());
+        assertSame(data, chunk.data());
+        assertEquals(SIZE, chunk.length());
+        // Skipped by the entropy check, so the codec never wrote to the target
+        assertTrue(Arrays.equals(new byte[SIZE], target));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionCodec.class, names = { "ZSTD", "LZ4" })
+    void chunkThatWouldNotSaveEnoughIsStoredRaw(CompressionCodec codec) {
+        // Uniform over 160 byte values: about 7.3 bits per byte, under the entropy cut-off, but
+        // no codec can save the required 10% on it
+        byte[] data = new byte[SIZE];
+        Random random = new Random(2);
+        for (int i = 0; i < SIZE; i++) {
+            data[i] = (byte) random.nextInt(160);
+        }
+        byte[] target = new byte[SIZE];
+
+        CompressionService.CompressedChunk chunk = service(codec).compress(data, SIZE, target);
+        assertEquals(CompressionCodec.NONE, chunk.codec());
+        assertSame(data, chunk.data());
+    }
+}
@@ -0,0 +1,239 @@
+package com.hydrangea.storage_service.service;
+
+import static com.hydrangea.storage_service.service.ChunkStoreFixture.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.hydrangea.storage_service.constant.ChunkingStrategy;
+import com.hydrangea.storage_service.constant.HashAlgorithm;
+import com.hydrangea.storage_service.dto.request.FileComposeRequest;
+import com.hydrangea.storage_service.dto.response.FileUploadResponse;
+import com.hydrangea.storage_service.entity.Bucket;
+import com.hydrangea.storage_service.entity.FileChunkMapping;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.entity.InlineFileContent;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.FileChunkMappingRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.InlineFileContentRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+
+// Repositories and the object store are in-memory stand-ins; range planning and chunking are the real thing
+class FileComposeServiceTests {
+
+    private static final int SIZE = 16 * 1024;
+    private static final long COMPOSED_ID = 100L;
+
+    private final FileMetadataRepository fileMetadataRepository = mock(FileMetadataRepository.class);
+    private final FileChunkMappingRepository fileChunkMappingRepository = mock(FileChunkMappingRepository.class);
+    private final InlineFileContentRepository inlineFileContentRepository = mock(InlineFileContentRepository.class);
+    private final BulkUploadService bulkUploadService = mock(BulkUploadService.class);
+    private final ChunkStorageService chunkStorageService = mock(ChunkStorageService.class);
+    private final PermissionResolver permissionResolver = mock(PermissionResolver.class);
+
+    private final ChunkHasher hasher = new ChunkHasher();
+    private final ChunkBufferPool pool = new ChunkBufferPool(SIZE, 16, true);
+    private final ChunkingService chunkingService;
+    private final FileComposeService service;
+
+    private final ChunkStoreFixture chunks;
+    // Each source's manifest
+    private final Map<Long, List<FileChunkMapping>> manifests = new HashMap<>();
+    private final Map<String, FileMetadata> files = new HashMap<>();
+    private final List<BulkUploadService.PreparedChunk> newChunks;
+    private final List<Object[]> copiedRanges = new ArrayList<>();
+
+    FileComposeServiceTests() throws IOException {
+        ReflectionTestUtils.setField(hasher, "algorithm", HashAlgorithm.SHA256);
+        chunkingService = new ChunkingService(hasher, pool, 0, ChunkingStrategy.FIXED, SIZE, 0);
+        chunks = new ChunkStoreFixture(chunkStorageService, bulkUploadService);
+        newChunks = chunks.newChunks;
+
+        Bucket bucket = new Bucket();
+        bucket.setId(10L);
+        when(bulkUploadService.resolveBucket(eq("bucket"), anyLong())).thenReturn(bucket);
+        when(permissionResolver.filterFiles(any(), anyLong(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(fileMetadataRepository.findByFileIds(any())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            return ids.stream().map(files::get).toList();
+        });
+        when(fileChunkMappingRepository.findManifests(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().sorted().flatMap(id -> manifests.get(id).stream()).toList();
+        });
+        when(fileMetadataRepository.lockForShare(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> new FileMetadata()).toList();
+        });
+        when(fileMetadataRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            FileMetadata file = invocation.getArgument(0);
+            file.setId(COMPOSED_ID);
+            return file;
+        });
+        when(fileChunkMappingRepository.copyRanges(eq(COMPOSED_ID), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    Long[] sourceIds = invocation.getArgument(1);
+                    Integer[] fromOrders = invocation.getArgument(2);
+                    Integer[] toOrders = invocation.getArgument(3);
+                    Integer[] orderShifts = invocation.getArgument(4);
+                    for (int i = 0; i < sourceIds.length; i++) {
+                        chunks.copied(manifests.get(sourceIds[i]), fromOrders[i], toOrders[i], orderShifts[i]);
+                    }
+                    copiedRanges.add(Arrays.copyOfRange(invocation.getArguments(), 1, 5));
+                    return 0;
+                });
+
+        service = new FileComposeService(fileMetadataRepository, fileChunkMappingRepository,
+                inlineFileContentRepository, mock(BucketRepository.class), chunkingService, chunkStorageService,
+                pool, bulkUploadService, mock(FileStorageService.class), permissionResolver,
+                ChunkStoreFixture.transactionManager());
+        ReflectionTestUtils.setField(service, "maxParts", 100);
+        ReflectionTestUtils.setField(service, "inlineMaxSize", 1024);
+    }
+
+    @AfterEach
+    void releasesEveryBuffer() {
+        chunkingService.shutdown();
+        assertEquals(0, pool.getOutstanding(), "chunk buffers leaked");
+    }
+
+    private byte[] chunkedFile(String fileId, long id, byte[] content) throws IOException {
+        manifests.put(id, chunks.storeFile(chunkingService, file(fileId, id, content.length), content));
+        return content;
+    }
+
+    // Stores the file with chunks of the given size, e.g. one written under an older, larger chunk size
+    private byte[] chunkedFile(String fileId, long id, byte[] content, int chunkSize) throws IOException {
+        ChunkingService chunker = new ChunkingService(hasher, new ChunkBufferPool(chunkSize, 4, false), 0,
+                ChunkingStrategy.FIXED, chunkSize, 0);
+        try {
+            manifests.put(id, chunks.storeFile(chunker, file(fileId, id, content.length), content));
+        } finally {
+            chunker.shutdown();
+        }
+        return content;
+    }
+
+    private byte[] inlineFile(String fileId, long id, byte[] content) {
+        FileMetadata file = file(fileId, id, content.length);
+        file.setStoredInline(true);
+        InlineFileContent inline = new InlineFileContent();
+        inline.setData(content);
+        when(inlineFileContentRepository.findById(id)).thenReturn(Optional.of(inline));
+        return content;
+    }
+
+    private FileMetadata file(String fileId, long id, int size) {
+        FileMetadata file = new FileMetadata();
+        file.setId(id);
+        file.setFileId(fileId);
+        file.setFileSize((long) size);
+        files.put(fileId, file);
+        return file;
+    }
+
+    private FileUploadResponse compose(FileComposeRequest.Part... parts) throws IOException {
+        return service.compose(new FileComposeRequest("bucket", "composed.bin", null, List.of(parts)), 7L);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void wholeFilesAreMappedWithoutReadingContent() throws IOException {
+        byte[] a = chunkedFile("a", 1, random(1, 3 * SIZE));
+        byte[] b = chunkedFile("b", 2, random(2, SIZE + 500));
+
+        FileUploadResponse response = compose(new FileComposeRequest.Part("a", null, null),
+                new FileComposeRequest.Part("b", null, null));
+
+        assertArrayEquals(concat(a, b), chunks.content());
+        assertTrue(newChunks.isEmpty());
+        // One statement for all ranges
+        assertEquals(1, copiedRanges.size());
+        assertArrayEquals(new Integer[] { 0, 3 }, (Integer[]) copiedRanges.get(0)[3]);
+        verify(chunkStorageService, never()).read(any(), any(), anyInt());
+        assertEquals(5, response.getTotalChunks());
+    }
+
+    @Test
+    void rangesCuttingChunksRewriteOnlyTheCutChunks() throws IOException {
+        byte[] a = chunkedFile("a", 1, random(3, 4 * SIZE));
+        byte[] b = chunkedFile("b", 2, random(4, 2 * SIZE));
+
+        compose(new FileComposeRequest.Part("a", (long) SIZE / 2, 2L * SIZE),
+                new FileComposeRequest.Part("b", null, null));
+
+        assertArrayEquals(concat(Arrays.copyOfRange(a, SIZE / 2, SIZE / 2 + 2 * SIZE), b), chunks.content());
+        // The half chunks at either end of the range; the chunk between them and all of b are mapped
+        assertEquals(2, newChunks.size());
+        String mapped = manifests.get(1L).get(1).getChunk().getS3Key();
+        verify(chunkStorageService, never()).read(argThat(location -> location.getS3Key().equals(mapped)), any(),
+                anyInt());
+    }
+
+    @Test
+    void inlineSourceIsStoredAsNewChunksBetweenMappedRanges() throws IOException {
+        byte[] a = chunkedFile("a", 1, random(5, 2 * SIZE));
+        byte[] small = inlineFile("small", 3, random(6, 300));
+        byte[] b = chunkedFile("b", 2, random(7, SIZE));
+
+        compose(new FileComposeRequest.Part("a", null, null), new FileComposeRequest.Part("small", null, null),
+                new FileComposeRequest.Part("b", null, null));
+
+        assertArrayEquals(concat(a, small, b), chunks.content());
+        assertEquals(1, newChunks.size());
+        assertEquals(2, newChunks.get(0).order());
+    }
+
+    @Test
+    void chunksLargerThanTheBuffersAreSlicedFromTheirOwnArray() throws IOException {
+        byte[] a = chunkedFile("a", 1, random(9, 12 * SIZE), 4 * SIZE);
+
+        compose(new FileComposeRequest.Part("a", (long) SIZE, 8L * SIZE));
+
+        assertArrayEquals(Arrays.copyOfRange(a, SIZE, 9 * SIZE), chunks.content());
+        // The partly used chunks at either end of the range; the chunk between them is mapped
+        assertEquals(1, copiedRanges.size());
+    }
+
+    @Test
+    void rangeOutsideTheSourceIsRejected() throws IOException {
+        chunkedFile("a", 1, random(8, 2 * SIZE));
+
+        assertThrows(RuntimeException.class,
+                () -> compose(new FileComposeRequest.Part("a", (long) SIZE, 2L * SIZE)));
+        assertTrue(copiedRanges.isEmpty());
+    }
+}
@@ -0,0 +1,200 @@
+package com.hydrangea.storage_service.service;
+
+import static com.hydrangea.storage_service.service.ChunkStoreFixture.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.hydrangea.storage_service.constant.ChunkingStrategy;
+import com.hydrangea.storage_service.constant.HashAlgorithm;
+import com.hydrangea.storage_service.dto.response.FileUploadResponse;
+import com.hydrangea.storage_service.entity.Bucket;
+import com.hydrangea.storage_service.entity.FileChunkMapping;
+import com.hydrangea.storage_service.entity.FileMetadata;
+import com.hydrangea.storage_service.repository.BucketRepository;
+import com.hydrangea.storage_service.repository.FileChunkMappingRepository;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.InlineFileContentRepository;
+import com.hydrangea.storage_service.security.PermissionResolver;
+
+// Repositories and the object store are in-memory stand-ins; chunking and resynchronisation are the real thing
+class FilePatchServiceTests {
+
+    private static final int AVG = 16 * 1024;
+    private static final long BASE_ID = 1L;
+    private static final long PATCHED_ID = 2L;
+
+    private final FileMetadataRepository fileMetadataRepository = mock(FileMetadataRepository.class);
+    private final FileChunkMappingRepository fileChunkMappingRepository = mock(FileChunkMappingRepository.class);
+    private final BulkUploadService bulkUploadService = mock(BulkUploadService.class);
+    private final ChunkStorageService chunkStorageService = mock(ChunkStorageService.class);
+    private final PermissionResolver permissionResolver = mock(PermissionResolver.class);
+    private final BucketRepository bucketRepository = mock(BucketRepository.class);
+
+    private final ChunkHasher hasher = new ChunkHasher();
+    private final ChunkBufferPool pool = new ChunkBufferPool(2 * AVG, 16, true);
+    private ChunkingService chunkingService;
+
+    private final ChunkStoreFixture chunks;
+    private final List<BulkUploadService.PreparedChunk> rewritten;
+    private final List<int[]> copiedRanges = new ArrayList<>();
+    private List<FileChunkMapping> baseManifest;
+
+    FilePatchServiceTests() throws IOException {
+        ReflectionTestUtils.setField(hasher, "algorithm", HashAlgorithm.SHA256);
+        chunks = new ChunkStoreFixture(chunkStorageService, bulkUploadService);
+        rewritten = chunks.newChunks;
+    }
+
+    @AfterEach
+    void releasesEveryBuffer() {
+        if (chunkingService != null) {
+            chunkingService.shutdown();
+        }
+        assertEquals(0, pool.getOutstanding(), "chunk buffers leaked");
+    }
+
+    private FilePatchService service(ChunkingStrategy strategy, byte[] content) throws IOException {
+        chunkingService = new ChunkingService(hasher, pool, 0, strategy, AVG, 0);
+        return service(chunkingService, content);
+    }
+
+    // The base file is chunked by baseChunker, e.g. under an older chunk size; patches use the FIXED chunker
+    private FilePatchService service(ChunkingService baseChunker, byte[] content) throws IOException {
+        if (chunkingService == null) {
+            chunkingService = new ChunkingService(hasher, pool, 0, ChunkingStrategy.FIXED, AVG, 0);
+        }
+
+        Bucket bucket = new Bucket();
+        bucket.setId(10L);
+        FileMetadata base = new FileMetadata();
+        base.setId(BASE_ID);
+        base.setFileId("base");
+        base.setOriginalFileName("data.bin");
+        base.setContentType("application/octet-stream");
+        base.setFileSize((long) content.length);
+        base.setBucket(bucket);
+
+        baseManifest = chunks.storeFile(baseChunker, base, content);
+
+        when(permissionResolver.requireFile(eq("base"), anyLong(), any())).thenReturn(base);
+        when(fileChunkMappingRepository.findManifest(BASE_ID)).thenReturn(baseManifest);
+        when(fileMetadataRepository.findLatestForUpdate(eq(10L), eq("data.bin"), any())).thenReturn(List.of(base));
+        when(fileMetadataRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            FileMetadata file = invocation.getArgument(0);
+            file.setId(PATCHED_ID);
+            return file;
+        });
+        when(bucketRepository.getReferenceById(10L)).thenReturn(bucket);
+        when(fileChunkMappingRepository.copyRange(eq(BASE_ID), eq(PATCHED_ID), anyInt(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> {
+                    int[] range = { invocation.getArgument(2), invocation.getArgument(3), invocation.getArgument(4) };
+                    copiedRanges.add(range);
+                    chunks.copied(baseManifest, range[0], range[1], range[2]);
+                    return 0;
+                });
+
+        return new FilePatchService(fileMetadataRepository, fileChunkMappingRepository,
+                mock(InlineFileContentRepository.class), bucketRepository, chunkingService, chunkStorageService,
+                pool, bulkUploadService, mock(FileStorageService.class), permissionResolver,
+                ChunkStoreFixture.transactionManager());
+    }
+
+    @Test
+    void overwriteResynchronizesShortlyAfterTheWrite() throws IOException {
+        byte[] content = random(1, 1024 * 1024);
+        FilePatchService service = service(ChunkingStrategy.CDC, content);
+        byte[] patch = random(2, 100);
+
+        FileUploadResponse response = service.write("base", 7L, 500_000, new ByteArrayInputStream(patch));
+
+        byte[] expected = content.clone();
+        System.arraycopy(patch, 0, expected, 500_000, patch.length);
+        assertArrayEquals(expected, chunks.content());
+        assertNotEquals("base", response.getFileId());
+        // Chunks before and after the write are mapped again, not re-read
+        assertEquals(2, copiedRanges.size());
+        assertTrue(rewritten.size() <= 3, "rewrote " + rewritten.size() + " chunks");
+        assertEquals(baseManifest.size(), response.getTotalChunks());
+    }
+
+    @Test
+    void appendRewritesOnlyTheTailChunk() throws IOException {
+        byte[] content = random(3, 6 * AVG + 1000);
+        FilePatchService service = service(ChunkingStrategy.FIXED, content);
+        byte[] tail = random(4, 20_000);
+
+        FileUploadResponse response = service.append("base", 7L, new ByteArrayInputStream(tail));
+
+        byte[] expected = Arrays.copyOf(content, content.length + tail.length);
+        System.arraycopy(tail, 0, expected, content.length, tail.length);
+        assertArrayEquals(expected, chunks.content());
+        assertEquals(1, copiedRanges.size());
+        assertArrayEquals(new int[] { Integer.MIN_VALUE, 6, 0 }, copiedRanges.get(0));
+        assertEquals(2, rewritten.size());
+        assertEquals((long) expected.length, response.getFileSize());
+    }
+
+    @Test
+    void writePastTheEndExtendsTheFile() throws IOException {
+        byte[] content = random(5, 3 * AVG);
+        FilePatchService service = service(ChunkingStrategy.FIXED, content);
+        byte[] patch = random(6, 50);
+
+        service.write("base", 7L, content.length - 10, new ByteArrayInputStream(patch));
+
+        byte[] expected = Arrays.copyOf(content, content.length + 40);
+        System.arraycopy(patch, 0, expected, content.length - 10, patch.length);
+        assertArrayEquals(expected, chunks.content());
+    }
+
+    @Test
+    void chunksLargerThanTheBuffersAreReadIntoTheirOwnArray() throws IOException {
+        // Written while CDC ran with a larger max-size, before switching back to FIXED
+        ChunkBufferPool largePool = new ChunkBufferPool(8 * AVG, 4, true);
+        ChunkingService largeChunker = new ChunkingService(hasher, largePool, 0, ChunkingStrategy.FIXED, 8 * AVG, 0);
+        byte[] content = random(8, 20 * AVG);
+        FilePatchService service;
+        try {
+            service = service(largeChunker, content);
+        } finally {
+            largeChunker.shutdown();
+        }
+        byte[] patch = random(9, 100);
+
+        service.write("base", 7L, 10 * AVG, new ByteArrayInputStream(patch));
+
+        byte[] expected = content.clone();
+        System.arraycopy(patch, 0, expected, 10 * AVG, patch.length);
+        assertArrayEquals(expected, chunks.content());
+        assertEquals(0, largePool.getOutstanding());
+    }
+
+    @Test
+    void offsetBeyondTheEndIsRejected() throws IOException {
+        byte[] content = random(7, AVG);
+        FilePatchService service = service(ChunkingStrategy.FIXED, content);
+
+        assertThrows(RuntimeException.class,
+                () -> service.write("base", 7L, content.length + 1, new ByteArrayInputStream(new byte[1])));
+        assertTrue(rewritten.isEmpty());
+    }
+}
@@ -0,0 +1,184 @@
+package com.hydrangea.storage_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.hydrangea.storage_service.entity.Chunk;
+import com.hydrangea.storage_service.entity.Pack;
+import com.hydrangea.storage_service.repository.ChunkRepository;
+import com.hydrangea.storage_service.repository.PackRepository;
+
+class PackCompactorTests {
+
+    private static final int SIZE = 100;
+
+    private final PackRepository packRepository = mock(PackRepository.class);
+    private final ChunkRepository chunkRepository = mock(ChunkRepository.class);
+    private final S3Service s3Service = mock(S3Service.class);
+
+    // Pack objects by key and pack rows by id
+    private final Map<String, byte[]> objects = new HashMap<>();
+    private final Map<Long, Pack> packs = new HashMap<>();
+    private long nextPackId = 1;
+
+    private final PackCompactor compactor = new PackCompactor(packRepository, chunkRepository, s3Service,
+            ChunkStoreFixture.transactionManager());
+
+    PackCompactorTests() {
+        ReflectionTestUtils.setField(compactor, "retiredGraceMinutes", 60L);
+        when(packRepository.findById(any())).thenAnswer(invocation ->
+                Optional.ofNullable(packs.get((Long) invocation.getArgument(0))));
+        when(packRepository.save(any())).thenAnswer(invocation -> {
+            Pack pack = invocation.getArgument(0);
+            if (pack.getId() == null) {
+                pack.setId(nextPackId++);
+            }
+            packs.put(pack.getId(), pack);
+            return pack;
+        });
+        when(s3Service.downloadChunk(anyString())).thenAnswer(invocation -> objects.get(invocation.getArgument(0)));
+        doAnswer(invocation -> {
+            objects.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(s3Service).uploadChunk(anyString(), any(byte[].class));
+        when(packRepository.findCompactionCandidates(any(), anyDouble())).thenReturn(List.of());
+        when(packRepository.findRetiredWithLiveChunks()).thenReturn(List.of());
+        when(packRepository.findPurgeable(any())).thenReturn(List.of());
+    }
+
+    // A pack holding the given chunks back to back, each SIZE bytes
+    private Pack pack(String s3Key, List<Chunk> chunks) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Pack pack = new Pack();
+        pack.setS3Key(s3Key);
+        pack.setTotalSize((long) chunks.size() * SIZE);
+        pack.setChunkCount(chunks.size());
+        packRepository.save(pack);
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            chunk.setPack(pack);
+            chunk.setPackOffset((long) i * SIZE);
+            chunk.setStoredSize((long) SIZE);
+            data.writeBytes(ChunkStoreFixture.random(i, SIZE));
+        }
+        objects.put(s3Key, data.toByteArray());
+        return pack;
+    }
+
+    private static Chunk chunk(long id, int referenceCount) {
+        Chunk chunk = new Chunk();
+        chunk.setId(id);
+        chunk.setReferenceCount(referenceCount);
+        return chunk;
+    }
+
+    // The bytes a chunk points at, read the way ChunkStorageService does
+    private byte[] slice(Chunk chunk) {
+        int offset = chunk.getPackOffset().intValue();
+        return Arrays.copyOfRange(objects.get(chunk.getPack().getS3Key()), offset, offset + SIZE);
+    }
+
+    @Test
+    void liveChunksMoveToANewPackAndTheOldOneIsRetired() {
+        Chunk first = chunk(1, 1);
+        Chunk dead = chunk(2, 0);
+        Chunk third = chunk(3, 2);
+        Pack old = pack("packs/old", List.of(first, dead, third));
+        byte[] firstBytes = slice(first);
+        byte[] thirdBytes = slice(third);
+        when(packRepository.findCompactionCandidates(any(), anyDouble())).thenReturn(List.of(old.getId()));
+        when(chunkRepository.findLiveInPackForUpdate(old.getId())).thenReturn(List.of(first, third));
+
+        compactor.compact();
+
+        Pack replacement = first.getPack();
+        assertSame(replacement, third.getPack());
+        assertFalse(old.getId().equals(replacement.getId()));
+        assertEquals(2L * SIZE, replacement.getTotalSize());
+        assertEquals(2, replacement.getChunkCount());
+        assertArrayEquals(firstBytes, slice(first));
+        assertArrayEquals(thirdBytes, slice(third));
+        verify(chunkRepository).saveAll(List.of(first, third));
+
+        assertNotNull(old.getRetiredAt());
+        // Reads that resolved the old location may still be running
+        verify(s3Service, never()).deleteChunk(anyString());
+    }
+
+    @Test
+    void retiredPackWithARevivedChunkIsCompactedAgainAndItsGraceRestarts() {
+        Chunk revived = chunk(1, 1);
+        Pack old = pack("packs/old", List.of(chunk(2, 0), revived));
+        LocalDateTime retiredAt = LocalDateTime.now().minusHours(2);
+        old.setRetiredAt(retiredAt);
+        byte[] revivedBytes = slice(revived);
+        when(packRepository.findRetiredWithLiveChunks()).thenReturn(List.of(old.getId()));
+        when(chunkRepository.findLiveInPackForUpdate(old.getId())).thenReturn(List.of(revived));
+
+        compactor.compact();
+
+        assertFalse(old.getId().equals(revived.getPack().getId()));
+        assertEquals(0L, revived.getPackOffset());
+        assertArrayEquals(revivedBytes, slice(revived));
+        assertTrue(old.getRetiredAt().isAfter(retiredAt));
+        verify(s3Service, never()).deleteChunk(anyString());
+    }
+
+    @Test
+    void retiredPackWithNothingLeftKeepsItsRetirementTime() {
+        Pack old = pack("packs/old", List.of(chunk(1, 0)));
+        LocalDateTime retiredAt = LocalDateTime.now().minusMinutes(5);
+        old.setRetiredAt(retiredAt);
+        // The revived chunk was released again before this run locked the pack
+        when(packRepository.findRetiredWithLiveChunks()).thenReturn(List.of(old.getId()));
+        when(chunkRepository.findLiveInPackForUpdate(old.getId())).thenReturn(List.of());
+
+        compactor.compact();
+
+        assertEquals(retiredAt, old.getRetiredAt());
+        verify(s3Service, never()).uploadChunk(anyString(), any(byte[].class));
+    }
+
+    @Test
+    void onlyPacksPastTheGracePeriodAreDeleted() {
+        Pack purgeable = pack("packs/purgeable", List.of());
+        purgeable.setRetiredAt(LocalDateTime.now().minusHours(2));
+        when(packRepository.findPurgeable(any())).thenReturn(new ArrayList<>(List.of(purgeable)));
+
+        LocalDateTime before = LocalDateTime.now();
+        compactor.compact();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(packRepository).findPurgeable(cutoff.capture());
+        assertFalse(cutoff.getValue().isAfter(before.minusMinutes(60).plusSeconds(5)));
+        assertTrue(cutoff.getValue().isAfter(before.minusMinutes(61)));
+        verify(s3Service).deleteChunk(eq("packs/purgeable"));
+        verify(packRepository).delete(purgeable);
+    }
+}
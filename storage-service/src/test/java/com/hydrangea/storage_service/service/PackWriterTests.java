@@ -0,0 +1,182 @@
+package com.hydrangea.storage_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.hydrangea.storage_service.entity.Pack;
+import com.hydrangea.storage_service.repository.PackRepository;
+
+class PackWriterTests {
+
+    private static final int SIZE = 100;
+
+    private final S3Service s3Service = mock(S3Service.class);
+    private final PackRepository packRepository = mock(PackRepository.class);
+
+    // Pack objects and rows as written, in order
+    private final List<byte[]> uploads = new ArrayList<>();
+    private final List<Pack> saved = new ArrayList<>();
+
+    private final PackWriter writer = new PackWriter(s3Service, packRepository,
+            ChunkStoreFixture.transactionManager());
+
+    PackWriterTests() {
+        doAnswer(invocation -> {
+            byte[] data = invocation.getArgument(1);
+            int offset = invocation.getArgument(2);
+            uploads.add(Arrays.copyOfRange(data, offset, offset + (int) invocation.getArgument(3)));
+            return null;
+        }).when(s3Service).uploadChunk(anyString(), any(byte[].class), anyInt(), anyInt());
+        when(packRepository.save(any())).thenAnswer(invocation -> {
+            Pack pack = invocation.getArgument(0);
+            pack.setId((long) saved.size() + 1);
+            saved.add(pack);
+            return pack;
+        });
+    }
+
+    @AfterEach
+    void shutdown() {
+        writer.shutdown();
+    }
+
+    private void configure(int targetSize, long maxDelayMs) {
+        ReflectionTestUtils.setField(writer, "targetSize", targetSize);
+        ReflectionTestUtils.setField(writer, "maxDelayMs", maxDelayMs);
+    }
+
+    private static PackWriter.PackSlot await(CompletableFuture<PackWriter.PackSlot> slot) throws Exception {
+        return slot.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void chunksAppendedTogetherShareOnePack() throws Exception {
+        configure(3 * SIZE, 60_000);
+        byte[] a = ChunkStoreFixture.random(1, SIZE);
+        byte[] b = ChunkStoreFixture.random(2, SIZE);
+        byte[] c = ChunkStoreFixture.random(3, SIZE);
+
+        CompletableFuture<PackWriter.PackSlot> first = writer.appendAsync(a, SIZE);
+        CompletableFuture<PackWriter.PackSlot> second = writer.appendAsync(b, SIZE);
+        assertFalse(first.isDone(), "a pack below the target size waits for more chunks");
+        CompletableFuture<PackWriter.PackSlot> third = writer.appendAsync(c, SIZE);
+
+        assertEquals(new PackWriter.PackSlot(1L, 0), await(first));
+        assertEquals(new PackWriter.PackSlot(1L, SIZE), await(second));
+        assertEquals(new PackWriter.PackSlot(1L, 2 * SIZE), await(third));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.writeBytes(a);
+        expected.writeBytes(b);
+        expected.writeBytes(c);
+        assertEquals(1, uploads.size());
+        assertArrayEquals(expected.toByteArray(), uploads.get(0));
+        assertEquals(3, saved.get(0).getChunkCount());
+        assertEquals(3L * SIZE, saved.get(0).getTotalSize());
+    }
+
+    @Test
+    void packIsWrittenOnceItReachesTheTargetSize() throws Exception {
+        configure(2 * SIZE, 60_000);
+
+        List<CompletableFuture<PackWriter.PackSlot>> slots = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            slots.add(writer.appendAsync(ChunkStoreFixture.random(i, SIZE), SIZE));
+        }
+
+        // Two full packs are written at once; the fifth chunk waits in a new one
+        assertEquals(new PackWriter.PackSlot(1L, 0), await(slots.get(0)));
+        assertEquals(new PackWriter.PackSlot(1L, SIZE), await(slots.get(1)));
+        assertEquals(new PackWriter.PackSlot(2L, 0), await(slots.get(2)));
+        assertEquals(new PackWriter.PackSlot(2L, SIZE), await(slots.get(3)));
+        assertFalse(slots.get(4).isDone());
+        assertEquals(2, uploads.size());
+    }
+
+    @Test
+    void packBelowTheTargetSizeIsWrittenAfterTheMaxDelay() throws Exception {
+        configure(1 << 20, 20);
+        byte[] data = ChunkStoreFixture.random(1, SIZE);
+
+        CompletableFuture<PackWriter.PackSlot> slot = writer.appendAsync(data, SIZE);
+
+        assertEquals(new PackWriter.PackSlot(1L, 0), await(slot));
+        assertEquals(1, uploads.size());
+        assertArrayEquals(data, uploads.get(0));
+        assertEquals(1, saved.get(0).getChunkCount());
+    }
+
+    @Test
+    void appendedBytesAreCopiedSoTheCallerCanReuseItsBuffer() throws Exception {
+        configure(2 * SIZE, 60_000);
+        byte[] buffer = ChunkStoreFixture.random(1, SIZE);
+        byte[] first = buffer.clone();
+
+        CompletableFuture<PackWriter.PackSlot> slot = writer.appendAsync(buffer, SIZE);
+        Arrays.fill(buffer, (byte) 7);
+        writer.appendAsync(buffer, SIZE);
+
+        await(slot);
+        assertArrayEquals(first, Arrays.copyOfRange(uploads.get(0), 0, SIZE));
+    }
+
+    @Test
+    void failedUploadFailsEveryChunkInThePack() {
+        configure(2 * SIZE, 60_000);
+        doThrow(new RuntimeException("S3 unavailable"))
+                .when(s3Service).uploadChunk(anyString(), any(byte[].class), anyInt(), anyInt());
+
+        CompletableFuture<PackWriter.PackSlot> first = writer.appendAsync(ChunkStoreFixture.random(1, SIZE), SIZE);
+        CompletableFuture<PackWriter.PackSlot> second = writer.appendAsync(ChunkStoreFixture.random(2, SIZE), SIZE);
+
+        assertThrows(ExecutionException.class, () -> await(first));
+        assertThrows(ExecutionException.class, () -> await(second));
+        verify(packRepository, never()).save(any());
+    }
+
+    @Test
+    void unrecordedPackObjectIsDeleted() {
+        configure(SIZE, 60_000);
+        doThrow(new RuntimeException("database unavailable")).when(packRepository).save(any());
+
+        CompletableFuture<PackWriter.PackSlot> slot = writer.appendAsync(ChunkStoreFixture.random(1, SIZE), SIZE);
+
+        assertThrows(ExecutionException.class, () -> await(slot));
+        verify(s3Service).deleteChunk(anyString());
+    }
+
+    @Test
+    void shutdownWritesThePendingPack() throws Exception {
+        configure(1 << 20, 60_000);
+
+        CompletableFuture<PackWriter.PackSlot> slot = writer.appendAsync(ChunkStoreFixture.random(1, SIZE), SIZE);
+        writer.shutdown();
+
+        assertTrue(slot.isDone());
+        assertEquals(new PackWriter.PackSlot(1L, 0), await(slot));
+    }
+}
@@ -0,0 +1,109 @@
+package com.hydrangea.storage_service.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.hydrangea.storage_service.constant.AccessLevel;
+import com.hydrangea.storage_service.entity.ShareLink;
+import com.hydrangea.storage_service.exception.AppException;
+import com.hydrangea.storage_service.exception.ErrorCode;
+import com.hydrangea.storage_service.repository.FileMetadataRepository;
+import com.hydrangea.storage_service.repository.ShareLinkRepository;
+import com.hydrangea.storage_service.repository.UserRepository;
+import com.hydrangea.storage_service.security.BucketLookupCache;
+import com.hydrangea.storage_service.security.PermissionResolver;
+import com.hydrangea.storage_service.security.ShareLinkStateCache;
+import com.hydrangea.storage_service.security.ShareLinkStateCache.ShareLinkState;
+import com.hydrangea.storage_service.util.ShareLinkTokenUtil;
+
+class ShareLinkServiceTests {
+
+    private static final String SECRET = "a-test-secret-that-is-long-enough-for-hmac-sha256";
+
+    private final ShareLinkTokenUtil tokenUtil = tokenUtil(SECRET, 60);
+    private final ShareLinkStateCache stateCache = mock(ShareLinkStateCache.class);
+    private final ShareLinkService service = new ShareLinkService(mock(ShareLinkRepository.class),
+            mock(BucketLookupCache.class), mock(FileMetadataRepository.class), mock(UserRepository.class),
+            mock(PasswordEncoder.class), tokenUtil, stateCache, mock(PermissionResolver.class));
+
+    private static ShareLinkTokenUtil tokenUtil(String secret, long ttlSeconds) {
+        ShareLinkTokenUtil util = new ShareLinkTokenUtil();
+        ReflectionTestUtils.setField(util, "secret", secret);
+        ReflectionTestUtils.setField(util, "ttlSeconds", ttlSeconds);
+        ReflectionTestUtils.invokeMethod(util, "init");
+        return util;
+    }
+
+    private static ShareLink link(String link, Integer generation) {
+        ShareLink shareLink = new ShareLink();
+        shareLink.setLink(link);
+        shareLink.setTokenGeneration(generation);
+        return shareLink;
+    }
+
+    private ShareLinkState state(String link, boolean active, int generation) {
+        ShareLinkState state = new ShareLinkState(1L, link, "resource", "owner", AccessLevel.VIEW, true, active,
+                LocalDateTime.now(), generation);
+        when(stateCache.get(link)).thenReturn(state);
+        return state;
+    }
+
+    private ErrorCode rejection(String link, String token) {
+        return assertThrows(AppException.class, () -> service.resolveAccessToken(link, token)).getErrorCode();
+    }
+
+    @Test
+    void tokenOfTheCurrentGenerationResolves() {
+        ShareLinkState state = state("abc", true, 0);
+
+        // Links created before generations existed have none, which counts as the first
+        assertSame(state, service.resolveAccessToken("abc", tokenUtil.generateToken(link("abc", null))));
+    }
+
+    @Test
+    void tokensOfEarlierGenerationsAreRevoked() {
+        String token = tokenUtil.generateToken(link("abc", 2));
+        state("abc", true, 3);
+
+        assertEquals(ErrorCode.INVALID_SHARE_LINK, rejection("abc", token));
+    }
+
+    @Test
+    void tokenIsScopedToItsLink() {
+        state("other", true, 0);
+
+        assertEquals(ErrorCode.INVALID_SHARE_LINK, rejection("other", tokenUtil.generateToken(link("abc", 0))));
+    }
+
+    @Test
+    void deactivatedOrDeletedLinkRejectsItsTokens() {
+        String token = tokenUtil.generateToken(link("abc", 0));
+        state("abc", false, 0);
+        assertEquals(ErrorCode.INVALID_SHARE_LINK, rejection("abc", token));
+
+        when(stateCache.get("abc")).thenReturn(null);
+        assertEquals(ErrorCode.INVALID_SHARE_LINK, rejection("abc", token));
+    }
+
+    @Test
+    void forgedExpiredAndMalformedTokensAreRejected() {
+        state("abc", true, 0);
+
+        assertEquals(ErrorCode.INVALID_SHARE_LINK,
+                rejection("abc", tokenUtil("another-secret-that-is-long-enough-for-hmac-sha256", 60)
+                        .generateToken(link("abc", 0))));
+        assertEquals(ErrorCode.INVALID_SHARE_LINK,
+                rejection("abc", tokenUtil(SECRET, -60).generateToken(link("abc", 0))));
+        assertEquals(ErrorCode.INVALID_SHARE_LINK, rejection("abc", "not-a-token"));
+        assertEquals(ErrorCode.INVALID_SHARE_LINK, rejection("abc", ""));
+    }
+}
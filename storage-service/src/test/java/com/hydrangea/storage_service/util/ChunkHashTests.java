@@ -0,0 +1,61 @@
+package com.hydrangea.storage_service.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.junit.jupiter.api.Test;
+
+import com.hydrangea.storage_service.constant.HashAlgorithm;
+import com.hydrangea.storage_service.service.ChunkHasher;
+
+class ChunkHashTests {
+
+    // SHA-256 of "abc"
+    private static final String ABC_HEX = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    void sha256MatchesTheKnownDigest() throws Exception {
+        byte[] data = "abc".getBytes(StandardCharsets.US_ASCII);
+        ChunkHash hash = new ChunkHasher().hash(HashAlgorithm.SHA256, data, 0, data.length);
+
+        assertEquals(ABC_HEX, hash.toHex());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), hash.toBytes());
+    }
+
+    @Test
+    void bytesAndHexRoundTrip() {
+        byte[] digest = new byte[ChunkHash.LENGTH];
+        for (int i = 0; i < digest.length; i++) {
+            // High bit set in most bytes, so signed handling is exercised
+            digest[i] = (byte) (0xF0 + i);
+        }
+        ChunkHash hash = ChunkHash.of(HashAlgorithm.BLAKE3, digest);
+
+        assertArrayEquals(digest, hash.toBytes());
+        assertEquals(hash, ChunkHash.fromHex(HashAlgorithm.BLAKE3, hash.toHex()));
+        assertEquals(hash.hashCode(), ChunkHash.fromHex(HashAlgorithm.BLAKE3, hash.toHex()).hashCode());
+    }
+
+    @Test
+    void sameDigestFromDifferentAlgorithmsIsNotEqual() {
+        ChunkHash sha = ChunkHash.fromHex(HashAlgorithm.SHA256, ABC_HEX);
+        ChunkHash blake = ChunkHash.fromHex(HashAlgorithm.BLAKE3, ABC_HEX);
+
+        assertNotEquals(sha, blake);
+        assertEquals("chunks/" + ABC_HEX, sha.toS3Key());
+        assertEquals("chunks/blake3/" + ABC_HEX, blake.toS3Key());
+        assertEquals("blake3:" + ABC_HEX, blake.toString());
+    }
+
+    @Test
+    void rejectsWrongLengths() {
+        assertThrows(IllegalArgumentException.class, () -> ChunkHash.of(HashAlgorithm.SHA256, new byte[31]));
+        assertThrows(IllegalArgumentException.class,
+                () -> ChunkHash.fromHex(HashAlgorithm.SHA256, ABC_HEX.substring(2)));
+    }
+}